@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara.benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.subreption.yara.Yara;
+import com.github.subreption.yara.YaraFactory;
+import com.github.subreption.yara.YaraMatch;
+import com.github.subreption.yara.YaraMeta;
+import com.github.subreption.yara.YaraRule;
+import com.github.subreption.yara.YaraRules;
+import com.github.subreption.yara.YaraScanner;
+import com.github.subreption.yara.YaraString;
+
+/**
+ * Cost of materializing matches in the scan callback, from rule indices only up to walking
+ * every tag, metadata, string and match of the reported rules
+ * <br>The input matches every rule many times, so the scan itself is the same across levels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CallbackBenchmark {
+    @Param({"EMBEDDED", "EXTERNAL"})
+    public YaraFactory.Mode engine;
+
+    @Param({"65536"})
+    public int size;
+
+    @Param({"100"})
+    public int rules;
+
+    private Yara yara;
+    private YaraRules compiled;
+    private YaraScanner scanner;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        yara = YaraFactory.create(engine);
+        compiled = ScanState.compile(yara, Rulesets.generate(rules));
+        scanner = compiled.createScanner();
+        buffer = Rulesets.input(size, rules, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (scanner != null) {
+            scanner.close();
+        }
+        if (compiled != null) {
+            compiled.close();
+        }
+        if (yara != null) {
+            yara.close();
+        }
+    }
+
+    @Benchmark
+    public void ruleIds(Blackhole bh) {
+        scanner.scanRuleIds(buffer, null, bh::consume);
+    }
+
+    @Benchmark
+    public void rule(Blackhole bh) {
+        scanner.scan(buffer, null, bh::consume);
+    }
+
+    @Benchmark
+    public void identifier(Blackhole bh) {
+        scanner.scan(buffer, null, rule -> bh.consume(rule.getIdentifier()));
+    }
+
+    @Benchmark
+    public void full(Blackhole bh) {
+        scanner.scan(buffer, null, rule -> materialize(rule, bh));
+    }
+
+    private static void materialize(YaraRule rule, Blackhole bh) {
+        bh.consume(rule.getIdentifier());
+
+        for (Iterator<String> tags = rule.getTags(); tags.hasNext(); ) {
+            bh.consume(tags.next());
+        }
+
+        for (Iterator<YaraMeta> metas = rule.getMetadata(); metas.hasNext(); ) {
+            YaraMeta meta = metas.next();
+            bh.consume(meta.getIdentifier());
+            bh.consume(meta.getType() == YaraMeta.Type.INTEGER ? meta.getInteger() : meta.getString());
+        }
+
+        for (Iterator<YaraString> strings = rule.getStrings(); strings.hasNext(); ) {
+            YaraString string = strings.next();
+            bh.consume(string.getIdentifier());
+
+            for (Iterator<YaraMatch> matches = string.getMatches(); matches.hasNext(); ) {
+                YaraMatch match = matches.next();
+                bh.consume(match.getOffset());
+                bh.consume(match.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.subreption.yara.Yara;
+import com.github.subreption.yara.YaraFactory;
+import com.github.subreption.yara.YaraRules;
+
+/**
+ * Compile time against ruleset size, from source to rules ready to scan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+    @Param({"EMBEDDED", "EXTERNAL"})
+    public YaraFactory.Mode engine;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int rules;
+
+    private Yara yara;
+    private String source;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        yara = YaraFactory.create(engine);
+        source = Rulesets.generate(rules);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (yara != null) {
+            yara.close();
+        }
+    }
+
+    @Benchmark
+    public void compile() {
+        YaraRules compiled = ScanState.compile(yara, source);
+        compiled.close();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generated rulesets and scan inputs
+ * <br>Rule <code>n</code> matches the text <code>needle&lt;n&gt;</code>, match-heavy inputs
+ * repeat the needles of every rule, match-free inputs are random letters (no digits, so no
+ * needle ever matches).
+ */
+final class Rulesets {
+    private static final String NEEDLE = "needle";
+
+    private Rulesets() {
+    }
+
+    /**
+     * Ruleset source
+     * @param count Number of rules
+     * @return
+     */
+    static String generate(int count) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < count; ++i) {
+            sb.append(String.format("rule r%06d : bench group%d {%n", i, i % 16))
+                    .append(String.format("  meta:%n"))
+                    .append(String.format("    index = %d%n", i))
+                    .append(String.format("    description = \"generated rule %d\"%n", i))
+                    .append(String.format("  strings:%n"))
+                    .append(String.format("    $a = \"%s\"%n", needle(i)))
+                    .append(String.format("  condition:%n"))
+                    .append(String.format("    $a%n"))
+                    .append(String.format("}%n"));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Scan input
+     * @param size Input size (bytes)
+     * @param rules Number of rules of the scanned ruleset
+     * @param matching Whether the input matches every rule (many times when large enough)
+     * @return
+     */
+    static byte[] input(int size, int rules, boolean matching) {
+        byte[] input = new byte[size];
+
+        if (matching) {
+            int offset = 0;
+            for (int i = 0; offset < size; ++i) {
+                byte[] token = (needle(i % rules) + " ").getBytes(StandardCharsets.US_ASCII);
+                int length = Math.min(token.length, size - offset);
+
+                System.arraycopy(token, 0, input, offset, length);
+                offset += length;
+            }
+        }
+        else {
+            Random random = new Random(42);
+            for (int i = 0; i < size; ++i) {
+                input[i] = (byte) ('a' + random.nextInt(26));
+            }
+        }
+
+        return input;
+    }
+
+    private static String needle(int index) {
+        return String.format("%s%06d", NEEDLE, index);
+    }
+}
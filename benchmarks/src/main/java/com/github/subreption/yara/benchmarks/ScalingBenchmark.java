@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scan throughput as threads are added, every thread scanning the same shared ruleset with
+ * its own scanner
+ * <br>Run with <code>-p size=65536</code> (or any single size) to get one curve per engine
+ * and match density.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+    @Benchmark
+    @Threads(1)
+    public void threads01(ScanState state, ScanState.ThreadScanner scanner, Blackhole bh) {
+        scan(state, scanner, bh);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void threads02(ScanState state, ScanState.ThreadScanner scanner, Blackhole bh) {
+        scan(state, scanner, bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads04(ScanState state, ScanState.ThreadScanner scanner, Blackhole bh) {
+        scan(state, scanner, bh);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void threads08(ScanState state, ScanState.ThreadScanner scanner, Blackhole bh) {
+        scan(state, scanner, bh);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16(ScanState state, ScanState.ThreadScanner scanner, Blackhole bh) {
+        scan(state, scanner, bh);
+    }
+
+    private static void scan(ScanState state, ScanState.ThreadScanner scanner, Blackhole bh) {
+        scanner.scanner.scan(state.buffer, null, bh::consume);
+    }
+}
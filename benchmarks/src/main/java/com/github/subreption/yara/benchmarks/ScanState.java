@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.subreption.yara.Yara;
+import com.github.subreption.yara.YaraCompilationCallback;
+import com.github.subreption.yara.YaraCompiler;
+import com.github.subreption.yara.YaraFactory;
+import com.github.subreption.yara.YaraRules;
+import com.github.subreption.yara.YaraScanner;
+
+/**
+ * Compiled ruleset and scan input shared by every benchmark thread
+ */
+@State(Scope.Benchmark)
+public class ScanState {
+    @Param({"EMBEDDED", "EXTERNAL"})
+    public YaraFactory.Mode engine;
+
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean matching;
+
+    @Param({"100"})
+    public int rules;
+
+    Yara yara;
+    YaraRules compiled;
+    byte[] buffer;
+    File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        yara = YaraFactory.create(engine);
+        compiled = compile(yara, Rulesets.generate(rules));
+
+        buffer = Rulesets.input(size, rules, matching);
+        file = File.createTempFile("yara-bench", ".bin");
+        Files.write(file.toPath(), buffer);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (file != null) {
+            file.delete();
+        }
+        if (compiled != null) {
+            compiled.close();
+        }
+        if (yara != null) {
+            yara.close();
+        }
+    }
+
+    static YaraRules compile(Yara yara, String source) {
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> {
+            if (errorLevel == YaraCompilationCallback.ErrorLevel.ERROR) {
+                throw new IllegalStateException(String.format("%s:%d %s", fileName, lineNumber, message));
+            }
+        };
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(callback);
+            compiler.addRulesContent(source, null);
+            return compiler.createRules();
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Scanner of one benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class ThreadScanner {
+        YaraScanner scanner;
+
+        @Setup(Level.Trial)
+        public void setup(ScanState state) {
+            scanner = state.compiled.createScanner();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            if (scanner != null) {
+                scanner.close();
+            }
+        }
+    }
+}
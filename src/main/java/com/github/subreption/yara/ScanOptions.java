@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Immutable per-scan options
+ * <br>Options are passed with each scan instead of being set on the scanner, threads
+ * with different settings can share one scanner without synchronization.
+ */
+public final class ScanOptions {
+    public static final int DEFAULT_TIMEOUT = 60;
+
+    public static final ScanOptions DEFAULT = new Builder().build();
+
+    private final int timeout;
+    private final int maxRules;
+    private final boolean negate;
+    private final boolean fastMode;
+    private final boolean noTryCatch;
+    private final Map<String, String> moduleArgs;
+    private final Map<String, Object> variables;
+    private final YaraScanCallback callback;
+
+    private ScanOptions(Builder builder) {
+        this.timeout = builder.timeout;
+        this.maxRules = builder.maxRules;
+        this.negate = builder.negate;
+        this.fastMode = builder.fastMode;
+        this.noTryCatch = builder.noTryCatch;
+        this.moduleArgs = builder.moduleArgs.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(builder.moduleArgs));
+        this.variables = builder.variables.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(builder.variables));
+        this.callback = builder.callback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Builder initialized with these options
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.variables.putAll(variables);
+
+        return builder
+                .setTimeout(timeout)
+                .setMaxRules(maxRules)
+                .setNegate(negate)
+                .setFastMode(fastMode)
+                .setNoTryCatch(noTryCatch)
+                .setModuleArgs(moduleArgs)
+                .setCallback(callback);
+    }
+
+    /**
+     * @return Scan timeout (seconds), 0 for none
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return Maximum number of rules reported, 0 for no limit
+     */
+    public int getMaxRules() {
+        return maxRules;
+    }
+
+    /**
+     * @return True to report rules not satisfied instead of matching ones
+     */
+    public boolean isNegate() {
+        return negate;
+    }
+
+    /**
+     * @return True to stop searching a string after its first match, when its condition
+     * only tests its presence (rules evaluate the same, fewer string matches are reported)
+     */
+    public boolean isFastMode() {
+        return fastMode;
+    }
+
+    /**
+     * @return True to scan without libyara's exception handler (memory mapped I/O errors)
+     */
+    public boolean isNoTryCatch() {
+        return noTryCatch;
+    }
+
+    /**
+     * @return Module arguments (-x), never null
+     */
+    public Map<String, String> getModuleArgs() {
+        return moduleArgs;
+    }
+
+    /**
+     * @return External variables overriding the rules defaults, never null
+     * <br>Values are {@link Long}, {@link Double}, {@link Boolean} or {@link String}.
+     */
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return Scan callback, may be null
+     * <br>Asynchronous, batch and tree scans report matches through their own callback.
+     */
+    public YaraScanCallback getCallback() {
+        return callback;
+    }
+
+    public static class Builder {
+        private int timeout = DEFAULT_TIMEOUT;
+        private int maxRules = 0;
+        private boolean negate = false;
+        private boolean fastMode = false;
+        private boolean noTryCatch = true;
+        private final Map<String, String> moduleArgs = new HashMap<>();
+        private final Map<String, Object> variables = new LinkedHashMap<>();
+        private YaraScanCallback callback;
+
+        private Builder() {
+        }
+
+        public Builder setTimeout(int timeout) {
+            checkArgument(timeout >= 0);
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder setMaxRules(int count) {
+            checkArgument(count >= 0);
+            this.maxRules = count;
+            return this;
+        }
+
+        public Builder setNegate(boolean value) {
+            this.negate = value;
+            return this;
+        }
+
+        public Builder setFastMode(boolean value) {
+            this.fastMode = value;
+            return this;
+        }
+
+        public Builder setNoTryCatch(boolean value) {
+            this.noTryCatch = value;
+            return this;
+        }
+
+        /**
+         * Set module data (-x)
+         * @param module
+         * @param value
+         * @return
+         */
+        public Builder setModuleArg(String module, String value) {
+            checkArgument(!Utils.isNullOrEmpty(module));
+            checkArgument(value != null);
+
+            moduleArgs.put(module, value);
+            return this;
+        }
+
+        public Builder setModuleArgs(Map<String, String> args) {
+            if (args != null) {
+                args.forEach(this::setModuleArg);
+            }
+            return this;
+        }
+
+        /**
+         * Set an external variable (-d) for this scan
+         * <br>The variable must be defined by the rules with the same type.
+         * @param identifier
+         * @param value
+         * @return
+         */
+        public Builder setVariable(String identifier, long value) {
+            return putVariable(identifier, value);
+        }
+
+        public Builder setVariable(String identifier, double value) {
+            return putVariable(identifier, value);
+        }
+
+        public Builder setVariable(String identifier, boolean value) {
+            return putVariable(identifier, value);
+        }
+
+        public Builder setVariable(String identifier, String value) {
+            checkArgument(value != null);
+            return putVariable(identifier, value);
+        }
+
+        private Builder putVariable(String identifier, Object value) {
+            checkArgument(!Utils.isNullOrEmpty(identifier));
+
+            variables.put(identifier, value);
+            return this;
+        }
+
+        public Builder setCallback(YaraScanCallback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        public ScanOptions build() {
+            return new ScanOptions(this);
+        }
+    }
+}
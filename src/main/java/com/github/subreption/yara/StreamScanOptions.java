@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Immutable stream scan options
+ */
+public final class StreamScanOptions {
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    public static final StreamScanOptions DEFAULT = new Builder().build();
+
+    private final int chunkSize;
+    private final int overlap;
+    private final ScanOptions scanOptions;
+
+    private StreamScanOptions(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.overlap = builder.overlap;
+        this.scanOptions = builder.scanOptions;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Bytes read from the stream per window
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return Bytes shared by consecutive windows, negative to size it on the ruleset
+     */
+    public int getOverlap() {
+        return overlap;
+    }
+
+    public ScanOptions getScanOptions() {
+        return scanOptions;
+    }
+
+    public static class Builder {
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private int overlap = -1;
+        private ScanOptions scanOptions = ScanOptions.DEFAULT;
+
+        private Builder() {
+        }
+
+        public Builder setChunkSize(int size) {
+            checkArgument(size > 0);
+            this.chunkSize = size;
+            return this;
+        }
+
+        /**
+         * @param overlap Bytes shared by consecutive windows, at least the longest match
+         *                expected (defaults to the longest string of the ruleset)
+         * @return
+         */
+        public Builder setOverlap(int overlap) {
+            checkArgument(overlap >= 0);
+            this.overlap = overlap;
+            return this;
+        }
+
+        public Builder setScanOptions(ScanOptions options) {
+            checkArgument(options != null);
+            this.scanOptions = options;
+            return this;
+        }
+
+        public StreamScanOptions build() {
+            return new StreamScanOptions(this);
+        }
+    }
+}
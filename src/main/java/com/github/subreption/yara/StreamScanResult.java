@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rules matched by a stream scan
+ * <br>A stream larger than one window is scanned window by window: every rule was then
+ * evaluated on each window separately (see {@link #isWindowed()}), which is exact for
+ * string matches no longer than the overlap but approximate for conditions depending on
+ * the file layout (filesize, absolute offsets, modules, string counts).
+ */
+public final class StreamScanResult {
+    private final List<YaraRule> rules;
+    private final long length;
+    private final int windows;
+    private final int overlap;
+
+    public StreamScanResult(List<YaraRule> rules, long length, int windows, int overlap) {
+        this.rules = rules != null ? Collections.unmodifiableList(rules) : Collections.emptyList();
+        this.length = length;
+        this.windows = windows;
+        this.overlap = overlap;
+    }
+
+    /**
+     * @return Matched rules, matches at absolute stream offsets
+     */
+    public List<YaraRule> getRules() {
+        return rules;
+    }
+
+    public boolean isMatch() {
+        return !rules.isEmpty();
+    }
+
+    /**
+     * @return Bytes read from the stream
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return Number of windows scanned
+     */
+    public int getWindows() {
+        return windows;
+    }
+
+    /**
+     * @return Bytes shared by consecutive windows
+     */
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * @return True when rules were evaluated per window rather than on the whole stream
+     */
+    public boolean isWindowed() {
+        return windows > 1;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Immutable directory tree scan options
+ * <br>Filters are applied on file attributes before any file is opened.
+ */
+public final class TreeScanOptions {
+    public static final TreeScanOptions DEFAULT = new Builder().build();
+
+    /**
+     * Symbolic link handling
+     */
+    public enum Symlinks {
+        /** Symbolic links are ignored */
+        SKIP,
+        /** Symbolic links are followed, each directory is walked once */
+        FOLLOW
+    }
+
+    private final String glob;
+    private final Set<String> extensions;
+    private final long minSize;
+    private final long maxSize;
+    private final Symlinks symlinks;
+    private final int parallelism;
+    private final boolean externalRecursion;
+    private final int timeout;
+    private final ForkJoinPool pool;
+    private final ScanOptions scanOptions;
+
+    private TreeScanOptions(Builder builder) {
+        this.glob = builder.glob;
+        this.extensions = Collections.unmodifiableSet(new HashSet<>(builder.extensions));
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.symlinks = builder.symlinks;
+        this.parallelism = builder.parallelism;
+        this.externalRecursion = builder.externalRecursion;
+        this.timeout = builder.timeout;
+        this.pool = builder.pool;
+        this.scanOptions = builder.scanOptions;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Glob matched against the path relative to the root, or null
+     */
+    public String getGlob() {
+        return glob;
+    }
+
+    /**
+     * @return Lower case extensions (without dot), empty for any
+     */
+    public Set<String> getExtensions() {
+        return extensions;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public Symlinks getSymlinks() {
+        return symlinks;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isExternalRecursion() {
+        return externalRecursion;
+    }
+
+    /**
+     * @return Timeout of the whole tree scan (seconds), 0 for no limit
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return Pool walking and scanning the tree, null for the shared pool of the parallelism
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public ScanOptions getScanOptions() {
+        return scanOptions;
+    }
+
+    /**
+     * @param name File name
+     * @return True when the name passes the extension filter
+     */
+    public boolean acceptExtension(String name) {
+        if (extensions.isEmpty()) {
+            return true;
+        }
+
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && extensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param size File size
+     * @return True when the size passes the size bounds
+     */
+    public boolean acceptSize(long size) {
+        return size >= minSize && size <= maxSize;
+    }
+
+    public static class Builder {
+        private String glob;
+        private final Set<String> extensions = new HashSet<>();
+        private long minSize = 0;
+        private long maxSize = Long.MAX_VALUE;
+        private Symlinks symlinks = Symlinks.SKIP;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private boolean externalRecursion = false;
+        private int timeout = 0;
+        private ForkJoinPool pool;
+        private ScanOptions scanOptions = ScanOptions.DEFAULT;
+
+        private Builder() {
+        }
+
+        /**
+         * Only scan files whose path relative to the root matches the glob
+         * @param glob <code>FileSystem.getPathMatcher</code> glob syntax
+         * @return
+         */
+        public Builder setGlob(String glob) {
+            this.glob = glob;
+            return this;
+        }
+
+        /**
+         * Only scan files with one of the extensions (case insensitive)
+         * @param extension Extension, with or without leading dot
+         * @return
+         */
+        public Builder addExtension(String extension) {
+            checkArgument(!Utils.isNullOrEmpty(extension));
+
+            extensions.add((extension.startsWith(".") ? extension.substring(1) : extension)
+                    .toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        public Builder setMinSize(long size) {
+            checkArgument(size >= 0);
+            this.minSize = size;
+            return this;
+        }
+
+        public Builder setMaxSize(long size) {
+            checkArgument(size >= 0);
+            this.maxSize = size;
+            return this;
+        }
+
+        public Builder setSymlinks(Symlinks symlinks) {
+            checkArgument(symlinks != null);
+            this.symlinks = symlinks;
+            return this;
+        }
+
+        /**
+         * @param parallelism Number of threads walking and scanning
+         * @return
+         */
+        public Builder setParallelism(int parallelism) {
+            checkArgument(parallelism > 0);
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Let the external engine walk the tree itself (yara -r) when the filters allow it
+         * @param value
+         * @return
+         */
+        public Builder setExternalRecursion(boolean value) {
+            this.externalRecursion = value;
+            return this;
+        }
+
+        /**
+         * Bound the whole tree scan, the scan options timeout still bounds each file
+         * @param timeout Timeout (seconds), 0 for no limit
+         * @return
+         */
+        public Builder setTimeout(int timeout) {
+            checkArgument(timeout >= 0);
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Walk and scan the tree on a caller owned pool, the parallelism is the pool's
+         * @param pool
+         * @return
+         */
+        public Builder setPool(ForkJoinPool pool) {
+            checkArgument(pool != null);
+            this.pool = pool;
+            return this;
+        }
+
+        public Builder setScanOptions(ScanOptions options) {
+            checkArgument(options != null);
+            this.scanOptions = options;
+            return this;
+        }
+
+        public TreeScanOptions build() {
+            checkArgument(minSize <= maxSize);
+            return new TreeScanOptions(this);
+        }
+    }
+}
@@ -17,10 +17,21 @@
 
 package com.github.subreption.yara;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
 
 public class Utils {
+    private static final Pattern DECLARATION = Pattern.compile("\\b(rule|include)\\b\\s*([A-Za-z_][A-Za-z0-9_]*)?");
+
     /**
      * Check string is null or empty
      *
@@ -96,5 +107,129 @@ public class Utils {
         return buffer.toString();
     }
 
+    /**
+     * Read stream to the end
+     *
+     * @param stream
+     * @return
+     * @throws IOException
+     */
+    public static byte[] toByteArray(InputStream stream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int len;
+
+        while ((len = stream.read(buffer)) > 0) {
+            output.write(buffer, 0, len);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Identifiers of the rules declared by a source, in declaration order
+     * <br>Comments, text strings and regular expressions are skipped, rules are only declared
+     * outside of rule bodies.
+     * @param source
+     * @return Rule identifiers, null when the source includes other files
+     */
+    public static List<String> ruleDeclarations(String source) {
+        checkArgument(source != null);
+
+        StringBuilder outer = new StringBuilder();
+        int depth = 0;
+        char last = 0;
+
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            char next = (i + 1 < source.length() ? source.charAt(i + 1) : 0);
+
+            if (c == '/' && next == '/') {
+                i = skipTo(source, i + 2, "\n");
+                c = ' ';
+            }
+            else if (c == '/' && next == '*') {
+                i = skipTo(source, i + 2, "*/") + 1;
+                c = ' ';
+            }
+            else if (c == '"') {
+                i = skipQuoted(source, i + 1, '"');
+                c = ' ';
+            }
+            else if (c == '/' && depth > 0 && (last == '=' || endsWithWord(source, i, "matches"))) {
+                i = skipQuoted(source, i + 1, '/');
+                c = ' ';
+            }
+            else if (c == '{') {
+                depth++;
+            }
+            else if (c == '}') {
+                depth = Math.max(0, depth - 1);
+                c = ' ';
+            }
+
+            if (depth == 0) {
+                outer.append(c);
+            }
+            if (!Character.isWhitespace(c)) {
+                last = c;
+            }
+        }
+
+        List<String> identifiers = new ArrayList<>();
+
+        Matcher matcher = DECLARATION.matcher(outer);
+        while (matcher.find()) {
+            if (matcher.group(1).equals("include")) {
+                return null;
+            }
+            if (matcher.group(2) != null) {
+                identifiers.add(matcher.group(2));
+            }
+        }
+
+        return identifiers;
+    }
+
+    private static int skipTo(String source, int from, String end) {
+        int index = source.indexOf(end, from);
+        return (index < 0 ? source.length() : index);
+    }
+
+    private static int skipQuoted(String source, int from, char quote) {
+        for (int i = from; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i++;
+            }
+            else if (c == quote || c == '\n') {
+                return i;
+            }
+        }
+        return source.length();
+    }
+
+    private static boolean endsWithWord(String source, int end, String word) {
+        int i = end - 1;
+        while (i >= 0 && Character.isWhitespace(source.charAt(i))) {
+            i--;
+        }
+
+        int start = i - word.length() + 1;
+        if (start < 0 || !source.startsWith(word, start)) {
+            return false;
+        }
+        return start == 0 || !(Character.isLetterOrDigit(source.charAt(start - 1)) || source.charAt(start - 1) == '_');
+    }
+
+    /**
+     * Check a rule source includes other files
+     * @param source
+     * @return
+     */
+    public static boolean hasIncludes(String source) {
+        return ruleDeclarations(source) == null;
+    }
+
     public static String compiledRuleIdentifier = "yaracc";
 }
@@ -17,10 +17,38 @@
 
 package com.github.subreption.yara;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
 /**
  * Yara wrapper
  */
 public interface Yara extends AutoCloseable {
     YaraCompiler createCompiler();
 
+    /**
+     * Load compiled rules (yarac or {@link YaraCompiler#save(Path)} output)
+     *
+     * @param path
+     * @return Scanner over the loaded rules
+     */
+    YaraScanner loadRules(Path path);
+
+    /**
+     * Load compiled rules from a stream
+     * <br>The stream is read to the end but not closed.
+     *
+     * @param stream
+     * @return Scanner over the loaded rules
+     */
+    YaraScanner loadRules(InputStream stream);
+
+    /**
+     * Load compiled rules from the buffer contents between its position and limit
+     *
+     * @param buffer
+     * @return Scanner over the loaded rules
+     */
+    YaraScanner loadRules(ByteBuffer buffer);
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Asynchronous scan support
+ * <br>Native scans are CPU bound and pin the calling thread for their whole duration,
+ * asynchronous scans run on an executor of platform threads instead (the embedded engine
+ * keeps one native scanner per concurrent scan).
+ */
+public final class YaraAsync {
+    /**
+     * Scan run by the executor
+     */
+    public interface AsyncScan {
+        /**
+         * @param callback  Collects the matching rules
+         * @param cancelled True once the future has been cancelled
+         */
+        void scan(YaraScanCallback callback, BooleanSupplier cancelled);
+    }
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private YaraAsync() {
+    }
+
+    /**
+     * Shared executor, one daemon platform thread per processor
+     * @return
+     */
+    public static Executor defaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (YaraAsync.class) {
+                if (defaultExecutor == null) {
+                    final AtomicInteger count = new AtomicInteger();
+
+                    defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                            runnable -> {
+                                Thread thread = new Thread(runnable, "yara-scan-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Run a scan on an executor
+     * <br>Cancelling the future completes it right away, the running scan observes
+     * the cancellation through the supplier it is given.
+     * @param executor
+     * @param scan
+     * @return
+     */
+    public static CompletableFuture<ScanResult> submit(Executor executor, AsyncScan scan) {
+        checkArgument(executor != null);
+        checkArgument(scan != null);
+
+        CompletableFuture<ScanResult> future = new CompletableFuture<>();
+
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+
+                List<YaraRule> rules = new ArrayList<>();
+                try {
+                    scan.scan(rules::add, future::isCancelled);
+                    future.complete(new ScanResult(rules));
+                }
+                catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        }
+        catch (RejectedExecutionException ree) {
+            future.completeExceptionally(ree);
+        }
+
+        return future;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+import static com.github.subreption.yara.Preconditions.checkState;
+
+/**
+ * Parallel batch scanner over a shared compiled ruleset
+ * <br>Files run on a fork-join pool, each worker thread owns its scanner. Files are
+ * ordered by decreasing size and pulled by the workers from a shared cursor, so the
+ * largest remaining file always starts next and a few huge files do not end up queued
+ * behind each other on one worker.
+ */
+public class YaraBatchScanner implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(YaraBatchScanner.class);
+
+    private final YaraRules rules;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param rules Shared rules, one scanner is created per worker thread
+     */
+    public YaraBatchScanner(YaraRules rules) {
+        this(rules, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param rules       Shared rules, one scanner is created per worker thread
+     * @param parallelism Number of worker threads
+     */
+    public YaraBatchScanner(YaraRules rules, int parallelism) {
+        checkArgument(rules != null);
+        checkArgument(parallelism > 0);
+
+        this.rules = rules;
+        this.pool = new ForkJoinPool(parallelism, Worker::new, null, false);
+    }
+
+    /**
+     * Scan files, blocking until all of them are done
+     * @param paths
+     * @param options
+     * @param sink Results sink, called concurrently
+     */
+    public void scanAll(Collection<Path> paths, ScanOptions options, YaraBatchSink sink) {
+        checkArgument(paths != null);
+        checkArgument(sink != null);
+        checkState(!pool.isShutdown());
+
+        List<Entry> entries = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            checkArgument(path != null);
+            entries.add(new Entry(path, size(path)));
+        }
+
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong((Entry e) -> e.size).reversed());
+
+        AtomicInteger cursor = new AtomicInteger();
+        ScanOptions scanOptions = (options != null ? options : ScanOptions.DEFAULT);
+
+        List<BatchTask> tasks = new ArrayList<>();
+        for (int i = 0; i < Math.min(pool.getParallelism(), entries.size()); ++i) {
+            tasks.add(new BatchTask(entries, cursor, scanOptions, sink));
+        }
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the workers and close their scanners
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+
+        try {
+            if (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
+                logger.warn("Batch workers did not terminate");
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        }
+        catch (Exception e) {
+            // Scanned last, the scan reports the failure
+            return -1;
+        }
+    }
+
+    private static class Entry {
+        final Path path;
+        final long size;
+
+        Entry(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Worker thread owning a scanner
+     */
+    private class Worker extends ForkJoinWorkerThread {
+        private YaraScanner scanner;
+
+        Worker(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        YaraScanner getScanner() {
+            if (scanner == null) {
+                scanner = rules.createScanner();
+            }
+            return scanner;
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            if (scanner != null) {
+                try {
+                    scanner.close();
+                }
+                catch (Exception e) {
+                    logger.warn(String.format("Failed to close worker scanner: %s", e.getMessage()));
+                }
+                scanner = null;
+            }
+            super.onTermination(exception);
+        }
+    }
+
+    /**
+     * Scan the size ordered files from the shared cursor until none is left
+     */
+    private static class BatchTask extends RecursiveAction {
+        private final List<Entry> entries;
+        private final AtomicInteger cursor;
+        private final ScanOptions options;
+        private final YaraBatchSink sink;
+
+        BatchTask(List<Entry> entries, AtomicInteger cursor, ScanOptions options, YaraBatchSink sink) {
+            this.entries = entries;
+            this.cursor = cursor;
+            this.options = options;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            for (int next = cursor.getAndIncrement(); next < entries.size(); next = cursor.getAndIncrement()) {
+                scan(entries.get(next).path);
+            }
+        }
+
+        private void scan(Path path) {
+            try {
+                YaraScanner scanner = ((Worker) Thread.currentThread()).getScanner();
+                scanner.scan(path.toFile(), options.toBuilder()
+                        .setCallback(rule -> sink.onMatch(path, rule))
+                        .build());
+            }
+            catch (Exception e) {
+                sink.onError(path, e);
+                return;
+            }
+
+            sink.onComplete(path);
+        }
+    }
+}
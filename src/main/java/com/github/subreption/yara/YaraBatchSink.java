@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.nio.file.Path;
+
+/**
+ * Batch scan results sink
+ * <br>Methods are called concurrently from the batch worker threads.
+ */
+public interface YaraBatchSink {
+    /**
+     * Called when a rule matches a file
+     *
+     * @param path File scanned
+     * @param rule Rule that matched
+     */
+    void onMatch(Path path, YaraRule rule);
+
+    /**
+     * Called when a file could not be scanned, the batch goes on
+     *
+     * @param path File scanned
+     * @param e    Failure
+     */
+    default void onError(Path path, Exception e) {
+    }
+
+    /**
+     * Called once a file has been scanned
+     *
+     * @param path File scanned
+     */
+    default void onComplete(Path path) {
+    }
+}
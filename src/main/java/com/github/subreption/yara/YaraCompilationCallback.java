@@ -53,4 +53,11 @@ public interface YaraCompilationCallback {
      * @param message       Error message
      */
     void onError(ErrorLevel errorLevel, String fileName, long lineNumber, String message);
+
+    /**
+     * Compilation warning occured, after it was reported through {@link #onError}
+     * @param warning   Classified warning
+     */
+    default void onWarning(YaraCompilationWarning warning) {
+    }
 }
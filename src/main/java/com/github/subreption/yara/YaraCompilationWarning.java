@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compilation warning, classified from the libyara message
+ */
+public class YaraCompilationWarning {
+    /**
+     * Warning type
+     */
+    public enum Type {
+        /**
+         * A string yields poor atoms and slows down every scan
+         */
+        SLOW_STRING,
+        /**
+         * A deprecated feature is used
+         */
+        DEPRECATED,
+        OTHER
+    }
+
+    private static final Pattern STRING = Pattern.compile("\\$[A-Za-z0-9_]*\\*?");
+    private static final Pattern RULE = Pattern.compile("\\brule \"?([A-Za-z_][A-Za-z0-9_]*)\"?");
+
+    private final Type type;
+    private final String fileName;
+    private final long lineNumber;
+    private final String ruleIdentifier;
+    private final String stringIdentifier;
+    private final String message;
+
+    public YaraCompilationWarning(Type type, String fileName, long lineNumber, String ruleIdentifier,
+                                  String stringIdentifier, String message) {
+        this.type = type;
+        this.fileName = fileName;
+        this.lineNumber = lineNumber;
+        this.ruleIdentifier = ruleIdentifier;
+        this.stringIdentifier = stringIdentifier;
+        this.message = message;
+    }
+
+    /**
+     * Classify a warning message
+     * @param fileName          File name being compiled (empty if string)
+     * @param lineNumber        Line number
+     * @param ruleIdentifier    Rule being compiled, null to take it from the message
+     * @param message           Warning message
+     * @return
+     */
+    public static YaraCompilationWarning parse(String fileName, long lineNumber, String ruleIdentifier,
+                                               String message) {
+        String text = message != null ? message : "";
+        String lower = text.toLowerCase();
+
+        Type type = Type.OTHER;
+        if (lower.contains("slow")) {
+            type = Type.SLOW_STRING;
+        }
+        else if (lower.contains("deprecated")) {
+            type = Type.DEPRECATED;
+        }
+
+        if (ruleIdentifier == null) {
+            Matcher rule = RULE.matcher(text);
+            if (rule.find()) {
+                ruleIdentifier = rule.group(1);
+            }
+        }
+
+        String stringIdentifier = null;
+        Matcher string = STRING.matcher(text);
+        if (string.find()) {
+            stringIdentifier = string.group();
+        }
+
+        return new YaraCompilationWarning(type, fileName, lineNumber, ruleIdentifier, stringIdentifier, text);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return Rule identifier or null when unknown
+     */
+    public String getRuleIdentifier() {
+        return ruleIdentifier;
+    }
+
+    /**
+     * @return String identifier or null when the warning is not about a string
+     */
+    public String getStringIdentifier() {
+        return stringIdentifier;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%d): %s: %s", fileName, lineNumber, type, message);
+    }
+}
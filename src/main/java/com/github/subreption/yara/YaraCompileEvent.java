@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a compile phase
+ *
+ * @see YaraEvents#compile(String, String)
+ */
+@Name("com.github.subreption.yara.Compile")
+@Label("YARA Compile")
+@Category("YARA")
+@Description("Rules source added to a compiler or rules created from it")
+public final class YaraCompileEvent extends Event {
+    public static final String ADD_SOURCE = "add-source";
+    public static final String GET_RULES = "get-rules";
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Namespace")
+    private String namespace;
+
+    @Label("Source Size")
+    @Description("Size of the added source, -1 when unknown")
+    @DataAmount
+    private long size = -1;
+
+    @Label("Sources")
+    @Description("Number of sources compiled")
+    private int sources;
+
+    @Label("Error")
+    private String error;
+
+    YaraCompileEvent(String phase, String namespace) {
+        this.phase = phase;
+        this.namespace = namespace;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Complete the phase
+     * @param size Source size, -1 when unknown
+     * @param sources Number of sources compiled
+     * @param error Error or null
+     */
+    public void finish(long size, int sources, ErrorCode error) {
+        end();
+
+        if (shouldCommit()) {
+            this.size = size;
+            this.sources = sources;
+            this.error = error != null && error != ErrorCode.SUCCESS ? error.name() : null;
+            commit();
+        }
+    }
+}
@@ -17,6 +17,9 @@
 
 package com.github.subreption.yara;
 
+import java.io.OutputStream;
+import java.nio.file.Path;
+
 /**
  * Yara compiler
  **/
@@ -28,6 +31,50 @@ public interface YaraCompiler extends AutoCloseable {
      */
     void setCallback(YaraCompilationCallback cbk);
 
+    /**
+     * Set compiled rules cache
+     * <br>Must be set before any rules are added. When a ruleset with the same sources
+     * was compiled before, {@link #createScanner()} loads it from the cache instead of
+     * compiling; rule errors may then only surface on {@link #createScanner()}.
+     *
+     * @param cache
+     */
+    void setCache(YaraRulesCache cache);
+
+    /**
+     * Define an integer external variable (-d)
+     * <br>Must be called before adding the rules using it. The value is the default of the
+     * compiled rules, scans can override it through {@link ScanOptions}.
+     *
+     * @param identifier
+     * @param value
+     */
+    void defineVariable(String identifier, long value);
+
+    /**
+     * Define a float external variable (-d)
+     *
+     * @param identifier
+     * @param value
+     */
+    void defineVariable(String identifier, double value);
+
+    /**
+     * Define a boolean external variable (-d)
+     *
+     * @param identifier
+     * @param value
+     */
+    void defineVariable(String identifier, boolean value);
+
+    /**
+     * Define a string external variable (-d)
+     *
+     * @param identifier
+     * @param value
+     */
+    void defineVariable(String identifier, String value);
+
     /**
      * Add rules content
      *
@@ -62,4 +109,30 @@ public interface YaraCompiler extends AutoCloseable {
      * @return
      */
     YaraScanner createScanner();
+
+    /**
+     * Create compiled rules shared by any number of scanners
+     * <br>Each call compiles (or loads from cache) a new ruleset.
+     *
+     * @return
+     */
+    YaraRules createRules();
+
+    /**
+     * Save compiled rules
+     * <br>The output is libyara's compiled rules format (as produced by yarac), it can be
+     * loaded by either engine through {@link Yara#loadRules(Path)} when built against the
+     * same libyara version. No more rules can be added once they are compiled.
+     *
+     * @param path
+     */
+    void save(Path path);
+
+    /**
+     * Save compiled rules to a stream
+     * <br>The stream is not closed.
+     *
+     * @param stream
+     */
+    void save(OutputStream stream);
 }
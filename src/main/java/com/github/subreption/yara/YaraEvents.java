@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import jdk.jfr.EventType;
+
+/**
+ * Java Flight Recorder events of compiles and scans
+ * <br>Every factory returns null unless a recording has the event enabled, so call sites
+ * only pay for a null check when nothing is recorded. The enabled state is read from the
+ * cached event type before any event is allocated. The event classes are never loaded
+ * on runtimes without the <code>jdk.jfr</code> API (Java 8 before 8u262).
+ */
+public final class YaraEvents {
+    public static final String ENGINE_EMBEDDED = "embedded";
+    public static final String ENGINE_EXTERNAL = "external";
+
+    private static final boolean AVAILABLE = available();
+
+    private YaraEvents() {
+    }
+
+    /**
+     * @return Whether the runtime has the Flight Recorder API
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Begin a compile phase
+     * @param phase {@link YaraCompileEvent#ADD_SOURCE} or {@link YaraCompileEvent#GET_RULES}
+     * @param namespace Rules namespace, may be null
+     * @return Event or null when not recorded
+     */
+    public static YaraCompileEvent compile(String phase, String namespace) {
+        if (!AVAILABLE || !Types.COMPILE.isEnabled()) {
+            return null;
+        }
+
+        YaraCompileEvent event = new YaraCompileEvent(phase, namespace);
+
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begin a scan
+     * @param engine {@link #ENGINE_EMBEDDED} or {@link #ENGINE_EXTERNAL}
+     * @return Event or null when not recorded
+     */
+    public static YaraScanEvent scan(String engine) {
+        if (!AVAILABLE || !Types.SCAN.isEnabled()) {
+            return null;
+        }
+
+        YaraScanEvent event = new YaraScanEvent(engine);
+
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begin a run of an external executable
+     * @param program Executable name
+     * @return Event or null when not recorded
+     */
+    public static YaraProcessEvent process(String program) {
+        if (!AVAILABLE || !Types.PROCESS.isEnabled()) {
+            return null;
+        }
+
+        YaraProcessEvent event = new YaraProcessEvent(program);
+
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Event types, only loaded once the Flight Recorder API is known to be available
+     */
+    private static final class Types {
+        static final EventType COMPILE = EventType.getEventType(YaraCompileEvent.class);
+        static final EventType SCAN = EventType.getEventType(YaraScanEvent.class);
+        static final EventType PROCESS = EventType.getEventType(YaraProcessEvent.class);
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, YaraEvents.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
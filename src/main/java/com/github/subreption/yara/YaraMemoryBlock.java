@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Block of a non-contiguous scan target
+ * <br>The block covers the remaining bytes of the buffer when created and is placed at
+ * its base offset in the logical target, gaps between blocks are not scanned.
+ */
+public final class YaraMemoryBlock {
+    private final long base;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param base   Offset of the block in the logical target
+     * @param buffer Block content, from its position to its limit
+     */
+    public YaraMemoryBlock(long base, ByteBuffer buffer) {
+        checkArgument(base >= 0);
+        checkArgument(buffer != null);
+
+        this.base = base;
+        this.buffer = buffer;
+        this.offset = buffer.position();
+        this.length = buffer.remaining();
+    }
+
+    public long getBase() {
+        return base;
+    }
+
+    /**
+     * @return Underlying buffer, content is read from {@link #getOffset()}
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Check blocks are ordered by base offset and do not overlap
+     * @param blocks
+     */
+    public static void checkBlocks(List<YaraMemoryBlock> blocks) {
+        checkArgument(blocks != null);
+
+        long end = 0;
+        for (YaraMemoryBlock block : blocks) {
+            checkArgument(block != null);
+            checkArgument(block.base >= end);
+            end = block.base + block.length;
+        }
+    }
+}
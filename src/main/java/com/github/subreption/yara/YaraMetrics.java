@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Scan metrics, shared by any number of scanners of either engine
+ * <br>Everything is recorded without locks (striped adders and atomic histogram buckets),
+ * {@link #snapshot()} gives a point in time copy for any metrics library to poll.
+ *
+ * @see YaraScanner#setMetrics(YaraMetrics)
+ */
+public class YaraMetrics {
+    /**
+     * Counts of one scan, confined to the scanning thread
+     */
+    public static class Sample {
+        private final YaraMetrics metrics;
+        private final long start = System.nanoTime();
+        private long callbacks;
+        private long nativeCalls;
+        private long matches;
+        private boolean finished;
+
+        private Sample(YaraMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * Callback into Java
+         */
+        public void onCallback() {
+            ++callbacks;
+        }
+
+        /**
+         * Calls into the native library
+         * @param count
+         */
+        public void onNativeCalls(int count) {
+            nativeCalls += count;
+        }
+
+        /**
+         * Rule reported
+         * @param identifier
+         */
+        public void onMatch(String identifier) {
+            ++matches;
+            metrics.matches.computeIfAbsent(identifier, k -> new LongAdder()).increment();
+        }
+
+        public long getCallbacks() {
+            return callbacks;
+        }
+
+        public long getNativeCalls() {
+            return nativeCalls;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        /**
+         * Record the scan, only the first call counts
+         * @param bytes Bytes scanned, negative when unknown (process memory)
+         * @param file  Whether the target is a file
+         * @param error Error the scan failed with, null on success
+         */
+        public void finish(long bytes, boolean file, ErrorCode error) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+
+            metrics.latency.record(System.nanoTime() - start);
+            metrics.scans.increment();
+            metrics.callbacks.add(callbacks);
+            metrics.nativeCalls.add(nativeCalls);
+
+            if (bytes > 0) {
+                metrics.bytes.add(bytes);
+            }
+            if (file) {
+                metrics.files.increment();
+            }
+
+            if (error != null && error != ErrorCode.SUCCESS) {
+                metrics.errors.get(error).increment();
+            }
+        }
+    }
+
+    /**
+     * Point in time copy of the metrics
+     */
+    public static class Snapshot {
+        private final YaraHistogram.Snapshot latency;
+        private final long scans;
+        private final long files;
+        private final long bytes;
+        private final long callbacks;
+        private final long nativeCalls;
+        private final Map<ErrorCode, Long> errors;
+        private final Map<String, Long> matches;
+
+        private Snapshot(YaraMetrics metrics) {
+            this.latency = metrics.latency.snapshot();
+            this.scans = metrics.scans.sum();
+            this.files = metrics.files.sum();
+            this.bytes = metrics.bytes.sum();
+            this.callbacks = metrics.callbacks.sum();
+            this.nativeCalls = metrics.nativeCalls.sum();
+
+            Map<ErrorCode, Long> errors = new EnumMap<>(ErrorCode.class);
+            metrics.errors.forEach((code, count) -> {
+                long value = count.sum();
+                if (value > 0) {
+                    errors.put(code, value);
+                }
+            });
+            this.errors = Collections.unmodifiableMap(errors);
+
+            Map<String, Long> matches = new HashMap<>();
+            metrics.matches.forEach((identifier, count) -> matches.put(identifier, count.sum()));
+            this.matches = Collections.unmodifiableMap(matches);
+        }
+
+        /**
+         * Scan latency (nanoseconds)
+         * @return
+         */
+        public YaraHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public long getScans() {
+            return scans;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Callbacks from the native library (embedded) or reported rules (external)
+         * @return
+         */
+        public long getCallbacks() {
+            return callbacks;
+        }
+
+        /**
+         * Calls into the native library, always 0 for the external engine
+         * @return
+         */
+        public long getNativeCalls() {
+            return nativeCalls;
+        }
+
+        public double getCallbacksPerScan() {
+            return scans > 0 ? (double) callbacks / scans : 0;
+        }
+
+        public double getNativeCallsPerScan() {
+            return scans > 0 ? (double) nativeCalls / scans : 0;
+        }
+
+        public long getTimeouts() {
+            return getErrors(ErrorCode.SCAN_TIMEOUT);
+        }
+
+        /**
+         * Failed scans by error
+         * @return
+         */
+        public Map<ErrorCode, Long> getErrors() {
+            return errors;
+        }
+
+        public long getErrors(ErrorCode code) {
+            return errors.getOrDefault(code, 0L);
+        }
+
+        /**
+         * Reports by rule identifier
+         * @return
+         */
+        public Map<String, Long> getMatches() {
+            return matches;
+        }
+    }
+
+    private final YaraHistogram latency = new YaraHistogram();
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder callbacks = new LongAdder();
+    private final LongAdder nativeCalls = new LongAdder();
+    private final Map<ErrorCode, LongAdder> errors = new EnumMap<>(ErrorCode.class);
+    private final Map<String, LongAdder> matches = new ConcurrentHashMap<>();
+
+    public YaraMetrics() {
+        // Populated once, never modified afterwards
+        for (ErrorCode code : ErrorCode.values()) {
+            errors.put(code, new LongAdder());
+        }
+    }
+
+    /**
+     * Start recording a scan
+     * @return
+     */
+    public Sample start() {
+        return new Sample(this);
+    }
+
+    /**
+     * Start recording a scan when metrics are enabled
+     * @param metrics
+     * @return Sample or null
+     */
+    public static Sample start(YaraMetrics metrics) {
+        return metrics != null ? metrics.start() : null;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Clear the metrics, concurrent scans may be partially kept
+     */
+    public void reset() {
+        latency.reset();
+        scans.reset();
+        files.reset();
+        bytes.reset();
+        callbacks.reset();
+        nativeCalls.reset();
+        errors.values().forEach(LongAdder::reset);
+        matches.clear();
+    }
+
+    /**
+     * Error code of a failed scan
+     * @param t
+     * @return
+     */
+    public static ErrorCode errorCode(Throwable t) {
+        checkArgument(t != null);
+        return t instanceof YaraException ? ((YaraException) t).getCode() : ErrorCode.UNKNOWN;
+    }
+}
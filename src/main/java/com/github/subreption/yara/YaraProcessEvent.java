@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of an external executable run, split in spawn, wait and output parsing
+ * <br>Confined to the calling thread.
+ *
+ * @see YaraEvents#process(String)
+ */
+@Name("com.github.subreption.yara.Process")
+@Label("YARA Process")
+@Category("YARA")
+@Description("External yara executable run")
+public final class YaraProcessEvent extends Event {
+    @Label("Program")
+    private String program;
+
+    @Label("Spawn Time")
+    @Timespan
+    private long spawnTime;
+
+    @Label("Wait Time")
+    @Timespan
+    private long waitTime;
+
+    @Label("Parse Time")
+    @Description("Reading and parsing the process output")
+    @Timespan
+    private long parseTime;
+
+    @Label("Exit Code")
+    @Description("-1 when the process did not exit in time")
+    private int exitCode = -1;
+
+    @Label("Error")
+    private String error;
+
+    private transient long mark = System.nanoTime();
+
+    YaraProcessEvent(String program) {
+        this.program = program;
+    }
+
+    public String getProgram() {
+        return program;
+    }
+
+    /**
+     * The process was started
+     */
+    public void onSpawned() {
+        spawnTime = lap();
+    }
+
+    /**
+     * Waiting for the process completed
+     * @param process
+     * @param exited Whether the process exited before the timeout
+     */
+    public void onExited(Process process, boolean exited) {
+        waitTime = lap();
+        exitCode = exited ? process.exitValue() : -1;
+    }
+
+    /**
+     * Complete the run once the output is parsed
+     * @param error Error or null
+     */
+    public void finish(ErrorCode error) {
+        parseTime = lap();
+        end();
+
+        if (shouldCommit()) {
+            this.error = error != null && error != ErrorCode.SUCCESS ? error.name() : null;
+            commit();
+        }
+    }
+
+    private long lap() {
+        long now = System.nanoTime();
+        long elapsed = now - mark;
+        mark = now;
+        return elapsed;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+/**
+ * Yara rule id callback, no rule object is materialized
+ */
+public interface YaraRuleIdCallback {
+    /**
+     * Called when a rule matches
+     *
+     * @param ruleIndex Index of the rule within the scanned ruleset
+     */
+    void onMatch(int ruleIndex);
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Immutable selection of rules by tag, namespace or identifier
+ * <br>A rule is selected when it has any of the tags, belongs to any of the namespaces and
+ * has any of the identifiers; criteria left empty select every rule (yara -t, -i).
+ */
+public final class YaraRuleSelector {
+    public static final String DEFAULT_NAMESPACE = "default";
+
+    private final Set<String> tags;
+    private final Set<String> namespaces;
+    private final Set<String> identifiers;
+
+    private YaraRuleSelector(Builder builder) {
+        this.tags = Collections.unmodifiableSet(new LinkedHashSet<>(builder.tags));
+        this.namespaces = Collections.unmodifiableSet(new LinkedHashSet<>(builder.namespaces));
+        this.identifiers = Collections.unmodifiableSet(new LinkedHashSet<>(builder.identifiers));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Tags (-t), empty for any
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return Namespaces, empty for any
+     */
+    public Set<String> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * @return Rule identifiers (-i), empty for any
+     */
+    public Set<String> getIdentifiers() {
+        return identifiers;
+    }
+
+    /**
+     * Check whether a rule is selected
+     * @param namespace Rule namespace, null for the default namespace
+     * @param identifier
+     * @param tags
+     * @return
+     */
+    public boolean matches(String namespace, String identifier, Iterator<String> tags) {
+        if (!namespaces.isEmpty() && !namespaces.contains(namespace != null ? namespace : DEFAULT_NAMESPACE)) {
+            return false;
+        }
+
+        if (!identifiers.isEmpty() && !identifiers.contains(identifier)) {
+            return false;
+        }
+
+        if (this.tags.isEmpty()) {
+            return true;
+        }
+
+        while (tags != null && tags.hasNext()) {
+            if (this.tags.contains(tags.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Builder {
+        private final Set<String> tags = new LinkedHashSet<>();
+        private final Set<String> namespaces = new LinkedHashSet<>();
+        private final Set<String> identifiers = new LinkedHashSet<>();
+
+        private Builder() {
+        }
+
+        public Builder addTag(String tag) {
+            checkArgument(!Utils.isNullOrEmpty(tag));
+            tags.add(tag);
+            return this;
+        }
+
+        public Builder addNamespace(String namespace) {
+            checkArgument(!Utils.isNullOrEmpty(namespace));
+            namespaces.add(namespace);
+            return this;
+        }
+
+        public Builder addIdentifier(String identifier) {
+            checkArgument(!Utils.isNullOrEmpty(identifier));
+            identifiers.add(identifier);
+            return this;
+        }
+
+        public YaraRuleSelector build() {
+            return new YaraRuleSelector(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+/**
+ * Compiled ruleset shared by any number of scanners
+ * <br>The ruleset is immutable and reference counted: the handle and every scanner
+ * created from it hold a reference, the compiled rules are released once all of them
+ * are closed.
+ */
+public interface YaraRules extends AutoCloseable {
+    /**
+     * Create a scanner attached to this ruleset
+     * <br>Scanners are lightweight, create one per thread rather than sharing one
+     * (scanner settings are not thread safe).
+     *
+     * @return
+     */
+    YaraScanner createScanner();
+
+    /**
+     * Create a view of this ruleset limited to the selected rules
+     * <br>Rules left out are neither evaluated nor reported, including with negate. The view
+     * is a ruleset of its own, close it once its scanners are created.
+     *
+     * @param selector
+     * @return
+     */
+    YaraRules subset(YaraRuleSelector selector);
+
+    /**
+     * Release the handle reference, scanners already created remain usable
+     */
+    @Override
+    void close();
+}
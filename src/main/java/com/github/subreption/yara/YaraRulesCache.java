@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Content-addressed on-disk cache of compiled rules
+ * <br>Entries are keyed on a digest of every rule source added to a compiler (in order,
+ * with their namespaces) and the libyara version. The total size of the cache directory
+ * is bounded, least recently used entries are evicted first.
+ *
+ * @apiNote Sources pulled in through <code>include</code> directives are not part of the key,
+ * rules added from a source with includes are compiled without the cache.
+ */
+public class YaraRulesCache {
+    private static final Logger logger = LoggerFactory.getLogger(YaraRulesCache.class);
+
+    public static final String SUFFIX = "." + Utils.compiledRuleIdentifier;
+
+    /**
+     * Writes a new cache entry
+     */
+    public interface EntryWriter {
+        void write(Path path) throws IOException;
+    }
+
+    /**
+     * Cache key accumulator
+     */
+    public static class Key {
+        private static final byte SOURCE = 0;
+        private static final byte VARIABLE = 1;
+
+        private final MessageDigest digest;
+        private boolean cacheable = true;
+
+        public Key() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Add a rule source
+         * @param namespace
+         * @param content
+         * @return
+         */
+        public Key add(String namespace, byte[] content) {
+            checkArgument(content != null);
+
+            if (cacheable && Utils.hasIncludes(new String(content, StandardCharsets.UTF_8))) {
+                cacheable = false;
+            }
+
+            digest.update(SOURCE);
+            update(namespace != null ? namespace : "");
+            update(content);
+            return this;
+        }
+
+        /**
+         * Add an external variable definition
+         * @param identifier
+         * @param value
+         * @return
+         */
+        public Key define(String identifier, Object value) {
+            checkArgument(!Utils.isNullOrEmpty(identifier));
+            checkArgument(value != null);
+
+            digest.update(VARIABLE);
+            update(identifier);
+            update(value.getClass().getSimpleName());
+            update(value.toString());
+            return this;
+        }
+
+        /**
+         * Check the sources added can be cached, none of them includes other files
+         * @return
+         */
+        public boolean isCacheable() {
+            return cacheable;
+        }
+
+        /**
+         * Complete the key
+         * @param version libyara version
+         * @return
+         */
+        public String build(String version) {
+            update(version != null ? version : "");
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+
+        private void update(String value) {
+            update(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void update(byte[] value) {
+            // Length prefix keeps ("ab", "c") and ("a", "bc") apart
+            long length = value.length;
+            for (int i = 0; i < 8; ++i) {
+                digest.update((byte) (length >>> (i * 8)));
+            }
+            digest.update(value);
+        }
+    }
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * @param directory Cache directory, created when missing
+     * @param maxSize   Maximum total size of the cached entries (bytes)
+     */
+    public YaraRulesCache(Path directory, long maxSize) {
+        checkArgument(directory != null);
+        checkArgument(maxSize > 0);
+
+        try {
+            Files.createDirectories(directory);
+        }
+        catch (IOException ioe) {
+            throw new RuntimeException("Failed to create rules cache directory", ioe);
+        }
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Lookup compiled rules, a hit refreshes the entry recency
+     * @param key
+     * @return Path of the compiled rules or null
+     */
+    public Path get(String key) {
+        checkArgument(!Utils.isNullOrEmpty(key));
+
+        Path entry = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (IOException ioe) {
+            logger.debug(String.format("Failed to touch cache entry %s: %s", entry, ioe.getMessage()));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Store compiled rules
+     * <br>The entry is written to a temporary file and moved in place, concurrent
+     * writers of the same key simply replace each other.
+     * @param key
+     * @param writer
+     * @return Path of the stored entry
+     */
+    public Path put(String key, EntryWriter writer) throws IOException {
+        checkArgument(!Utils.isNullOrEmpty(key));
+        checkArgument(writer != null);
+
+        Path entry = directory.resolve(key + SUFFIX);
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+
+        try {
+            writer.write(temp);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+
+        evict(entry);
+        return entry;
+    }
+
+    /**
+     * Evict least recently used entries until the cache fits its size bound
+     * @param keep Entry never evicted (the one just stored)
+     */
+    private void evict(Path keep) {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+                total += Files.size(entry);
+            }
+        }
+        catch (IOException ioe) {
+            logger.warn(String.format("Failed to list rules cache %s: %s", directory, ioe.getMessage()));
+            return;
+        }
+
+        if (total <= maxSize) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(YaraRulesCache::lastModified));
+
+        for (Path entry : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+
+            if (entry.equals(keep)) {
+                continue;
+            }
+
+            try {
+                long size = Files.size(entry);
+                Files.deleteIfExists(entry);
+                total -= size;
+
+                logger.debug(String.format("Evicted rules cache entry %s", entry));
+            }
+            catch (IOException ioe) {
+                logger.warn(String.format("Failed to evict %s: %s", entry, ioe.getMessage()));
+            }
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        }
+        catch (IOException ioe) {
+            return 0;
+        }
+    }
+}
@@ -27,4 +27,24 @@ public interface YaraScanCallback {
      * @param rule Rule that matched
      */
     void onMatch(YaraRule rule);
+
+    /**
+     * Verdict on a scan warning
+     */
+    enum Action {
+        CONTINUE,
+        ABORT
+    }
+
+    /**
+     * Called when a string hits the match limit or slows down the scan
+     * <br>When the scan continues, matches of a string over the match limit are dropped.
+     * An aborted scan fails with the error code of the warning type.
+     *
+     * @param warning Warning
+     * @return Whether to continue or abort the scan, continue by default
+     */
+    default Action onWarning(YaraScanWarning warning) {
+        return Action.CONTINUE;
+    }
 }
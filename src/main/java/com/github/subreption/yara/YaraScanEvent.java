@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a scan, the event duration is the scan time
+ * <br>Confined to the scanning thread.
+ *
+ * @see YaraEvents#scan(String)
+ */
+@Name("com.github.subreption.yara.Scan")
+@Label("YARA Scan")
+@Category("YARA")
+@Description("Rules matched against a target")
+public final class YaraScanEvent extends Event {
+    @Label("Engine")
+    private String engine;
+
+    @Label("Target Size")
+    @Description("Bytes scanned, -1 when unknown")
+    @DataAmount
+    private long size = -1;
+
+    @Label("File")
+    private boolean file;
+
+    @Label("Matches")
+    private int matches;
+
+    @Label("Timed Out")
+    private boolean timedOut;
+
+    @Label("Error")
+    private String error;
+
+    YaraScanEvent(String engine) {
+        this.engine = engine;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Rule reported
+     */
+    public void onMatch() {
+        ++matches;
+    }
+
+    public int getMatches() {
+        return matches;
+    }
+
+    /**
+     * Complete the scan
+     * @param size Bytes scanned, -1 when unknown
+     * @param file Whether the target is a file
+     * @param error Error or null
+     */
+    public void finish(long size, boolean file, ErrorCode error) {
+        end();
+
+        if (shouldCommit()) {
+            this.size = size;
+            this.file = file;
+            this.timedOut = error == ErrorCode.SCAN_TIMEOUT;
+            this.error = error != null && error != ErrorCode.SUCCESS ? error.name() : null;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Warning raised while scanning, about a string of a rule
+ */
+public class YaraScanWarning {
+    /**
+     * Warning type
+     */
+    public enum Type {
+        /**
+         * The string reached the maximum number of matches libyara keeps
+         */
+        TOO_MANY_MATCHES(ErrorCode.TOO_MANY_MATCHES),
+        /**
+         * The string is so general or common that matching it takes very long
+         */
+        SLOW_SCANNING(ErrorCode.CALLBACK_ERROR);
+
+        private final ErrorCode errorCode;
+
+        Type(ErrorCode errorCode) {
+            this.errorCode = errorCode;
+        }
+
+        /**
+         * Error code of a scan aborted on this warning
+         * @return
+         */
+        public ErrorCode getErrorCode() {
+            return errorCode;
+        }
+    }
+
+    private final Type type;
+    private final YaraRule rule;
+    private final String stringIdentifier;
+    private final long count;
+
+    /**
+     * @param type
+     * @param rule              Rule of the string (without matches)
+     * @param stringIdentifier
+     * @param count             Matches of the string so far, -1 when unknown
+     */
+    public YaraScanWarning(Type type, YaraRule rule, String stringIdentifier, long count) {
+        checkArgument(type != null);
+        checkArgument(rule != null);
+
+        this.type = type;
+        this.rule = rule;
+        this.stringIdentifier = stringIdentifier;
+        this.count = count;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public YaraRule getRule() {
+        return rule;
+    }
+
+    public String getStringIdentifier() {
+        return stringIdentifier;
+    }
+
+    /**
+     * Matches of the string when the warning was raised
+     * @return Count or -1 when the engine does not report it (external)
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: rule %s string %s (%d matches)", type, rule.getIdentifier(), stringIdentifier, count);
+    }
+}
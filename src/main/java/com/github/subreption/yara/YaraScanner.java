@@ -18,7 +18,15 @@
 package com.github.subreption.yara;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Yara scanner
@@ -41,6 +49,19 @@ public interface YaraScanner extends AutoCloseable {
      */
     void setNotSatisfiedOnly(boolean value);
 
+    /**
+     * Stop searching a string once it matched, when its condition only tests its presence
+     * <br>Rules evaluate the same, but fewer matches of such strings are reported.
+     * @param value
+     */
+    void setFastMode(boolean value);
+
+    /**
+     * Record the scans of this scanner
+     * @param metrics Metrics, possibly shared with other scanners, null to stop recording
+     */
+    void setMetrics(YaraMetrics metrics);
+
     /**
      * Set scan callback
      *
@@ -71,6 +92,15 @@ public interface YaraScanner extends AutoCloseable {
      */
     void scan(File file, Map<String, String> moduleArgs, YaraScanCallback cbk);
 
+    /**
+     * Scan file with per-call options
+     * <br>Settings of this scanner (timeout, max rules, negate, callback) are not used.
+     *
+     * @param file
+     * @param options
+     */
+    void scan(File file, ScanOptions options);
+
     /**
      * Scan memory
      *
@@ -94,4 +124,293 @@ public interface YaraScanner extends AutoCloseable {
      */
     void scan(byte[] buffer, Map<String, String> moduleArgs, YaraScanCallback cbk);
 
+    /**
+     * Scan memory with per-call options
+     *
+     * @param buffer
+     * @param options
+     */
+    void scan(byte[] buffer, ScanOptions options);
+
+    /**
+     * Scan buffer contents between its position and limit
+     * <br>Direct buffers are scanned in place, heap buffers through their backing array.
+     * The buffer position and limit are left untouched.
+     *
+     * @param buffer
+     */
+    void scan(ByteBuffer buffer);
+
+    /**
+     * Scan buffer region
+     *
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     */
+    void scan(ByteBuffer buffer, int offset, int length);
+
+    /**
+     * Scan buffer region
+     *
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     */
+    void scan(ByteBuffer buffer, int offset, int length, Map<String, String> moduleArgs, YaraScanCallback cbk);
+
+    /**
+     * Scan buffer region with per-call options
+     *
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param options
+     */
+    void scan(ByteBuffer buffer, int offset, int length, ScanOptions options);
+
+    /**
+     * Scan the whole content of an open file
+     * <br>The channel position is left untouched and the channel is not closed.
+     *
+     * @param channel
+     */
+    void scan(FileChannel channel);
+
+    /**
+     * Scan a region of an open file
+     *
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     */
+    void scan(FileChannel channel, long position, long length);
+
+    /**
+     * Scan a region of an open file
+     *
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     */
+    void scan(FileChannel channel, long position, long length, Map<String, String> moduleArgs, YaraScanCallback cbk);
+
+    /**
+     * Scan a region of an open file with per-call options
+     *
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param options
+     */
+    void scan(FileChannel channel, long position, long length, ScanOptions options);
+
+    /**
+     * Scan non-contiguous blocks as one logical target
+     * <br>Match offsets are relative to the logical target (block base plus offset in block).
+     *
+     * @param blocks Blocks ordered by base offset, not overlapping
+     * @param moduleArgs Module arguments (-x)
+     */
+    void scan(List<YaraMemoryBlock> blocks, Map<String, String> moduleArgs, YaraScanCallback cbk);
+
+    /**
+     * Scan non-contiguous blocks as one logical target with per-call options
+     *
+     * @param blocks Blocks ordered by base offset, not overlapping
+     * @param options
+     */
+    void scan(List<YaraMemoryBlock> blocks, ScanOptions options);
+
+    /**
+     * Scan the memory of a live process
+     * <br>The process is suspended while scanned, see libyara for platform requirements
+     * (ptrace permissions on Linux).
+     *
+     * @param pid
+     */
+    void scanProcess(int pid);
+
+    /**
+     * Scan the memory of a live process
+     *
+     * @param pid
+     * @param moduleArgs Module arguments (-x)
+     */
+    void scanProcess(int pid, Map<String, String> moduleArgs, YaraScanCallback cbk);
+
+    /**
+     * Scan the memory of a live process with per-call options
+     *
+     * @param pid
+     * @param options
+     */
+    void scanProcess(int pid, ScanOptions options);
+
+    /**
+     * Scan file, reporting matching rule indexes only
+     * <br>Rule indexes are the order of the compiled rules, the same for both engines. The
+     * external engine numbers rules loaded from a compiled file (or compiled from sources with
+     * includes) in order of first match over the lifetime of the ruleset.
+     *
+     * @param file
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    void scanRuleIds(File file, Map<String, String> moduleArgs, YaraRuleIdCallback cbk);
+
+    /**
+     * Scan buffer, reporting matching rule indexes only
+     *
+     * @param buffer
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    void scanRuleIds(byte[] buffer, Map<String, String> moduleArgs, YaraRuleIdCallback cbk);
+
+    /**
+     * Scan buffer region, reporting matching rule indexes only
+     *
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    void scanRuleIds(ByteBuffer buffer, int offset, int length, Map<String, String> moduleArgs, YaraRuleIdCallback cbk);
+
+    /**
+     * Scan a region of an open file, reporting matching rule indexes only
+     *
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    void scanRuleIds(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                     YaraRuleIdCallback cbk);
+
+    /**
+     * Indexes of the rules matching a file
+     *
+     * @param file
+     * @return
+     */
+    default BitSet matchedRules(File file) {
+        BitSet matched = new BitSet();
+        scanRuleIds(file, null, matched::set);
+        return matched;
+    }
+
+    /**
+     * Indexes of the rules matching a buffer
+     *
+     * @param buffer
+     * @return
+     */
+    default BitSet matchedRules(byte[] buffer) {
+        BitSet matched = new BitSet();
+        scanRuleIds(buffer, null, matched::set);
+        return matched;
+    }
+
+    /**
+     * Scan a directory tree in parallel
+     * <br>Files are filtered on their attributes before being opened, and scanned
+     * concurrently with this scanner while the tree is still being walked.
+     * @param root
+     * @param options Filters and parallelism, null for defaults
+     * @param sink Results sink, called concurrently
+     */
+    default void scanTree(Path root, TreeScanOptions options, YaraBatchSink sink) {
+        YaraTreeScanner.scan(this, root, options, sink);
+    }
+
+    /**
+     * Scan file asynchronously on the shared scan executor
+     * @param file
+     * @param options
+     * @return Future of the matching rules, cancelling it aborts the scan where the engine allows it
+     */
+    default CompletableFuture<ScanResult> scanAsync(File file, ScanOptions options) {
+        return scanAsync(file, options, YaraAsync.defaultExecutor());
+    }
+
+    /**
+     * Scan file asynchronously
+     * @param file
+     * @param options
+     * @param executor Executor of platform threads
+     * @return Future of the matching rules, cancelling it aborts the scan where the engine allows it
+     */
+    default CompletableFuture<ScanResult> scanAsync(File file, ScanOptions options, Executor executor) {
+        final ScanOptions current = options != null ? options : ScanOptions.DEFAULT;
+        return YaraAsync.submit(executor, (callback, cancelled) -> scan(file, current.toBuilder().setCallback(callback).build()));
+    }
+
+    /**
+     * Scan buffer asynchronously on the shared scan executor
+     * @param buffer
+     * @param options
+     * @return Future of the matching rules, cancelling it aborts the scan where the engine allows it
+     */
+    default CompletableFuture<ScanResult> scanAsync(byte[] buffer, ScanOptions options) {
+        return scanAsync(buffer, options, YaraAsync.defaultExecutor());
+    }
+
+    /**
+     * Scan buffer asynchronously
+     * @param buffer
+     * @param options
+     * @param executor Executor of platform threads
+     * @return Future of the matching rules, cancelling it aborts the scan where the engine allows it
+     */
+    default CompletableFuture<ScanResult> scanAsync(byte[] buffer, ScanOptions options, Executor executor) {
+        final ScanOptions current = options != null ? options : ScanOptions.DEFAULT;
+        return YaraAsync.submit(executor, (callback, cancelled) -> scan(buffer, current.toBuilder().setCallback(callback).build()));
+    }
+
+    /**
+     * Scan the remaining bytes of a buffer asynchronously on the shared scan executor
+     * <br>The buffer content must not change until the future completes.
+     * @param buffer
+     * @param options
+     * @return Future of the matching rules, cancelling it aborts the scan where the engine allows it
+     */
+    default CompletableFuture<ScanResult> scanAsync(ByteBuffer buffer, ScanOptions options) {
+        return scanAsync(buffer, options, YaraAsync.defaultExecutor());
+    }
+
+    /**
+     * Scan the remaining bytes of a buffer asynchronously
+     * <br>The buffer content must not change until the future completes.
+     * @param buffer
+     * @param options
+     * @param executor Executor of platform threads
+     * @return Future of the matching rules, cancelling it aborts the scan where the engine allows it
+     */
+    default CompletableFuture<ScanResult> scanAsync(ByteBuffer buffer, ScanOptions options, Executor executor) {
+        Preconditions.checkArgument(buffer != null);
+
+        final ScanOptions current = options != null ? options : ScanOptions.DEFAULT;
+        final int offset = buffer.position();
+        final int length = buffer.remaining();
+
+        return YaraAsync.submit(executor, (callback, cancelled) ->
+                scan(buffer, offset, length, current.toBuilder().setCallback(callback).build()));
+    }
+
+    /**
+     * Scan a stream in bounded memory, window by window
+     * <br>See {@link StreamScanResult} for the semantics of windowed scans.
+     * @param stream Read to its end, not closed
+     * @param options Window sizing, null for defaults
+     * @return
+     */
+    default StreamScanResult scan(InputStream stream, StreamScanOptions options) {
+        return YaraStreamScanner.scan(this, stream, options, -1);
+    }
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Bounded memory stream scan over overlapping windows
+ * <br>The stream is read in chunks into a pooled direct buffer, each window is the chunk
+ * plus the tail of the previous window. Matches starting in the tail of a window are left
+ * to the next window, which holds them in full: matches no longer than the overlap are
+ * reported exactly once, at their absolute stream offset. Rules reported by several windows
+ * are merged.
+ */
+public final class YaraStreamScanner {
+    /**
+     * Overlap when the ruleset bound is unknown (libyara regexp scan limit)
+     */
+    public static final int DEFAULT_OVERLAP = 4096;
+
+    private static final int MAX_POOLED = 4;
+
+    private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private YaraStreamScanner() {
+    }
+
+    /**
+     * Scan a stream, the stream is read to its end but not closed
+     * @param scanner
+     * @param stream
+     * @param options
+     * @param maxMatchLength Longest possible match of the ruleset, negative when unknown
+     * @return
+     */
+    public static StreamScanResult scan(YaraScanner scanner, InputStream stream, StreamScanOptions options,
+                                        int maxMatchLength) {
+        checkArgument(scanner != null);
+        checkArgument(stream != null);
+
+        StreamScanOptions current = options != null ? options : StreamScanOptions.DEFAULT;
+
+        int overlap = current.getOverlap();
+        if (overlap < 0) {
+            overlap = maxMatchLength >= 0 ? maxMatchLength : DEFAULT_OVERLAP;
+        }
+
+        int chunkSize = current.getChunkSize();
+        checkArgument(overlap <= Integer.MAX_VALUE - chunkSize);
+
+        ByteBuffer buffer = take(chunkSize + overlap);
+        try {
+            return scan(scanner, Channels.newChannel(stream), buffer, overlap, current.getScanOptions());
+        }
+        catch (IOException ioe) {
+            throw new YaraException(ioe.getMessage());
+        }
+        finally {
+            give(buffer);
+        }
+    }
+
+    private static StreamScanResult scan(YaraScanner scanner, ReadableByteChannel channel, ByteBuffer buffer,
+                                         int overlap, ScanOptions options) throws IOException {
+        Map<String, WindowedRule> rules = new LinkedHashMap<>();
+        long windowStart = 0;
+        long length = 0;
+        int windows = 0;
+        boolean eof = false;
+
+        while (true) {
+            int carried = buffer.position();
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+
+            int filled = buffer.position();
+            length += filled - carried;
+
+            // Matches starting in the tail are reported by the next window
+            final long start = windowStart;
+            final long keepBefore = eof ? Long.MAX_VALUE : windowStart + filled - overlap;
+
+            scanner.scan(buffer, 0, filled, options.toBuilder()
+                    .setCallback(rule -> rules.computeIfAbsent(rule.getIdentifier(), k -> new WindowedRule(rule))
+                                              .add(rule, start, keepBefore))
+                    .build());
+            ++windows;
+
+            if (eof) {
+                break;
+            }
+
+            ((Buffer) buffer).position(filled - overlap);
+            buffer.compact();
+            windowStart += filled - overlap;
+        }
+
+        return new StreamScanResult(new ArrayList<>(rules.values()), length, windows, overlap);
+    }
+
+    private static ByteBuffer take(int capacity) {
+        for (Iterator<ByteBuffer> it = pool.iterator(); it.hasNext(); ) {
+            ByteBuffer buffer = it.next();
+            if (buffer.capacity() == capacity && pool.remove(buffer)) {
+                pooled.decrementAndGet();
+                ((Buffer) buffer).clear();
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private static void give(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.offer(buffer);
+        }
+        else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * Rule merged over windows, match offsets are absolute
+     */
+    private static class WindowedRule implements YaraRule {
+        private final String identifier;
+        private final List<String> tags = new ArrayList<>();
+        private final List<YaraMeta> metas = new ArrayList<>();
+        private final Map<String, TreeMap<Long, YaraMatch>> strings = new LinkedHashMap<>();
+
+        WindowedRule(YaraRule rule) {
+            this.identifier = rule.getIdentifier();
+            rule.getTags().forEachRemaining(tags::add);
+            rule.getMetadata().forEachRemaining(metas::add);
+        }
+
+        void add(YaraRule rule, long start, long keepBefore) {
+            for (Iterator<YaraString> it = rule.getStrings(); it.hasNext(); ) {
+                YaraString string = it.next();
+                TreeMap<Long, YaraMatch> matches = strings.computeIfAbsent(string.getIdentifier(),
+                        k -> new TreeMap<>());
+
+                for (Iterator<YaraMatch> mit = string.getMatches(); mit.hasNext(); ) {
+                    YaraMatch match = mit.next();
+                    long offset = start + match.getOffset();
+
+                    if (offset < keepBefore) {
+                        matches.putIfAbsent(offset, new WindowedMatch(match, offset));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public Iterator<String> getTags() {
+            return tags.iterator();
+        }
+
+        @Override
+        public Iterator<YaraMeta> getMetadata() {
+            return metas.iterator();
+        }
+
+        @Override
+        public Iterator<YaraString> getStrings() {
+            List<YaraString> list = new ArrayList<>();
+            strings.forEach((id, matches) -> {
+                if (!matches.isEmpty()) {
+                    list.add(new WindowedString(id, new ArrayList<>(matches.values())));
+                }
+            });
+            return list.iterator();
+        }
+    }
+
+    private static class WindowedString implements YaraString {
+        private final String identifier;
+        private final List<YaraMatch> matches;
+
+        WindowedString(String identifier, List<YaraMatch> matches) {
+            this.identifier = identifier;
+            this.matches = matches;
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public Iterator<YaraMatch> getMatches() {
+            return matches.iterator();
+        }
+    }
+
+    private static class WindowedMatch implements YaraMatch {
+        private final YaraMatch match;
+        private final long offset;
+
+        WindowedMatch(YaraMatch match, long offset) {
+            this.match = match;
+            this.offset = offset;
+        }
+
+        @Override
+        public String getValue() {
+            return match.getValue();
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return match.getBytes();
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
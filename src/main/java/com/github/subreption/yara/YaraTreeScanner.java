@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Parallel directory tree scan
+ * <br>Directories are listed and files scanned as fork-join tasks on the same pool,
+ * so scanning starts with the first file found and no core idles while the tree is walked.
+ * The scanner is shared by the pool threads. Pools are shared by the scans of the same
+ * parallelism and live for the whole process, so their threads and the native scanners
+ * they use are reused from one scan to the next.
+ */
+public final class YaraTreeScanner {
+    private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    private final YaraScanner scanner;
+    private final Path root;
+    private final TreeScanOptions options;
+    private final YaraBatchSink sink;
+    private final PathMatcher matcher;
+    private final Set<Object> visited = ConcurrentHashMap.newKeySet();
+    private final long deadline;
+    private volatile boolean expired;
+
+    private YaraTreeScanner(YaraScanner scanner, Path root, TreeScanOptions options, YaraBatchSink sink) {
+        this.scanner = scanner;
+        this.root = root;
+        this.options = options;
+        this.sink = sink;
+        this.matcher = options.getGlob() != null
+                ? root.getFileSystem().getPathMatcher("glob:" + options.getGlob())
+                : null;
+        this.deadline = options.getTimeout() > 0
+                ? System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getTimeout())
+                : 0;
+    }
+
+    /**
+     * Scan a directory tree, blocking until done
+     * <br>Once the tree scan timeout expires no further file is scanned and the scan fails
+     * with {@link ErrorCode#SCAN_TIMEOUT}, files already reported stay reported.
+     * @param scanner Scanner, used concurrently
+     * @param root
+     * @param options
+     * @param sink Results sink, called concurrently
+     */
+    public static void scan(YaraScanner scanner, Path root, TreeScanOptions options, YaraBatchSink sink) {
+        checkArgument(scanner != null);
+        checkArgument(root != null && Files.isDirectory(root));
+        checkArgument(sink != null);
+
+        TreeScanOptions current = options != null ? options : TreeScanOptions.DEFAULT;
+        YaraTreeScanner tree = new YaraTreeScanner(scanner, root, current, sink);
+
+        ForkJoinPool pool = current.getPool() != null
+                ? current.getPool()
+                : pools.computeIfAbsent(current.getParallelism(), ForkJoinPool::new);
+
+        pool.invoke(tree.new DirectoryTask(root));
+
+        if (tree.expired) {
+            throw new YaraException(ErrorCode.SCAN_TIMEOUT.getValue());
+        }
+    }
+
+    /**
+     * @return True once the tree scan timeout expired
+     */
+    private boolean expired() {
+        if (!expired && deadline != 0 && System.nanoTime() - deadline >= 0) {
+            expired = true;
+        }
+        return expired;
+    }
+
+    /**
+     * @param path
+     * @return Attributes of files and directories to walk, null when filtered out
+     */
+    private BasicFileAttributes attributes(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+        if (attrs.isSymbolicLink()) {
+            if (options.getSymlinks() == TreeScanOptions.Symlinks.SKIP) {
+                return null;
+            }
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        }
+
+        if (attrs.isDirectory()) {
+            // Walk each directory once, links may loop
+            Object key = attrs.fileKey() != null ? attrs.fileKey() : path.toRealPath();
+            return visited.add(key) ? attrs : null;
+        }
+
+        if (!attrs.isRegularFile()
+                || !options.acceptSize(attrs.size())
+                || !options.acceptExtension(path.getFileName().toString())
+                || (matcher != null && !matcher.matches(root.relativize(path)))) {
+            return null;
+        }
+
+        return attrs;
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+
+        DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (expired()) {
+                return;
+            }
+
+            if (directory == root) {
+                try {
+                    attributes(root);
+                }
+                catch (IOException ioe) {
+                    sink.onError(root, ioe);
+                    return;
+                }
+            }
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    try {
+                        BasicFileAttributes attrs = attributes(path);
+                        if (attrs == null) {
+                            continue;
+                        }
+
+                        tasks.add((attrs.isDirectory() ? new DirectoryTask(path) : new FileTask(path)).fork());
+                    }
+                    catch (IOException ioe) {
+                        sink.onError(path, ioe);
+                    }
+                }
+            }
+            catch (IOException ioe) {
+                sink.onError(directory, ioe);
+            }
+
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+    }
+
+    private class FileTask extends RecursiveAction {
+        private final Path path;
+
+        FileTask(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            if (expired()) {
+                return;
+            }
+
+            try {
+                scanner.scan(path.toFile(), options.getScanOptions().toBuilder()
+                        .setCallback(rule -> sink.onMatch(path, rule))
+                        .build());
+            }
+            catch (Exception e) {
+                sink.onError(path, e);
+                return;
+            }
+
+            sink.onComplete(path);
+        }
+    }
+}
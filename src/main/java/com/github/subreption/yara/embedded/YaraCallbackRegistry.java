@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import org.fusesource.hawtjni.runtime.Callback;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Process wide scan callback dispatcher
+ *
+ * @apiNote A single static native callback is shared by all scans, libyara hands back the
+ * scan id given as user_data which selects the Java handler. This avoids allocating one of
+ * the few hawtjni callback slots per scan.
+ */
+final class YaraCallbackRegistry {
+    /**
+     * Scan message handler
+     */
+    interface Handler {
+        long onScan(long context, long type, long message);
+    }
+
+    private static final long CALLBACK_ABORT = 1;
+
+    private static final Map<Long, Handler> handlers = new ConcurrentHashMap<>();
+    private static final AtomicLong ids = new AtomicLong();
+    private static volatile Callback callback;
+
+    private YaraCallbackRegistry() {
+    }
+
+    /**
+     * Native callback address (YR_CALLBACK_FUNC), created on first use and never disposed
+     * @return
+     */
+    static long address() {
+        Callback current = callback;
+        if (current == null) {
+            synchronized (YaraCallbackRegistry.class) {
+                current = callback;
+                if (current == null) {
+                    current = new Callback(YaraCallbackRegistry.class, "nativeOnScan", 4);
+                    if (current.getAddress() == 0) {
+                        throw new IllegalStateException("Too many concurrent callbacks, unable to create.");
+                    }
+                    callback = current;
+                }
+            }
+        }
+
+        return current.getAddress();
+    }
+
+    /**
+     * Register handler
+     * @param handler
+     * @return Scan id, to be passed as callback user_data
+     */
+    static long register(Handler handler) {
+        checkArgument(handler != null);
+
+        long id = ids.incrementAndGet();
+        handlers.put(id, handler);
+        return id;
+    }
+
+    static void unregister(long id) {
+        handlers.remove(id);
+    }
+
+    static int size() {
+        return handlers.size();
+    }
+
+    static long nativeOnScan(long context, long type, long message, long data) {
+        Handler handler = handlers.get(data);
+        if (handler == null) {
+            return CALLBACK_ABORT;
+        }
+
+        return handler.onScan(context, type, message);
+    }
+}
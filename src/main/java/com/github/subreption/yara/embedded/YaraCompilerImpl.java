@@ -23,11 +23,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.function.IntSupplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -54,10 +61,16 @@ public class YaraCompilerImpl implements YaraCompiler {
         }
 
         long nativeOnError(long errorLevel, long fileName, long lineNumber, long rule, long message, long data) {
-            callback.onError(YaraCompilationCallback.ErrorLevel.from((int) errorLevel),
-                    library.toString(fileName),
-                    lineNumber,
-                    library.toString(message));
+            YaraCompilationCallback.ErrorLevel level = YaraCompilationCallback.ErrorLevel.from((int) errorLevel);
+            String file = library.toString(fileName);
+            String text = library.toString(message);
+
+            callback.onError(level, file, lineNumber, text);
+
+            if (level == YaraCompilationCallback.ErrorLevel.WARNING) {
+                callback.onWarning(YaraCompilationWarning.parse(file, lineNumber,
+                        rule != 0 ? library.ruleIdentifier(rule) : null, text));
+            }
             return 0;
         }
     }
@@ -66,6 +79,13 @@ public class YaraCompilerImpl implements YaraCompiler {
     private long        peer;
     private Callback    callback;
 
+    private YaraRulesCache          cache;
+    private YaraRulesCache.Key      cacheKey;
+    private String                  key;
+    private List<Runnable>          pending = new ArrayList<>();
+    private int                     sources;
+    private boolean                 compiled;
+
     YaraCompilerImpl(YaraLibrary library, long compiler) {
         checkArgument(library != null);
         checkArgument(compiler != 0);
@@ -96,6 +116,20 @@ public class YaraCompilerImpl implements YaraCompiler {
         library.compilerSetCallback(peer, callBackAddress, 0);
     }
 
+    /**
+     * Set compiled rules cache, native compilation is deferred until a cache miss
+     * @param cache
+     */
+    @Override
+    public void setCache(YaraRulesCache cache) {
+        checkArgument(cache != null);
+        checkState(this.cache == null);
+        checkState(sources == 0);
+
+        this.cache = cache;
+        this.cacheKey = new YaraRulesCache.Key();
+    }
+
     /**
      * Release compiler instance
      * @throws Exception
@@ -114,6 +148,56 @@ public class YaraCompilerImpl implements YaraCompiler {
         library = null;
     }
 
+    @Override
+    public void defineVariable(String identifier, long value) {
+        define(identifier, value, () -> library.compilerDefineIntegerVariable(peer, identifier, value));
+    }
+
+    @Override
+    public void defineVariable(String identifier, double value) {
+        define(identifier, value, () -> library.compilerDefineFloatVariable(peer, identifier, value));
+    }
+
+    @Override
+    public void defineVariable(String identifier, boolean value) {
+        define(identifier, value, () -> library.compilerDefineBooleanVariable(peer, identifier, value));
+    }
+
+    @Override
+    public void defineVariable(String identifier, String value) {
+        checkArgument(value != null);
+        define(identifier, value, () -> library.compilerDefineStringVariable(peer, identifier, value));
+    }
+
+    /**
+     * Define an external variable, deferred with the rules sources when caching
+     * @param identifier
+     * @param value
+     * @param define
+     */
+    private void define(String identifier, Object value, IntSupplier define) {
+        checkArgument(!Utils.isNullOrEmpty(identifier));
+
+        Runnable add = () -> {
+            int ret = define.getAsInt();
+            if (ret != ErrorCode.SUCCESS.getValue()) {
+                throw new YaraException(ret);
+            }
+        };
+
+        if (cache != null) {
+            if (compiled) {
+                throw new YaraException(ErrorCode.INSUFFICIENT_MEMORY.getValue());
+            }
+
+            cacheKey.define(identifier, value);
+            pending.add(add);
+            return;
+        }
+
+        add.run();
+    }
+
     /**
      * Add rules content
      * @param content
@@ -121,7 +205,24 @@ public class YaraCompilerImpl implements YaraCompiler {
      * @return
      */
     public void addRulesContent(String content, String namespace) {
+        if (cache != null) {
+            checkArgument(content != null);
+
+            defer(namespace, content.getBytes(StandardCharsets.UTF_8), () -> addNativeContent(content, namespace));
+            return;
+        }
+
+        sources++;
+        addNativeContent(content, namespace);
+    }
+
+    private void addNativeContent(String content, String namespace) {
+        final YaraCompileEvent event = YaraEvents.compile(YaraCompileEvent.ADD_SOURCE, namespace);
+
         int ret  = library.compilerAddString(peer, content, namespace);
+        if (event != null) {
+            event.finish(content.length(), 1, ErrorCode.from(ret));
+        }
         if (ret != ErrorCode.SUCCESS.getValue()) {
             throw new YaraException(ret);
         }
@@ -133,12 +234,54 @@ public class YaraCompilerImpl implements YaraCompiler {
      * @param namespace
      */
     public void addRulesFile(String filePath, String fileName, String namespace) {
+        if (cache != null) {
+            checkArgument(!Utils.isNullOrEmpty(filePath));
+
+            byte[] content;
+            try {
+                content = Files.readAllBytes(Paths.get(filePath));
+            }
+            catch (IOException ioe) {
+                throw new RuntimeException("Failed to read rules file", ioe);
+            }
+
+            defer(namespace, content, () -> addNativeFile(filePath, fileName, namespace));
+            return;
+        }
+
+        sources++;
+        addNativeFile(filePath, fileName, namespace);
+    }
+
+    private void addNativeFile(String filePath, String fileName, String namespace) {
+        final YaraCompileEvent event = YaraEvents.compile(YaraCompileEvent.ADD_SOURCE, namespace);
+
         int ret  = library.compilerAddFile(peer, filePath, namespace, fileName);
+        if (event != null) {
+            event.finish(new File(filePath).length(), 1, ErrorCode.from(ret));
+        }
         if (ret != ErrorCode.SUCCESS.getValue()) {
             throw new YaraException(ret);
         }
     }
 
+    /**
+     * Record a rules source in the cache key, native compilation happens on a cache miss
+     * @param namespace
+     * @param content
+     * @param add
+     */
+    private void defer(String namespace, byte[] content, Runnable add) {
+        if (compiled) {
+            // Same as adding rules to a native compiler that already produced rules
+            throw new YaraException(ErrorCode.INSUFFICIENT_MEMORY.getValue());
+        }
+
+        cacheKey.add(namespace, content);
+        pending.add(add);
+        sources++;
+    }
+
     /**
      * Add rules from package
      * @param packagePath
@@ -191,6 +334,150 @@ public class YaraCompilerImpl implements YaraCompiler {
      * @return
      */
     public YaraScanner createScanner() {
+        return new YaraScannerImpl(library, getRules());
+    }
+
+    /**
+     * Create shared rules
+     * @return
+     */
+    @Override
+    public YaraRules createRules() {
+        return new YaraRulesImpl(library, getRules());
+    }
+
+    /**
+     * Save compiled rules
+     * @param path
+     */
+    @Override
+    public void save(Path path) {
+        checkArgument(path != null);
+
+        long rules = getRules();
+        try {
+            int ret = library.rulesSave(rules, path.toAbsolutePath().toString());
+            if (ret != ErrorCode.SUCCESS.getValue()) {
+                throw new YaraException(ret);
+            }
+        }
+        finally {
+            library.rulesDestroy(rules);
+        }
+    }
+
+    /**
+     * Save compiled rules to stream
+     * @param stream
+     */
+    @Override
+    public void save(OutputStream stream) {
+        checkArgument(stream != null);
+
+        byte[] content;
+        int error[] = new int[1];
+
+        long rules = getRules();
+        try {
+            content = library.rulesSaveStream(rules, error);
+            if (content == null) {
+                throw new YaraException(error[0]);
+            }
+        }
+        finally {
+            library.rulesDestroy(rules);
+        }
+
+        try {
+            stream.write(content);
+        }
+        catch (IOException ioe) {
+            throw new RuntimeException("Failed to save rules", ioe);
+        }
+    }
+
+    /**
+     * Compiled rules, a new YR_RULES instance is returned on every call
+     * @return
+     */
+    private long getRules() {
+        final YaraCompileEvent event = YaraEvents.compile(YaraCompileEvent.GET_RULES, null);
+        if (event == null) {
+            return cache != null ? getCachedRules() : compileRules();
+        }
+
+        ErrorCode error = null;
+        try {
+            return cache != null ? getCachedRules() : compileRules();
+        }
+        catch (RuntimeException e) {
+            error = YaraMetrics.errorCode(e);
+            throw e;
+        }
+        finally {
+            event.finish(-1, sources, error);
+        }
+    }
+
+    /**
+     * Load compiled rules from cache, compile and store them on a miss
+     * @return
+     */
+    private long getCachedRules() {
+        compiled = true;
+
+        if (!cacheKey.isCacheable()) {
+            logger.debug("Rules include other files, compiling without the cache");
+            addPending();
+            return compileRules();
+        }
+
+        if (key == null) {
+            key = cacheKey.build(library.version());
+        }
+
+        Path entry = cache.get(key);
+        if (entry != null) {
+            long rules[] = new long[1];
+
+            int ret = library.rulesLoad(entry.toAbsolutePath().toString(), rules);
+            if (ret == ErrorCode.SUCCESS.getValue()) {
+                logger.debug(String.format("Loaded cached rules %s", entry));
+                return rules[0];
+            }
+
+            logger.warn(String.format("Failed to load cached rules %s: %d", entry, ret));
+        }
+
+        addPending();
+
+        long rules = compileRules();
+        try {
+            cache.put(key, path -> {
+                int ret = library.rulesSave(rules, path.toAbsolutePath().toString());
+                if (ret != ErrorCode.SUCCESS.getValue()) {
+                    throw new IOException(ErrorCode.from(ret).toString());
+                }
+            });
+        }
+        catch (IOException ioe) {
+            logger.warn(String.format("Failed to cache rules: %s", ioe.getMessage()));
+        }
+
+        return rules;
+    }
+
+    /**
+     * Add the sources deferred by {@link #defer(String, byte[], Runnable)} to the native compiler
+     */
+    private void addPending() {
+        for (Runnable add : pending) {
+            add.run();
+        }
+        pending.clear();
+    }
+
+    private long compileRules() {
         int ret = 0;
 
         long rules[] = new long[1];
@@ -198,6 +485,6 @@ public class YaraCompilerImpl implements YaraCompiler {
             throw new YaraException(ret);
         }
 
-        return new YaraScannerImpl(library, rules[0]);
+        return rules[0];
     }
 }
@@ -17,9 +17,19 @@
 
 package com.github.subreption.yara.embedded;
 
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.Utils;
 import com.github.subreption.yara.Yara;
 import com.github.subreption.yara.YaraCompiler;
 import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraScanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
 
 /**
  * Yara component
@@ -50,6 +60,99 @@ public class YaraImpl implements Yara {
         return new YaraCompilerImpl(this.library, compiler[0]);
     }
 
+    /**
+     * Load compiled rules
+     *
+     * @param path
+     * @return
+     */
+    @Override
+    public YaraScanner loadRules(Path path) {
+        checkArgument(path != null);
+
+        long rules[] = new long[1];
+
+        int ret = library.rulesLoad(path.toAbsolutePath().toString(), rules);
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+
+        return new YaraScannerImpl(library, rules[0]);
+    }
+
+    /**
+     * Load compiled rules from stream
+     *
+     * @param stream
+     * @return
+     */
+    @Override
+    public YaraScanner loadRules(InputStream stream) {
+        checkArgument(stream != null);
+
+        try {
+            return loadRules(ByteBuffer.wrap(Utils.toByteArray(stream)));
+        }
+        catch (IOException ioe) {
+            throw new RuntimeException("Failed to read compiled rules", ioe);
+        }
+    }
+
+    /**
+     * Load compiled rules from buffer
+     *
+     * @param buffer
+     * @return
+     */
+    @Override
+    public YaraScanner loadRules(ByteBuffer buffer) {
+        checkArgument(buffer != null);
+
+        long rules[] = new long[1];
+        int ret;
+
+        if (buffer.isDirect()) {
+            ret = library.rulesLoadDirect(buffer, buffer.position(), buffer.remaining(), rules);
+        }
+        else if (buffer.hasArray()) {
+            ret = library.rulesLoadStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining(), rules);
+        }
+        else {
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.duplicate().get(copy);
+            ret = library.rulesLoadStream(copy, 0, copy.length, rules);
+        }
+
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+
+        return new YaraScannerImpl(library, rules[0]);
+    }
+
+    /**
+     * Set the maximum process memory chunk read at once by process scans
+     * <br>This is a process wide libyara setting.
+     *
+     * @param size Chunk size (bytes)
+     */
+    public void setMaxProcessMemoryChunk(long size) {
+        checkArgument(size > 0);
+
+        int ret = library.setMaxProcessMemoryChunk(size);
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+    }
+
+    /**
+     * @return Maximum process memory chunk read at once by process scans (bytes)
+     */
+    public long getMaxProcessMemoryChunk() {
+        return library.getMaxProcessMemoryChunk();
+    }
+
     @Override
     public void close() throws Exception {
     }
@@ -23,6 +23,8 @@ import org.fusesource.hawtjni.runtime.*;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Yara JNI library
@@ -47,6 +49,21 @@ public class YaraLibrary implements Closeable {
 
     private final native int yr_finalize();
 
+    /*
+     * Process memory chunk size (YR_CONFIG_MAX_PROCESS_MEMORY_CHUNK)
+     */
+    private final native int yara_set_max_process_memory_chunk(JNIEnv env, long size);
+    public int setMaxProcessMemoryChunk(long size) {
+        Preconditions.checkState(library != null);
+        return yara_set_max_process_memory_chunk(null, size);
+    }
+
+    private final native long yara_get_max_process_memory_chunk(JNIEnv env);
+    public long getMaxProcessMemoryChunk() {
+        Preconditions.checkState(library != null);
+        return yara_get_max_process_memory_chunk(null);
+    }
+
     @Override
     public void close() {
         if (library != null) {
@@ -108,6 +125,49 @@ public class YaraLibrary implements Closeable {
         return yr_compiler_get_rules(compiler, rules);
     }
 
+    /*
+     * External variables, must be defined before the rules using them are added
+     */
+    @JniMethod
+    private final native int yr_compiler_define_integer_variable(
+            @JniArg(cast = "YR_COMPILER*") long compiler,
+            String identifier,
+            @JniArg(cast = "int64_t") long value);
+    public int compilerDefineIntegerVariable(long compiler, String identifier, long value) {
+        Preconditions.checkState(library != null);
+        return yr_compiler_define_integer_variable(compiler, identifier, value);
+    }
+
+    @JniMethod
+    private final native int yr_compiler_define_float_variable(
+            @JniArg(cast = "YR_COMPILER*") long compiler,
+            String identifier,
+            double value);
+    public int compilerDefineFloatVariable(long compiler, String identifier, double value) {
+        Preconditions.checkState(library != null);
+        return yr_compiler_define_float_variable(compiler, identifier, value);
+    }
+
+    @JniMethod
+    private final native int yr_compiler_define_boolean_variable(
+            @JniArg(cast = "YR_COMPILER*") long compiler,
+            String identifier,
+            int value);
+    public int compilerDefineBooleanVariable(long compiler, String identifier, boolean value) {
+        Preconditions.checkState(library != null);
+        return yr_compiler_define_boolean_variable(compiler, identifier, value ? 1 : 0);
+    }
+
+    @JniMethod
+    private final native int yr_compiler_define_string_variable(
+            @JniArg(cast = "YR_COMPILER*") long compiler,
+            String identifier,
+            String value);
+    public int compilerDefineStringVariable(long compiler, String identifier, String value) {
+        Preconditions.checkState(library != null);
+        return yr_compiler_define_string_variable(compiler, identifier, value);
+    }
+
     private final native int yr_rules_destroy(@JniArg(cast = "YR_RULES*") long rules);
     public int rulesDestroy(long rules) {
         Preconditions.checkState(library != null);
@@ -115,6 +175,54 @@ public class YaraLibrary implements Closeable {
     }
 
 
+    private final native int yr_rules_save(@JniArg(cast = "YR_RULES*") long rules, String filename);
+    public int rulesSave(long rules, String filename) {
+        Preconditions.checkState(library != null);
+        return yr_rules_save(rules, filename);
+    }
+
+    private final native int yr_rules_load(String filename, @JniArg(cast = "YR_RULES**") long[] rules);
+    public int rulesLoad(String filename, long[] rules) {
+        Preconditions.checkState(library != null);
+        return yr_rules_load(filename, rules);
+    }
+
+    /*
+     * Same hawtjni jbyteArray workaround as yara_match_bytes, null is returned on
+     * failure and the libyara error is stored in error[0].
+     */
+    private final native Object yara_rules_save_stream(
+            JNIEnv env,
+            @JniArg(cast = "void*") long rules,
+            @JniArg(cast = "jint*") int[] error);
+    public byte[] rulesSaveStream(long rules, int[] error) {
+        Preconditions.checkState(library != null);
+        return (byte[]) yara_rules_save_stream(null, rules, error);
+    }
+
+    private final native int yara_rules_load_stream(
+            JNIEnv env,
+            @JniArg(cast = "jbyte*", flags = ArgFlag.NO_OUT) byte[] buffer,
+            int offset,
+            int length,
+            @JniArg(cast = "void**") long[] rules);
+    public int rulesLoadStream(byte[] buffer, int offset, int length, long[] rules) {
+        Preconditions.checkState(library != null);
+        return yara_rules_load_stream(null, buffer, offset, length, rules);
+    }
+
+    private final native int yara_rules_load_direct(
+            JNIEnv env,
+            @JniArg(cast = "jobject") Object buffer,
+            int offset,
+            int length,
+            @JniArg(cast = "void**") long[] rules);
+    public int rulesLoadDirect(ByteBuffer buffer, int offset, int length, long[] rules) {
+        Preconditions.checkState(library != null);
+        Preconditions.checkArgument(buffer != null && buffer.isDirect());
+        return yara_rules_load_direct(null, buffer, offset, length, rules);
+    }
+
     @JniMethod
     private final native int yr_rules_scan_file(
             @JniArg(cast = "YR_RULES*") long rules,
@@ -146,6 +254,232 @@ public class YaraLibrary implements Closeable {
         return yr_rules_scan_mem(rules, buffer, buflen, flags, callback, user_data, timeout);
    }
 
+    /*
+        Scanner
+     */
+    private final native int yr_scanner_create(
+            @JniArg(cast = "YR_RULES*") long rules,
+            @JniArg(cast = "YR_SCANNER**") long[] scannerRef);
+    public int scannerCreate(long rules, long[] scannerRef) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_create(rules, scannerRef);
+    }
+
+    private final native void yr_scanner_destroy(@JniArg(cast = "YR_SCANNER*") long scanner);
+    public void scannerDestroy(long scanner) {
+        Preconditions.checkState(library != null);
+        yr_scanner_destroy(scanner);
+    }
+
+    private final native void yr_scanner_set_callback(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            @JniArg(cast = "YR_CALLBACK_FUNC") long callback,
+            @JniArg(cast = "void*") long user_data);
+    public void scannerSetCallback(long scanner, long callback, long user_data) {
+        Preconditions.checkState(library != null);
+        yr_scanner_set_callback(scanner, callback, user_data);
+    }
+
+    private final native void yr_scanner_set_timeout(@JniArg(cast = "YR_SCANNER*") long scanner, int timeout);
+    public void scannerSetTimeout(long scanner, int timeout) {
+        Preconditions.checkState(library != null);
+        yr_scanner_set_timeout(scanner, timeout);
+    }
+
+    private final native void yr_scanner_set_flags(@JniArg(cast = "YR_SCANNER*") long scanner, int flags);
+    public void scannerSetFlags(long scanner, int flags) {
+        Preconditions.checkState(library != null);
+        yr_scanner_set_flags(scanner, flags);
+    }
+
+    /*
+     * External variables, values set on a scanner override the rules defaults
+     */
+    @JniMethod
+    private final native int yr_scanner_define_integer_variable(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            String identifier,
+            @JniArg(cast = "int64_t") long value);
+    public int scannerDefineIntegerVariable(long scanner, String identifier, long value) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_define_integer_variable(scanner, identifier, value);
+    }
+
+    @JniMethod
+    private final native int yr_scanner_define_float_variable(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            String identifier,
+            double value);
+    public int scannerDefineFloatVariable(long scanner, String identifier, double value) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_define_float_variable(scanner, identifier, value);
+    }
+
+    @JniMethod
+    private final native int yr_scanner_define_boolean_variable(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            String identifier,
+            int value);
+    public int scannerDefineBooleanVariable(long scanner, String identifier, boolean value) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_define_boolean_variable(scanner, identifier, value ? 1 : 0);
+    }
+
+    @JniMethod
+    private final native int yr_scanner_define_string_variable(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            String identifier,
+            String value);
+    public int scannerDefineStringVariable(long scanner, String identifier, String value) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_define_string_variable(scanner, identifier, value);
+    }
+
+    /*
+     * Put back the external variable values compiled into the rules
+     */
+    private final native int yara_scanner_reset_variables(
+            JNIEnv env,
+            @JniArg(cast = "void*") long scanner,
+            @JniArg(cast = "void*") long rules);
+    public int scannerResetVariables(long scanner, long rules) {
+        Preconditions.checkState(library != null);
+        return yara_scanner_reset_variables(null, scanner, rules);
+    }
+
+    /*
+     * Rule profiling, only available when built with --enable-profiling
+     */
+    private final native int yara_profiling_enabled(JNIEnv env);
+    public boolean profilingEnabled() {
+        Preconditions.checkState(library != null);
+        return yara_profiling_enabled(null) != 0;
+    }
+
+    private final native int yara_scanner_profile(
+            JNIEnv env,
+            @JniArg(cast = "void*") long scanner,
+            @JniArg(cast = "jlong*") long[] atomMatches,
+            @JniArg(cast = "jlong*") long[] matchTime,
+            @JniArg(cast = "jlong*") long[] execTime,
+            int count);
+    public int scannerProfile(long scanner, long[] atomMatches, long[] matchTime, long[] execTime) {
+        Preconditions.checkState(library != null);
+        int count = atomMatches != null ? atomMatches.length : 0;
+        return yara_scanner_profile(null, scanner, atomMatches, matchTime, execTime, count);
+    }
+
+    @JniMethod
+    private final native int yr_scanner_scan_file(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            String filename);
+    public int scannerScanFile(long scanner, String filename) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_scan_file(scanner, filename);
+    }
+
+    /*
+     * The buffer is only read by libyara, NO_OUT spares hawtjni the copy back
+     * into the Java array once the scan completes.
+     */
+    @JniMethod
+    private final native int yr_scanner_scan_mem(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            @JniArg(cast = "const uint8_t*", flags = ArgFlag.NO_OUT) byte[] buffer,
+            int length);
+    public int scannerScanMem(long scanner, byte[] buffer) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_scan_mem(scanner, buffer, buffer.length);
+    }
+    public int scannerScanMem(long scanner, byte[] buffer, int buflen) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_scan_mem(scanner, buffer, buflen);
+    }
+
+    private final native int yara_scanner_scan_mem_region(
+            JNIEnv env,
+            @JniArg(cast = "void*") long scanner,
+            @JniArg(cast = "jbyte*", flags = ArgFlag.NO_OUT) byte[] buffer,
+            int offset,
+            int length);
+    public int scannerScanMem(long scanner, byte[] buffer, int offset, int length) {
+        Preconditions.checkState(library != null);
+        return yara_scanner_scan_mem_region(null, scanner, buffer, offset, length);
+    }
+
+    /*
+     * Direct buffers are scanned in place, their native address is resolved
+     * in the wrapper while the buffer is held by the call.
+     */
+    private final native int yara_scanner_scan_direct(
+            JNIEnv env,
+            @JniArg(cast = "void*") long scanner,
+            @JniArg(cast = "jobject") Object buffer,
+            int offset,
+            int length);
+    public int scannerScanDirect(long scanner, ByteBuffer buffer, int offset, int length) {
+        Preconditions.checkState(library != null);
+        Preconditions.checkArgument(buffer != null && buffer.isDirect());
+        return yara_scanner_scan_direct(null, scanner, buffer, offset, length);
+    }
+
+    @JniMethod
+    private final native int yr_scanner_scan_proc(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            int pid);
+    public int scannerScanProc(long scanner, int pid) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_scan_proc(scanner, pid);
+    }
+
+    /*
+     * Direct buffers scanned as memory blocks of one logical target
+     */
+    private final native int yara_scanner_scan_blocks(
+            JNIEnv env,
+            @JniArg(cast = "void*") long scanner,
+            @JniArg(cast = "jobject") Object buffers,
+            @JniArg(cast = "jlong*", flags = ArgFlag.NO_OUT) long[] bases,
+            @JniArg(cast = "jint*", flags = ArgFlag.NO_OUT) int[] offsets,
+            @JniArg(cast = "jint*", flags = ArgFlag.NO_OUT) int[] lengths,
+            int count);
+    public int scannerScanBlocks(long scanner, ByteBuffer[] buffers, long[] bases, int[] offsets, int[] lengths) {
+        Preconditions.checkState(library != null);
+        Preconditions.checkArgument(buffers != null && bases != null && offsets != null && lengths != null);
+        Preconditions.checkArgument(bases.length == buffers.length
+                && offsets.length == buffers.length && lengths.length == buffers.length);
+        return yara_scanner_scan_blocks(null, scanner, buffers, bases, offsets, lengths, buffers.length);
+    }
+
+    @JniMethod
+    private final native int yr_scanner_scan_fd(
+            @JniArg(cast = "YR_SCANNER*") long scanner,
+            @JniArg(cast = "YR_FILE_DESCRIPTOR") int fd);
+    public int scannerScanFd(long scanner, int fd) {
+        Preconditions.checkState(library != null);
+        return yr_scanner_scan_fd(scanner, fd);
+    }
+
+    private final native int yara_scanner_scan_fd_region(
+            JNIEnv env,
+            @JniArg(cast = "void*") long scanner,
+            int fd,
+            long offset,
+            long length);
+    public int scannerScanFd(long scanner, int fd, long offset, long length) {
+        Preconditions.checkState(library != null);
+        return yara_scanner_scan_fd_region(null, scanner, fd, offset, length);
+    }
+
+    /*
+     * Native descriptor backing a file channel, -1 when it cannot be resolved
+     */
+    private final native int yara_channel_fd(JNIEnv env, @JniArg(cast = "jobject") Object channel);
+    public int channelDescriptor(FileChannel channel) {
+        Preconditions.checkState(library != null);
+        return yara_channel_fd(null, channel);
+    }
+
     /*
         Mapping helpers
      */
@@ -155,6 +489,12 @@ public class YaraLibrary implements Closeable {
         return cast_jstring(null, pv);
     }
 
+    private final native String yara_version(JNIEnv env);
+    public String version() {
+        Preconditions.checkState(library != null);
+        return yara_version(null);
+    }
+
     /*
         Rules
      */
@@ -244,6 +584,21 @@ public class YaraLibrary implements Closeable {
         return yara_string_identifier(null, pv);
     }
 
+    private final native int yara_string_rule_index(JNIEnv env, @JniArg(cast = "void*") long pv);
+    public int stringRuleIndex(long pv) {
+        Preconditions.checkState(library != null);
+        return yara_string_rule_index(null, pv);
+    }
+
+    private final native long yara_string_match_count(
+        JNIEnv env,
+        @JniArg(cast = "void*") long context,
+        @JniArg(cast = "void*") long pv);
+    public long stringMatchCount(long context, long pv) {
+        Preconditions.checkState(library != null);
+        return yara_string_match_count(null, context, pv);
+    }
+
     private final native long yara_string_matches(
         JNIEnv env,
         @JniArg(cast = "void*") long context,
@@ -287,6 +642,88 @@ public class YaraLibrary implements Closeable {
         return (byte[]) yara_match_bytes(null, pv);
     }
 
+    /*
+     * Serialize identifier, namespace, tags, metas and string identifiers of all rules into
+     * a direct buffer. Returns the serialized size, which exceeds the capacity when the
+     * buffer is too small (nothing is written past it), or -1 on error
+     */
+    private final native long yara_rules_catalog(
+            JNIEnv env,
+            @JniArg(cast = "void*") long rules,
+            @JniArg(cast = "jobject") Object buffer);
+    public long rulesCatalog(long rules, ByteBuffer buffer) {
+        Preconditions.checkState(library != null);
+        Preconditions.checkArgument(buffer != null && buffer.isDirect());
+        return yara_rules_catalog(null, rules, buffer);
+    }
+
+    /*
+     * Serialize the index and string matches of a matched rule into a direct buffer, same
+     * return value as rulesCatalog
+     */
+    private final native long yara_rule_serialize(
+            JNIEnv env,
+            @JniArg(cast = "void*") long context,
+            @JniArg(cast = "void*") long rule,
+            @JniArg(cast = "jobject") Object buffer);
+    public long ruleSerialize(long context, long rule, ByteBuffer buffer) {
+        Preconditions.checkState(library != null);
+        Preconditions.checkArgument(buffer != null && buffer.isDirect());
+        return yara_rule_serialize(null, context, rule, buffer);
+    }
+
+    /*
+     * Rule indexes: (rule - rulesTable) / ruleSize
+     */
+    private final native long yara_rules_table(JNIEnv env, @JniArg(cast = "void*") long rules);
+    public long rulesTable(long rules) {
+        Preconditions.checkState(library != null);
+        return yara_rules_table(null, rules);
+    }
+
+    /*
+     * Rule subsets, only ever applied to a private copy of the rules
+     */
+    @JniMethod
+    private final native void yr_rule_disable(@JniArg(cast = "YR_RULE*") long rule);
+    public void ruleDisable(long rule) {
+        Preconditions.checkState(library != null);
+        yr_rule_disable(rule);
+    }
+
+    private final native void yara_rule_suppress(JNIEnv env, @JniArg(cast = "void*") long rule);
+    public void ruleSuppress(long rule) {
+        Preconditions.checkState(library != null);
+        yara_rule_suppress(null, rule);
+    }
+
+    private final native int yara_rule_global(JNIEnv env, @JniArg(cast = "void*") long rule);
+    public boolean ruleGlobal(long rule) {
+        Preconditions.checkState(library != null);
+        return yara_rule_global(null, rule) != 0;
+    }
+
+    private final native long yara_subset_callback_address(JNIEnv env, long next);
+    public long subsetCallbackAddress(long next) {
+        Preconditions.checkState(library != null);
+        return yara_subset_callback_address(null, next);
+    }
+
+    private final native int yara_rule_size(JNIEnv env);
+    public int ruleSize() {
+        Preconditions.checkState(library != null);
+        return yara_rule_size(null);
+    }
+
+    /*
+     * Longest possible match of any rule string
+     */
+    private final native int yara_rules_max_match_length(JNIEnv env, @JniArg(cast = "void*") long rules);
+    public int rulesMaxMatchLength(long rules) {
+        Preconditions.checkState(library != null);
+        return yara_rules_max_match_length(null, rules);
+    }
+
     /*
         Modules
      */
@@ -19,37 +19,46 @@ package com.github.subreption.yara.embedded;
 
 import com.github.subreption.yara.YaraMatch;
 
+import java.nio.charset.StandardCharsets;
+
 import static com.github.subreption.yara.Preconditions.checkArgument;
 
 /**
  * Yara rule match
  */
 public class YaraMatchImpl implements YaraMatch {
-    private final YaraLibrary library;
-    private final long peer;
+    private final long offset;
+    private final int length;
+    private final byte[] data;
 
-    YaraMatchImpl(YaraLibrary library, long peer) {
-        checkArgument(library != null);
-        checkArgument(peer != 0);
+    YaraMatchImpl(long offset, int length, byte[] data) {
+        checkArgument(data != null);
 
-        this.library = library;
-        this.peer = peer;
+        this.offset = offset;
+        this.length = length;
+        this.data = data;
     }
 
     /**
-     * Value that was matched
+     * Value that was matched (up to the first NUL byte)
      * @return
      */
     public String getValue() {
-        return library.matchValue(peer);
+        int end = 0;
+        while (end < data.length && data[end] != 0) {
+            ++end;
+        }
+
+        return new String(data, 0, end, StandardCharsets.UTF_8);
     }
 
     /**
      * Value that was matched as byte array
+     * <br>libyara captures at most YR_CONFIG_MAX_MATCH_DATA bytes of a match.
      * @return
      */
     public byte[] getBytes() {
-        return library.matchBytes(peer);
+        return data.clone();
     }
 
     /**
@@ -57,6 +66,14 @@ public class YaraMatchImpl implements YaraMatch {
      * @return
      */
     public long getOffset() {
-        return library.matchOffset(peer);
+        return offset;
+    }
+
+    /**
+     * Full length of the match, may exceed the captured bytes
+     * @return
+     */
+    public int getLength() {
+        return length;
     }
 }
@@ -27,32 +27,34 @@ import static com.github.subreption.yara.Preconditions.checkArgument;
  * Time: 3:06 PM
  */
 public class YaraMetaImpl implements YaraMeta {
-
-
-    private final YaraLibrary library;
-    private final long peer;
-
-    YaraMetaImpl(YaraLibrary library, long peer) {
-        checkArgument(library != null);
-        checkArgument(peer != 0);
-
-        this.library = library;
-        this.peer = peer;
+    private final Type type;
+    private final String identifier;
+    private final String string;
+    private final int integer;
+
+    YaraMetaImpl(Type type, String identifier, String string, int integer) {
+        checkArgument(type != null);
+        checkArgument(identifier != null);
+
+        this.type = type;
+        this.identifier = identifier;
+        this.string = string;
+        this.integer = integer;
     }
 
     public Type getType() {
-        return Type.from(library.metaType(peer));
+        return type;
     }
 
     public String getIdentifier() {
-        return library.metaIdentifier(peer);
+        return identifier;
     }
 
     public String getString() {
-        return library.metaString(peer);
+        return string;
     }
 
     public int getInteger() {
-        return library.metaInteger(peer);
+        return integer;
     }
 }
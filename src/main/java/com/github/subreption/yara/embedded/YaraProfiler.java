@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.YaraException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Per-rule scan cost accumulated over every scan of a ruleset
+ * <br>Each thread accumulates into its own counters, the native scanners are pooled per
+ * thread as well, so scans never contend on the profiler. Counters are merged on report.
+ *
+ * @apiNote Requires libyara and the native library built with profiling enabled.
+ */
+public class YaraProfiler {
+    private static class Counters {
+        private final long[] atomMatches;
+        private final long[] matchTime;
+        private final long[] execTime;
+        private long scans;
+
+        Counters(int size) {
+            atomMatches = new long[size];
+            matchTime = new long[size];
+            execTime = new long[size];
+        }
+    }
+
+    private final YaraLibrary library;
+    private final YaraRuleCatalog catalog;
+    private final ThreadLocal<Counters> local = new ThreadLocal<>();
+    private final Queue<Counters> counters = new ConcurrentLinkedQueue<>();
+
+    YaraProfiler(YaraLibrary library, YaraRuleCatalog catalog) {
+        checkArgument(library != null);
+        checkArgument(catalog != null);
+
+        this.library = library;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Discard the costs a native scanner collected outside of this profiler
+     * @param scanner YR_SCANNER pointer
+     */
+    void begin(long scanner) {
+        int ret = library.scannerProfile(scanner, null, null, null);
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+    }
+
+    /**
+     * Collect the costs of the scan that just completed on the calling thread
+     * @param scanner YR_SCANNER pointer
+     */
+    void end(long scanner) {
+        Counters current = local.get();
+        if (current == null) {
+            current = new Counters(catalog.size());
+            counters.add(current);
+            local.set(current);
+        }
+
+        synchronized (current) {
+            int ret = library.scannerProfile(scanner, current.atomMatches, current.matchTime, current.execTime);
+            if (ret != ErrorCode.SUCCESS.getValue()) {
+                throw new YaraException(ret);
+            }
+            current.scans++;
+        }
+    }
+
+    /**
+     * Number of scans profiled
+     * @return
+     */
+    public long getScans() {
+        long total = 0;
+        for (Counters current : counters) {
+            synchronized (current) {
+                total += current.scans;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Rules by decreasing cost, rules without any cost are left out
+     * @return
+     */
+    public List<YaraRuleProfile> report() {
+        return report(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Slowest rules by decreasing cost, rules without any cost are left out
+     * @param limit Maximum number of rules reported
+     * @return
+     */
+    public List<YaraRuleProfile> report(int limit) {
+        checkArgument(limit > 0);
+
+        int size = catalog.size();
+        long[] atomMatches = new long[size];
+        long[] matchTime = new long[size];
+        long[] execTime = new long[size];
+
+        for (Counters current : counters) {
+            synchronized (current) {
+                for (int i = 0; i < size; ++i) {
+                    atomMatches[i] += current.atomMatches[i];
+                    matchTime[i] += current.matchTime[i];
+                    execTime[i] += current.execTime[i];
+                }
+            }
+        }
+
+        List<YaraRuleProfile> profiles = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            if (atomMatches[i] != 0 || matchTime[i] != 0 || execTime[i] != 0) {
+                profiles.add(new YaraRuleProfile(catalog.entry(i), atomMatches[i], matchTime[i], execTime[i]));
+            }
+        }
+
+        profiles.sort(Comparator.comparingLong(YaraRuleProfile::getCost).reversed()
+                .thenComparing(Comparator.comparingLong(YaraRuleProfile::getAtomMatches).reversed()));
+
+        return profiles.size() > limit ? new ArrayList<>(profiles.subList(0, limit)) : profiles;
+    }
+
+    /**
+     * Discard the costs collected so far
+     */
+    public void reset() {
+        for (Counters current : counters) {
+            synchronized (current) {
+                Arrays.fill(current.atomMatches, 0);
+                Arrays.fill(current.matchTime, 0);
+                Arrays.fill(current.execTime, 0);
+                current.scans = 0;
+            }
+        }
+    }
+}
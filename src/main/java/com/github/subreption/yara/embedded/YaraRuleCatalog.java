@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import com.github.subreption.yara.YaraRule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+
+/**
+ * Immutable catalog of compiled rules, indexed by rule number
+ * <br>Entries carry identifier, namespace, tags, metadata and string identifiers (without
+ * matches). Scan callbacks share this data instead of reading it again on every match.
+ */
+public class YaraRuleCatalog {
+    public static final String DEFAULT_NAMESPACE = "default";
+
+    private final List<YaraRuleImpl> rules;
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    YaraRuleCatalog(List<YaraRuleImpl> rules) {
+        checkArgument(rules != null);
+
+        this.rules = Collections.unmodifiableList(rules);
+
+        for (YaraRuleImpl rule : rules) {
+            indexes.put(key(rule.getNamespace(), rule.getIdentifier()), rule.getIndex());
+        }
+    }
+
+    /**
+     * Number of rules
+     * @return
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Rule by index
+     * @param index
+     * @return
+     */
+    public YaraRule get(int index) {
+        checkArgument(index >= 0 && index < rules.size());
+        return rules.get(index);
+    }
+
+    /**
+     * Rule index
+     * @param namespace Rule namespace, null for the default namespace
+     * @param identifier
+     * @return Index or -1 when there is no such rule
+     */
+    public int indexOf(String namespace, String identifier) {
+        Integer index = indexes.get(key(namespace, identifier));
+        return index != null ? index : -1;
+    }
+
+    /**
+     * All rules, in index order
+     * @return
+     */
+    public List<? extends YaraRule> getRules() {
+        return rules;
+    }
+
+    YaraRuleImpl entry(int index) {
+        return rules.get(index);
+    }
+
+    private static String key(String namespace, String identifier) {
+        return (namespace != null ? namespace : DEFAULT_NAMESPACE) + ":" + identifier;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraMatch;
+import com.github.subreption.yara.YaraMeta;
+import com.github.subreption.yara.YaraString;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rule catalog and matched rule decoder
+ *
+ * @apiNote Rules are serialized natively in a single call (see yara-wrapper.h) into a
+ * per-thread direct buffer which grows to fit the largest payload seen, up to a retention
+ * bound. Matched rules only carry their index and string matches, everything else is
+ * shared from the catalog.
+ */
+final class YaraRuleDecoder {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> allocate(INITIAL_CAPACITY));
+
+    /**
+     * Native serialization into a direct buffer
+     */
+    private interface Serializer {
+        long serialize(ByteBuffer buffer);
+    }
+
+    private YaraRuleDecoder() {
+    }
+
+    /**
+     * Build the catalog of compiled rules
+     * @param library
+     * @param rules YR_RULES pointer
+     * @return
+     */
+    static YaraRuleCatalog catalog(YaraLibrary library, long rules) {
+        return decodeCatalog(serialize(buffer -> library.rulesCatalog(rules, buffer)));
+    }
+
+    /**
+     * Materialize a matched rule
+     * @param library
+     * @param catalog Catalog of the scanned rules
+     * @param context YR_SCAN_CONTEXT pointer
+     * @param rule    YR_RULE pointer
+     * @return
+     */
+    static YaraRuleImpl decode(YaraLibrary library, YaraRuleCatalog catalog, long context, long rule) {
+        return decode(catalog, serialize(buffer -> library.ruleSerialize(context, rule, buffer)));
+    }
+
+    /**
+     * Decode a serialized catalog between the buffer position and limit
+     * @param buffer Native byte order
+     * @return
+     */
+    static YaraRuleCatalog decodeCatalog(ByteBuffer buffer) {
+        int count = buffer.getInt();
+
+        List<YaraRuleImpl> rules = new ArrayList<>(count);
+        for (int index = 0; index < count; ++index) {
+            String identifier = readString(buffer);
+            String namespace = readString(buffer);
+
+            int size = buffer.getInt();
+            List<String> tags = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                tags.add(readString(buffer));
+            }
+
+            size = buffer.getInt();
+            List<YaraMeta> metas = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                YaraMeta.Type type = YaraMeta.Type.from(buffer.getInt());
+                String metaIdentifier = readString(buffer);
+                long integer = buffer.getLong();
+                String string = readString(buffer);
+
+                metas.add(new YaraMetaImpl(type, metaIdentifier, string, (int) integer));
+            }
+
+            size = buffer.getInt();
+            List<YaraString> strings = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                strings.add(new YaraStringImpl(readString(buffer), Collections.emptyList()));
+            }
+
+            rules.add(new YaraRuleImpl(index, identifier, namespace,
+                    Collections.unmodifiableList(tags),
+                    Collections.unmodifiableList(metas),
+                    Collections.unmodifiableList(strings)));
+        }
+
+        return new YaraRuleCatalog(rules);
+    }
+
+    /**
+     * Decode a serialized matched rule between the buffer position and limit
+     * @param catalog
+     * @param buffer Native byte order
+     * @return Catalog entry itself when no string matched
+     */
+    static YaraRuleImpl decode(YaraRuleCatalog catalog, ByteBuffer buffer) {
+        int index = buffer.getInt();
+        if (index < 0 || index >= catalog.size()) {
+            throw new YaraException(ErrorCode.INVALID_ARGUMENT.getValue());
+        }
+
+        YaraRuleImpl entry = catalog.entry(index);
+        List<YaraString> identifiers = entry.getStringList();
+
+        int count = buffer.getInt();
+        if (count != identifiers.size()) {
+            throw new YaraException(ErrorCode.INVALID_ARGUMENT.getValue());
+        }
+
+        List<YaraString> strings = null;
+        for (int i = 0; i < count; ++i) {
+            int matchCount = buffer.getInt();
+            if (matchCount == 0) {
+                continue;
+            }
+
+            List<YaraMatch> matches = new ArrayList<>(matchCount);
+            for (int j = 0; j < matchCount; ++j) {
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                byte[] data = readBytes(buffer);
+
+                matches.add(new YaraMatchImpl(offset, length, data != null ? data : new byte[0]));
+            }
+
+            if (strings == null) {
+                strings = new ArrayList<>(identifiers);
+            }
+
+            strings.set(i, new YaraStringImpl(identifiers.get(i).getIdentifier(), Collections.unmodifiableList(matches)));
+        }
+
+        return strings == null ? entry : new YaraRuleImpl(entry, Collections.unmodifiableList(strings));
+    }
+
+    private static ByteBuffer serialize(Serializer serializer) {
+        ByteBuffer buffer = buffers.get();
+        ((Buffer) buffer).clear();
+
+        long size = serializer.serialize(buffer);
+        if (size > buffer.capacity()) {
+            if (size > Integer.MAX_VALUE) {
+                throw new YaraException(ErrorCode.INSUFFICIENT_MEMORY.getValue());
+            }
+
+            buffer = allocate((int) size);
+            if (size <= MAX_RETAINED_CAPACITY) {
+                buffers.set(buffer);
+            }
+
+            size = serializer.serialize(buffer);
+        }
+
+        if (size < 0 || size > buffer.capacity()) {
+            throw new YaraException(ErrorCode.INVALID_ARGUMENT.getValue());
+        }
+
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit((int) size);
+        return buffer;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] value = readBytes(buffer);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+}
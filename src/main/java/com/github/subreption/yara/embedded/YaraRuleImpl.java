@@ -20,6 +20,7 @@ package com.github.subreption.yara.embedded;
 import com.github.subreption.yara.*;
 
 import java.util.Iterator;
+import java.util.List;
 
 import static com.github.subreption.yara.Preconditions.checkArgument;
 
@@ -27,18 +28,44 @@ import static com.github.subreption.yara.Preconditions.checkArgument;
  * Yara rule
  */
 public class YaraRuleImpl implements YaraRule {
-    private final YaraLibrary library;
-    private final long context;
-    private final long peer;
+    private final int index;
+    private final String identifier;
+    private final String namespace;
+    private final List<String> tags;
+    private final List<YaraMeta> metas;
+    private final List<YaraString> strings;
+
+    YaraRuleImpl(int index, String identifier, String namespace, List<String> tags, List<YaraMeta> metas,
+                 List<YaraString> strings) {
+        checkArgument(index >= 0);
+        checkArgument(!Utils.isNullOrEmpty(identifier));
+        checkArgument(tags != null);
+        checkArgument(metas != null);
+        checkArgument(strings != null);
+
+        this.index = index;
+        this.identifier = identifier;
+        this.namespace = namespace;
+        this.tags = tags;
+        this.metas = metas;
+        this.strings = strings;
+    }
 
-    YaraRuleImpl(YaraLibrary library, long context, long peer) {
-        checkArgument(library != null);
-        checkArgument(context != 0);
-        checkArgument(peer != 0);
+    /**
+     * Same rule with the given strings (shares all other rule data)
+     * @param strings
+     */
+    YaraRuleImpl(YaraRuleImpl rule, List<YaraString> strings) {
+        this(rule.index, rule.identifier, rule.namespace, rule.tags, rule.metas, strings);
+    }
 
-        this.library = library;
-        this.context = context;
-        this.peer = peer;
+    /**
+     * Rule index in the compiled rules
+     *
+     * @return
+     */
+    public int getIndex() {
+        return index;
     }
 
     /**
@@ -47,7 +74,16 @@ public class YaraRuleImpl implements YaraRule {
      * @return
      */
     public String getIdentifier() {
-        return library.ruleIdentifier(peer);
+        return identifier;
+    }
+
+    /**
+     * Rule namespace
+     *
+     * @return
+     */
+    public String getNamespace() {
+        return namespace;
     }
 
     /**
@@ -56,21 +92,7 @@ public class YaraRuleImpl implements YaraRule {
      * @return
      */
     public Iterator<String> getTags() {
-        return new GenericIterator<String>() {
-            private long index = library.ruleTags(peer);
-
-            @Override
-            protected String getNext() {
-                long last = index;
-                index = library.ruleTagNext(index);
-
-                if (index == 0 || last == 0) {
-                    return null;
-                }
-
-                return library.tagString(last);
-            }
-        };
+        return tags.iterator();
     }
 
     /**
@@ -79,21 +101,7 @@ public class YaraRuleImpl implements YaraRule {
      * @return
      */
     public Iterator<YaraMeta> getMetadata() {
-        return new GenericIterator<YaraMeta>() {
-            private long index = library.ruleMetas(peer);
-
-            @Override
-            protected YaraMetaImpl getNext() {
-                if (index == 0){
-                    return null;
-                }
-
-                long last = index;
-                index = library.ruleMetaNext(index);
-
-                return new YaraMetaImpl(library, last);
-            }
-        };
+        return metas.iterator();
     }
 
     /**
@@ -102,20 +110,10 @@ public class YaraRuleImpl implements YaraRule {
      * @return
      */
     public Iterator<YaraString> getStrings() {
-        return new GenericIterator<YaraString>() {
-            private long index = library.ruleStrings(peer);
-
-            @Override
-            protected YaraStringImpl getNext() {
-                if (index == 0){
-                    return null;
-                }
-
-                long last = index;
-                index = library.ruleStringNext(index);
+        return strings.iterator();
+    }
 
-                return new YaraStringImpl(library, context, last);
-            }
-        };
+    List<YaraString> getStringList() {
+        return strings;
     }
 }
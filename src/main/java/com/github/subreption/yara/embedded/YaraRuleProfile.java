@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import com.github.subreption.yara.YaraRule;
+
+/**
+ * Accumulated scan cost of one rule
+ * <br>libyara measures the time spent verifying the rule's string matches and evaluating
+ * its condition, and counts the atoms of its strings that hit the scanned data. Costs are
+ * not split per string, atom matches are the closest per string measure libyara keeps.
+ */
+public class YaraRuleProfile {
+    private final YaraRuleImpl rule;
+    private final long atomMatches;
+    private final long matchTime;
+    private final long execTime;
+
+    YaraRuleProfile(YaraRuleImpl rule, long atomMatches, long matchTime, long execTime) {
+        this.rule = rule;
+        this.atomMatches = atomMatches;
+        this.matchTime = matchTime;
+        this.execTime = execTime;
+    }
+
+    public YaraRule getRule() {
+        return rule;
+    }
+
+    public String getNamespace() {
+        return rule.getNamespace();
+    }
+
+    public String getIdentifier() {
+        return rule.getIdentifier();
+    }
+
+    /**
+     * Number of atom hits that triggered a verification of the rule strings
+     * @return
+     */
+    public long getAtomMatches() {
+        return atomMatches;
+    }
+
+    /**
+     * Time spent verifying string matches (nanoseconds)
+     * @return
+     */
+    public long getMatchTime() {
+        return matchTime;
+    }
+
+    /**
+     * Time spent evaluating the condition (nanoseconds)
+     * @return
+     */
+    public long getExecTime() {
+        return execTime;
+    }
+
+    /**
+     * Total cost (nanoseconds)
+     * @return
+     */
+    public long getCost() {
+        return matchTime + execTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%s cost=%d match=%d exec=%d atoms=%d",
+                getNamespace(), getIdentifier(), getCost(), matchTime, execTime, atomMatches);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraRuleSelector;
+import com.github.subreption.yara.YaraRules;
+import com.github.subreption.yara.YaraScanner;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+import static com.github.subreption.yara.Preconditions.checkState;
+
+/**
+ * Reference counted compiled ruleset (YR_RULES)
+ *
+ * @apiNote YR_RULES is read-only once compiled and can back any number of native scanners.
+ * Native scanners are pooled on the ruleset and leased for the duration of a scan, a scan
+ * started from within a scan callback gets a native scanner of its own.
+ */
+public class YaraRulesImpl implements YaraRules {
+    private final YaraLibrary library;
+    private final long peer;
+    private final YaraScannerPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile YaraRuleCatalog catalog;
+    private volatile long table;
+    private volatile int ruleSize;
+    private volatile int maxMatchLength = -2;
+    private final boolean subset;
+    private volatile long callback;
+    private volatile YaraProfiler profiler;
+
+    /**
+     * @param library
+     * @param rules YR_RULES pointer, owned by the new instance
+     */
+    YaraRulesImpl(YaraLibrary library, long rules) {
+        this(library, rules, null);
+    }
+
+    /**
+     * @param library
+     * @param rules YR_RULES pointer, owned by the new instance
+     * @param catalog Catalog of the rules this subset was taken from, null when not a subset
+     */
+    private YaraRulesImpl(YaraLibrary library, long rules, YaraRuleCatalog catalog) {
+        checkArgument(library != null);
+        checkArgument(rules != 0);
+
+        this.library = library;
+        this.peer = rules;
+        this.pool = new YaraScannerPool(library, rules);
+        this.catalog = catalog;
+        this.subset = catalog != null;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    /**
+     * Create scanner holding a reference to the rules
+     * @return
+     */
+    @Override
+    public YaraScanner createScanner() {
+        checkState(!closed.get());
+
+        retain();
+        return new YaraScannerImpl(this);
+    }
+
+    /**
+     * Release the handle reference
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    /**
+     * Subset of the rules
+     * <br>The subset is a private copy of the compiled rules with the rules left out
+     * disabled (yr_rule_disable), so the shared rules are never modified. It costs the
+     * memory of one more ruleset but spares the condition evaluation of disabled rules.
+     * Rules left out which the selected rules may depend on stay enabled, only their
+     * reports are dropped (see {@link #enabled(String[], boolean[], boolean[])}).
+     * @param selector
+     * @return
+     */
+    @Override
+    public YaraRules subset(YaraRuleSelector selector) {
+        checkState(!closed.get());
+        checkArgument(selector != null);
+
+        YaraRuleCatalog current = getCatalog();
+
+        int error[] = new int[1];
+        byte[] content = library.rulesSaveStream(peer, error);
+        if (content == null) {
+            throw new YaraException(error[0]);
+        }
+
+        long copy[] = new long[1];
+        int ret = library.rulesLoadStream(content, 0, content.length, copy);
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+
+        long copyTable = library.rulesTable(copy[0]);
+        int size = library.ruleSize();
+
+        String namespaces[] = new String[current.size()];
+        boolean global[] = new boolean[current.size()];
+        boolean selected[] = new boolean[current.size()];
+
+        for (int i = 0; i < current.size(); ++i) {
+            YaraRuleImpl rule = current.entry(i);
+
+            namespaces[i] = rule.getNamespace();
+            global[i] = library.ruleGlobal(copyTable + (long) i * size);
+            selected[i] = selector.matches(rule.getNamespace(), rule.getIdentifier(), rule.getTags());
+        }
+
+        boolean enabled[] = enabled(namespaces, global, selected);
+        for (int i = 0; i < enabled.length; ++i) {
+            if (!enabled[i]) {
+                library.ruleDisable(copyTable + (long) i * size);
+            }
+            else if (!selected[i]) {
+                library.ruleSuppress(copyTable + (long) i * size);
+            }
+        }
+
+        return new YaraRulesImpl(library, copy[0], current);
+    }
+
+    /**
+     * Rules a subset has to keep enabled for the selected rules to evaluate as in the full set
+     * <br>A condition only references rules declared before it in its own namespace, and global
+     * rules apply to every rule of their namespace. Every rule of a namespace up to its last
+     * selected or global rule is kept, when the namespace has any rule selected.
+     * @param namespaces Namespace of each rule, in compiled order
+     * @param global     Global rules
+     * @param selected   Rules selected
+     * @return Rules to keep enabled
+     */
+    static boolean[] enabled(String namespaces[], boolean global[], boolean selected[]) {
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < selected.length; ++i) {
+            if (selected[i]) {
+                used.add(namespaces[i]);
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        boolean enabled[] = new boolean[selected.length];
+
+        for (int i = selected.length - 1; i >= 0; --i) {
+            enabled[i] = selected[i]
+                    || (global[i] && used.contains(namespaces[i]))
+                    || referenced.contains(namespaces[i]);
+
+            if (enabled[i]) {
+                referenced.add(namespaces[i]);
+            }
+        }
+
+        return enabled;
+    }
+
+    /**
+     * Scan callback address, subsets filter out the messages of disabled and suppressed rules natively
+     * @return
+     */
+    long callbackAddress() {
+        if (!subset) {
+            return YaraCallbackRegistry.address();
+        }
+
+        if (callback == 0) {
+            callback = library.subsetCallbackAddress(YaraCallbackRegistry.address());
+        }
+        return callback;
+    }
+
+    /**
+     * Catalog of the compiled rules, built once on first use
+     * @return
+     */
+    public YaraRuleCatalog getCatalog() {
+        YaraRuleCatalog current = catalog;
+        if (current == null) {
+            synchronized (this) {
+                current = catalog;
+                if (current == null) {
+                    checkState(references.get() > 0);
+
+                    current = YaraRuleDecoder.catalog(library, peer);
+                    catalog = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Profile every subsequent scan of the rules, on any scanner
+     * @return Profiler of the rules, the same instance on every call
+     * @throws UnsupportedOperationException When the native library was built without profiling
+     */
+    public YaraProfiler enableProfiling() {
+        checkState(!closed.get());
+
+        if (profiler == null) {
+            synchronized (this) {
+                if (profiler == null) {
+                    if (!library.profilingEnabled()) {
+                        throw new UnsupportedOperationException("Native library built without profiling support");
+                    }
+                    profiler = new YaraProfiler(library, getCatalog());
+                }
+            }
+        }
+        return profiler;
+    }
+
+    /**
+     * Profiler of the rules
+     * @return Profiler or null when profiling is not enabled
+     */
+    public YaraProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Index of a rule from its YR_RULE pointer
+     * @param rule
+     * @return
+     */
+    int ruleIndex(long rule) {
+        if (table == 0) {
+            ruleSize = library.ruleSize();
+            table = library.rulesTable(peer);
+        }
+
+        return (int) ((rule - table) / ruleSize);
+    }
+
+    /**
+     * Longest possible string match of the rules
+     * @return
+     */
+    int getMaxMatchLength() {
+        if (maxMatchLength == -2) {
+            maxMatchLength = library.rulesMaxMatchLength(peer);
+        }
+        return maxMatchLength;
+    }
+
+    YaraLibrary getLibrary() {
+        return library;
+    }
+
+    long getPeer() {
+        return peer;
+    }
+
+    /**
+     * Lease a native scanner for one scan
+     * @param timeout
+     * @param flags
+     * @return
+     */
+    long acquire(int timeout, int flags) {
+        return pool.acquire(timeout, flags);
+    }
+
+    /**
+     * Return a native scanner from {@link #acquire(int, int)} once its scan is done
+     * @param scanner
+     */
+    void recycle(long scanner) {
+        pool.recycle(scanner);
+    }
+
+    /**
+     * Number of live native scanners
+     * @return
+     */
+    int scanners() {
+        return pool.size();
+    }
+
+    /**
+     * Number of live references (handle and scanners)
+     * @return
+     */
+    int references() {
+        return references.get();
+    }
+
+    void retain() {
+        int count;
+        do {
+            count = references.get();
+            checkState(count > 0);
+        } while (!references.compareAndSet(count, count + 1));
+    }
+
+    void release() {
+        int count = references.decrementAndGet();
+        checkState(count >= 0);
+
+        if (count == 0) {
+            pool.close();
+            library.rulesDestroy(peer);
+        }
+    }
+}
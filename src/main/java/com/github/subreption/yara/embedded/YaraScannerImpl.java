@@ -18,16 +18,25 @@
 package com.github.subreption.yara.embedded;
 
 import com.github.subreption.yara.*;
-import org.fusesource.hawtjni.runtime.Callback;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.github.subreption.yara.Preconditions.checkArgument;
+import static com.github.subreption.yara.Preconditions.checkState;
 
 /**
  * User: pba
@@ -46,26 +55,33 @@ public class YaraScannerImpl implements YaraScanner {
     private static final long CALLBACK_MSG_RULE_NOT_MATCHING = 2;
     private static final long CALLBACK_MSG_SCAN_FINISHED = 3;
     private static final long CALLBACK_MSG_IMPORT_MODULE = 4;
+    private static final long CALLBACK_MSG_TOO_MANY_MATCHES = 6;
+    private static final long CALLBACK_MSG_TOO_SLOW_SCANNING = 8;
 
     private static final int SCAN_FLAGS_FAST_MODE = 0x00000001;
     private static final int SCAN_FLAGS_PROCESS_MEMORY = 0x00000002;
     private static final int SCAN_FLAGS_NO_TRYCATCH = 0x00000004;
 
-    private class NativeScanCallback {
+    private class NativeScanCallback implements YaraCallbackRegistry.Handler {
         private boolean negate = false;
         private int maxRules = 0;
         private int count = 0;
         private final YaraLibrary library;
-        private final YaraScanCallback scanCallback;
+        private final RuleHandler ruleHandler;
         private final YaraModuleCallback moduleCallback;
+        private BooleanSupplier cancelled;
+        private YaraScanCallback warningCallback;
+        private YaraScanWarning aborted;
+        private YaraMetrics.Sample sample;
+        private YaraScanEvent event;
 
-        public NativeScanCallback(YaraLibrary library, YaraScanCallback callback) {
-            this(library, callback, null);
+        public NativeScanCallback(YaraLibrary library, RuleHandler ruleHandler) {
+            this(library, ruleHandler, null);
         }
 
-        public NativeScanCallback(YaraLibrary library, YaraScanCallback scanCallback, YaraModuleCallback moduleCallback) {
+        public NativeScanCallback(YaraLibrary library, RuleHandler ruleHandler, YaraModuleCallback moduleCallback) {
             this.library = library;
-            this.scanCallback = scanCallback;
+            this.ruleHandler = ruleHandler;
             this.moduleCallback = moduleCallback;
         }
 
@@ -79,22 +95,45 @@ public class YaraScannerImpl implements YaraScanner {
             this.maxRules = count;
         }
 
-        long nativeOnScan(long context, long type, long message, long data) {
-            if (!negate && type == CALLBACK_MSG_RULE_MATCHING) {
-                ++count;
+        public void setCancelled(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
 
-                if (scanCallback != null) {
-                    YaraRuleImpl rule = new YaraRuleImpl(library, context, message);
-                    scanCallback.onMatch(rule);
-                }
+        public void setWarningCallback(YaraScanCallback warningCallback) {
+            this.warningCallback = warningCallback;
+        }
+
+        public void setSample(YaraMetrics.Sample sample) {
+            this.sample = sample;
+        }
+
+        public void setEvent(YaraScanEvent event) {
+            this.event = event;
+        }
+
+        /**
+         * Warning the scan was aborted on
+         * @return Warning or null
+         */
+        public YaraScanWarning getAborted() {
+            return aborted;
+        }
+
+        @Override
+        public long onScan(long context, long type, long message) {
+            if (sample != null) {
+                sample.onCallback();
             }
-            else if(negate && type == CALLBACK_MSG_RULE_NOT_MATCHING) {
-                ++count;
 
-                if (scanCallback != null) {
-                    YaraRuleImpl rule = new YaraRuleImpl(library, context, message);
-                    scanCallback.onMatch(rule);
-                }
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                return CALLBACK_ABORT;
+            }
+
+            if (!negate && type == CALLBACK_MSG_RULE_MATCHING) {
+                onRule(context, message);
+            }
+            else if(negate && type == CALLBACK_MSG_RULE_NOT_MATCHING) {
+                onRule(context, message);
             }
             else if (type == CALLBACK_MSG_IMPORT_MODULE) {
                 if (moduleCallback != null) {
@@ -102,6 +141,12 @@ public class YaraScannerImpl implements YaraScanner {
                     moduleCallback.onImport(module);
                 }
             }
+            else if (type == CALLBACK_MSG_TOO_MANY_MATCHES) {
+                return onWarning(YaraScanWarning.Type.TOO_MANY_MATCHES, context, message);
+            }
+            else if (type == CALLBACK_MSG_TOO_SLOW_SCANNING) {
+                return onWarning(YaraScanWarning.Type.SLOW_SCANNING, context, message);
+            }
 
             if (maxRules > 0 && count >= maxRules) {
                 return CALLBACK_ABORT;
@@ -109,21 +154,135 @@ public class YaraScannerImpl implements YaraScanner {
 
             return CALLBACK_CONTINUE;
         }
+
+        private void onRule(long context, long rule) {
+            ++count;
+
+            if (event != null) {
+                event.onMatch();
+            }
+            if (sample != null) {
+                sample.onMatch(rules.getCatalog().get(rules.ruleIndex(rule)).getIdentifier());
+            }
+
+            if (ruleHandler != null) {
+                ruleHandler.onRule(context, rule);
+
+                if (sample != null) {
+                    sample.onNativeCalls(ruleHandler.nativeCalls());
+                }
+            }
+        }
+
+        /**
+         * @param type
+         * @param context
+         * @param string YR_STRING pointer
+         * @return
+         */
+        private long onWarning(YaraScanWarning.Type type, long context, long string) {
+            if (warningCallback == null) {
+                return CALLBACK_CONTINUE;
+            }
+
+            YaraScanWarning warning = new YaraScanWarning(type,
+                    rules.getCatalog().get(library.stringRuleIndex(string)),
+                    library.stringIdentifier(string),
+                    library.stringMatchCount(context, string));
+
+            if (warningCallback.onWarning(warning) == YaraScanCallback.Action.ABORT) {
+                aborted = warning;
+                return CALLBACK_ABORT;
+            }
+            return CALLBACK_CONTINUE;
+        }
+    }
+
+    /**
+     * Reported rule handling
+     */
+    private interface RuleHandler {
+        void onRule(long context, long rule);
+
+        /**
+         * Native calls made per reported rule
+         * @return
+         */
+        default int nativeCalls() {
+            return 1;
+        }
+    }
+
+    /**
+     * Native scan invocation on a pooled scanner
+     */
+    private interface NativeScan {
+        int scan(long scanner);
+
+        /**
+         * Bytes scanned, negative when unknown
+         * @return
+         */
+        default long size() {
+            return -1;
+        }
+
+        default boolean isFile() {
+            return false;
+        }
+    }
+
+    /**
+     * Native scan of a known size, computed only when metrics are recorded
+     * @param size
+     * @param file
+     * @param nativeScan
+     * @return
+     */
+    private static NativeScan sized(LongSupplier size, boolean file, NativeScan nativeScan) {
+        return new NativeScan() {
+            @Override
+            public int scan(long scanner) {
+                return nativeScan.scan(scanner);
+            }
+
+            @Override
+            public long size() {
+                return size.getAsLong();
+            }
+
+            @Override
+            public boolean isFile() {
+                return file;
+            }
+        };
     }
 
     private YaraLibrary library;
     private YaraScanCallback scanCallback;
-    private long peer;
+    private YaraRulesImpl rules;
     private int timeout = 60;
     private int maxRules = 0;
     private boolean notSatisfiedOnly = false;
+    private boolean fastMode = false;
+    private volatile YaraMetrics metrics;
 
+    /**
+     * @param library
+     * @param rules YR_RULES pointer, owned by the scanner
+     */
     YaraScannerImpl(YaraLibrary library, long rules) {
-        checkArgument(library != null);
-        checkArgument(rules != 0);
+        this(new YaraRulesImpl(library, rules));
+    }
+
+    /**
+     * @param rules Shared rules, a reference is held on behalf of the scanner
+     */
+    YaraScannerImpl(YaraRulesImpl rules) {
+        checkArgument(rules != null);
 
-        this.library = library;
-        this.peer = rules;
+        this.library = rules.getLibrary();
+        this.rules = rules;
     }
 
     @Override
@@ -134,13 +293,32 @@ public class YaraScannerImpl implements YaraScanner {
 
     @Override
     public void close() throws IOException {
-        if (peer != 0) {
-            library.rulesDestroy(peer);
-            peer = 0;
+        if (rules != null) {
+            rules.release();
+            rules = null;
         }
         library = null;
     }
 
+    /**
+     * Catalog of the rules this scanner runs
+     * @return
+     */
+    public YaraRuleCatalog getCatalog() {
+        checkState(rules != null);
+        return rules.getCatalog();
+    }
+
+    /**
+     * Profile every subsequent scan of the rules this scanner runs
+     * @return Profiler shared by all scanners of the rules
+     * @see YaraRulesImpl#enableProfiling()
+     */
+    public YaraProfiler enableProfiling() {
+        checkState(rules != null);
+        return rules.enableProfiling();
+    }
+
     /**
      * Set scan timeout
      */
@@ -164,6 +342,16 @@ public class YaraScannerImpl implements YaraScanner {
         this.notSatisfiedOnly = value;
     }
 
+    @Override
+    public void setFastMode(boolean value) {
+        this.fastMode = value;
+    }
+
+    @Override
+    public void setMetrics(YaraMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Set scan callback
      *
@@ -180,7 +368,7 @@ public class YaraScannerImpl implements YaraScanner {
      * @param file
      */
     public void scan(File file) {
-        scan(file, null);
+        scan(file, null, this.scanCallback);
     }
 
     /**
@@ -202,47 +390,21 @@ public class YaraScannerImpl implements YaraScanner {
      */
     @Override
     public void scan(File file, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
-        Set<YaraModule> loadedModules = new HashSet<>();
-
-        YaraModuleCallback moduleCallback = null;
-
-        if (moduleArgs != null) {
-            moduleCallback = module -> {
-                String name = module.getName();
-
-                if (moduleArgs.containsKey(name)) {
-                    if (module.loadData(moduleArgs.get(name))) {
-                        logger.debug("Loaded module {0} data from {1}", name, moduleArgs.get(name));
-
-                        loadedModules.add(module);
-                    }
-                    else {
-                        logger.warn("Failed to load module {0} data from {1}", name, moduleArgs.get(name));
-                    }
-                }
-            };
-        }
-
-        NativeScanCallback nativeCallback = new NativeScanCallback(library, yaraScanCallback, moduleCallback);
-        nativeCallback.setMaxRules(maxRules);
-        nativeCallback.setNegate(notSatisfiedOnly);
+        final String path = file.getAbsolutePath();
+        scan(moduleArgs, yaraScanCallback, fileScan(path));
+    }
 
-        Callback callback = new Callback(nativeCallback, "nativeOnScan", 4);
+    /**
+     * Scan file with per-call options, scanner settings are not used
+     * @param file
+     * @param options
+     */
+    @Override
+    public void scan(File file, ScanOptions options) {
+        checkArgument(file != null);
 
-        try {
-            final long callBackAddress = callback.getAddress();
-            if(callBackAddress == 0) {
-              throw new IllegalStateException("Too many concurrent callbacks, unable to create.");
-            }
-            int ret = library.rulesScanFile(peer, file.getAbsolutePath(), SCAN_FLAGS_NO_TRYCATCH, callBackAddress, 0, timeout);
-            if (!ErrorCode.isSuccess(ret)) {
-                throw new YaraException(ret);
-            }
-        }
-        finally {
-            callback.dispose();
-            loadedModules.forEach( module -> module.unloadData());
-        }
+        final String path = file.getAbsolutePath();
+        scan(options, fileScan(path));
     }
 
     /**
@@ -251,7 +413,7 @@ public class YaraScannerImpl implements YaraScanner {
      * @param buffer
      */
     public void scan(byte[] buffer) {
-        scan(buffer, null);
+        scan(buffer, null, this.scanCallback);
     }
 
     /**
@@ -273,11 +435,508 @@ public class YaraScannerImpl implements YaraScanner {
      */
     @Override
     public void scan(byte[] buffer, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
+        scan(moduleArgs, yaraScanCallback, memScan(buffer));
+    }
+
+    /**
+     * Scan buffer with per-call options, scanner settings are not used
+     * @param buffer
+     * @param options
+     */
+    @Override
+    public void scan(byte[] buffer, ScanOptions options) {
+        checkArgument(buffer != null);
+        scan(options, memScan(buffer));
+    }
+
+    /**
+     * Scan buffer contents between its position and limit
+     *
+     * @param buffer
+     */
+    @Override
+    public void scan(ByteBuffer buffer) {
+        checkArgument(buffer != null);
+        scan(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Scan buffer region
+     *
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     */
+    @Override
+    public void scan(ByteBuffer buffer, int offset, int length) {
+        scan(buffer, offset, length, null, this.scanCallback);
+    }
+
+    /**
+     * Scan buffer region
+     * <br>Direct buffers are handed to libyara by address, heap buffers go through
+     * their backing array. Read-only heap buffers have no accessible array and are copied.
+     *
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     */
+    @Override
+    public void scan(ByteBuffer buffer, int offset, int length, Map<String, String> moduleArgs,
+                     YaraScanCallback yaraScanCallback) {
+        scan(moduleArgs, yaraScanCallback, bufferScan(buffer, offset, length));
+    }
+
+    /**
+     * Scan buffer region with per-call options, scanner settings are not used
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param options
+     */
+    @Override
+    public void scan(ByteBuffer buffer, int offset, int length, ScanOptions options) {
+        scan(options, bufferScan(buffer, offset, length));
+    }
+
+    private NativeScan fileScan(String path) {
+        return sized(() -> new File(path).length(), true, scanner -> library.scannerScanFile(scanner, path));
+    }
+
+    private NativeScan memScan(byte[] buffer) {
+        return sized(() -> buffer.length, false, scanner -> library.scannerScanMem(scanner, buffer));
+    }
+
+    private NativeScan bufferScan(ByteBuffer buffer, int offset, int length) {
+        checkArgument(buffer != null);
+        checkArgument(offset >= 0 && length >= 0 && offset <= buffer.limit() - length);
+
+        if (buffer.isDirect()) {
+            return sized(() -> length, false, scanner -> library.scannerScanDirect(scanner, buffer, offset, length));
+        }
+        else if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            final int start = buffer.arrayOffset() + offset;
+
+            return sized(() -> length, false, scanner -> library.scannerScanMem(scanner, array, start, length));
+        }
+        else {
+            final byte[] copy = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            ((Buffer) source).position(offset);
+            source.get(copy);
+
+            return memScan(copy);
+        }
+    }
+
+    /**
+     * Scan the whole content of an open file
+     *
+     * @param channel
+     */
+    @Override
+    public void scan(FileChannel channel) {
+        checkArgument(channel != null);
+
+        try {
+            scan(channel, 0, channel.size());
+        }
+        catch (IOException ioe) {
+            throw new YaraException(ioe.getMessage());
+        }
+    }
+
+    /**
+     * Scan a region of an open file
+     *
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     */
+    @Override
+    public void scan(FileChannel channel, long position, long length) {
+        scan(channel, position, length, null, this.scanCallback);
+    }
+
+    /**
+     * Scan a region of an open file
+     * <br>The file descriptor of the channel is scanned directly (whole file) or through
+     * a transient native mapping of the region. When the descriptor cannot be resolved the
+     * region is mapped from Java instead, which limits it to {@link Integer#MAX_VALUE} bytes.
+     *
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     */
+    @Override
+    public void scan(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                     YaraScanCallback yaraScanCallback) {
+        scan(moduleArgs, yaraScanCallback, channelScan(channel, position, length));
+    }
+
+    /**
+     * Scan a region of an open file with per-call options, scanner settings are not used
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param options
+     */
+    @Override
+    public void scan(FileChannel channel, long position, long length, ScanOptions options) {
+        scan(options, channelScan(channel, position, length));
+    }
+
+    private NativeScan channelScan(FileChannel channel, long position, long length) {
+        checkArgument(channel != null);
+        checkArgument(position >= 0 && length >= 0);
+
+        try {
+            long size = channel.size();
+            checkArgument(position <= size - length);
+
+            final int fd = library.channelDescriptor(channel);
+
+            if (fd >= 0 && position == 0 && length == size) {
+                return sized(() -> length, true, scanner -> library.scannerScanFd(scanner, fd));
+            }
+            else if (fd >= 0) {
+                return sized(() -> length, true, scanner -> library.scannerScanFd(scanner, fd, position, length));
+            }
+            else {
+                checkArgument(length <= Integer.MAX_VALUE);
+
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                return sized(() -> length, true, bufferScan(mapped, 0, (int) length));
+            }
+        }
+        catch (IOException ioe) {
+            throw new YaraException(ioe.getMessage());
+        }
+    }
+
+    /**
+     * Scan non-contiguous blocks as one logical target
+     * <br>Direct buffers are scanned in place, heap buffers are copied to direct ones.
+     * @param blocks Blocks ordered by base offset, not overlapping
+     * @param moduleArgs Module arguments (-x)
+     * @param yaraScanCallback
+     */
+    @Override
+    public void scan(List<YaraMemoryBlock> blocks, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
+        scan(moduleArgs, yaraScanCallback, blocksScan(blocks));
+    }
+
+    /**
+     * Scan non-contiguous blocks as one logical target with per-call options
+     * @param blocks Blocks ordered by base offset, not overlapping
+     * @param options
+     */
+    @Override
+    public void scan(List<YaraMemoryBlock> blocks, ScanOptions options) {
+        scan(options, blocksScan(blocks));
+    }
+
+    private NativeScan blocksScan(List<YaraMemoryBlock> blocks) {
+        YaraMemoryBlock.checkBlocks(blocks);
+
+        final int count = blocks.size();
+        final ByteBuffer[] buffers = new ByteBuffer[count];
+        final long[] bases = new long[count];
+        final int[] offsets = new int[count];
+        final int[] lengths = new int[count];
+
+        for (int i = 0; i < count; ++i) {
+            YaraMemoryBlock block = blocks.get(i);
+
+            bases[i] = block.getBase();
+            lengths[i] = block.getLength();
+
+            if (block.getBuffer().isDirect()) {
+                buffers[i] = block.getBuffer();
+                offsets[i] = block.getOffset();
+            }
+            else {
+                ByteBuffer source = block.getBuffer().duplicate();
+                ((Buffer) source).limit(block.getOffset() + block.getLength());
+                ((Buffer) source).position(block.getOffset());
+
+                buffers[i] = ByteBuffer.allocateDirect(block.getLength());
+                buffers[i].put(source);
+                offsets[i] = 0;
+            }
+        }
+
+        return sized(() -> {
+            long total = 0;
+            for (int length : lengths) {
+                total += length;
+            }
+            return total;
+        }, false, scanner -> library.scannerScanBlocks(scanner, buffers, bases, offsets, lengths));
+    }
+
+    /**
+     * Scan the memory of a live process
+     * @param pid
+     */
+    @Override
+    public void scanProcess(int pid) {
+        scanProcess(pid, null, this.scanCallback);
+    }
+
+    /**
+     * Scan the memory of a live process
+     * <br>Memory is read in chunks of at most {@link YaraImpl#setMaxProcessMemoryChunk(long)} bytes.
+     * @param pid
+     * @param moduleArgs Module arguments (-x)
+     * @param yaraScanCallback
+     */
+    @Override
+    public void scanProcess(int pid, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
+        checkArgument(pid > 0);
+        scan(moduleArgs, yaraScanCallback, scanner -> library.scannerScanProc(scanner, pid));
+    }
+
+    /**
+     * Scan the memory of a live process with per-call options
+     * @param pid
+     * @param options
+     */
+    @Override
+    public void scanProcess(int pid, ScanOptions options) {
+        checkArgument(pid > 0);
+        scan(options, scanner -> library.scannerScanProc(scanner, pid));
+    }
+
+    /**
+     * Scan file, reporting matching rule indexes only
+     * <br>Rule indexes are computed from the native rule pointer, no rule object is created.
+     * @param file
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    @Override
+    public void scanRuleIds(File file, Map<String, String> moduleArgs, YaraRuleIdCallback cbk) {
+        final String path = file.getAbsolutePath();
+        scan(moduleArgs, ruleIdHandler(cbk), fileScan(path));
+    }
+
+    /**
+     * Scan buffer, reporting matching rule indexes only
+     * @param buffer
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    @Override
+    public void scanRuleIds(byte[] buffer, Map<String, String> moduleArgs, YaraRuleIdCallback cbk) {
+        scan(moduleArgs, ruleIdHandler(cbk), memScan(buffer));
+    }
+
+    /**
+     * Scan buffer region, reporting matching rule indexes only
+     * @param buffer
+     * @param offset Absolute index of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    @Override
+    public void scanRuleIds(ByteBuffer buffer, int offset, int length, Map<String, String> moduleArgs,
+                            YaraRuleIdCallback cbk) {
+        scan(moduleArgs, ruleIdHandler(cbk), bufferScan(buffer, offset, length));
+    }
+
+    /**
+     * Scan a region of an open file, reporting matching rule indexes only
+     * @param channel
+     * @param position Absolute file position of the first byte to scan
+     * @param length Number of bytes to scan
+     * @param moduleArgs Module arguments (-x)
+     * @param cbk
+     */
+    @Override
+    public void scanRuleIds(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                            YaraRuleIdCallback cbk) {
+        scan(moduleArgs, ruleIdHandler(cbk), channelScan(channel, position, length));
+    }
+
+    private RuleHandler ruleIdHandler(YaraRuleIdCallback cbk) {
+        checkArgument(cbk != null);
+        checkState(rules != null);
+
+        final YaraRulesImpl current = rules;
+        return new RuleHandler() {
+            @Override
+            public void onRule(long context, long rule) {
+                cbk.onMatch(current.ruleIndex(rule));
+            }
+
+            @Override
+            public int nativeCalls() {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Scan file asynchronously
+     * <br>Cancelling the future aborts the native scan at its next callback.
+     * @param file
+     * @param options
+     * @param executor Executor of platform threads
+     * @return
+     */
+    @Override
+    public CompletableFuture<ScanResult> scanAsync(File file, ScanOptions options, Executor executor) {
+        checkArgument(file != null);
+
+        final String path = file.getAbsolutePath();
+        return scanAsync(options, executor, fileScan(path));
+    }
+
+    /**
+     * Scan buffer asynchronously
+     * <br>Cancelling the future aborts the native scan at its next callback.
+     * @param buffer
+     * @param options
+     * @param executor Executor of platform threads
+     * @return
+     */
+    @Override
+    public CompletableFuture<ScanResult> scanAsync(byte[] buffer, ScanOptions options, Executor executor) {
+        checkArgument(buffer != null);
+        return scanAsync(options, executor, memScan(buffer));
+    }
+
+    /**
+     * Scan the remaining bytes of a buffer asynchronously
+     * <br>Cancelling the future aborts the native scan at its next callback.
+     * @param buffer
+     * @param options
+     * @param executor Executor of platform threads
+     * @return
+     */
+    @Override
+    public CompletableFuture<ScanResult> scanAsync(ByteBuffer buffer, ScanOptions options, Executor executor) {
+        checkArgument(buffer != null);
+        return scanAsync(options, executor, bufferScan(buffer, buffer.position(), buffer.remaining()));
+    }
+
+    private CompletableFuture<ScanResult> scanAsync(ScanOptions options, Executor executor, NativeScan nativeScan) {
+        final ScanOptions current = options != null ? options : ScanOptions.DEFAULT;
+
+        return YaraAsync.submit(executor, (callback, cancelled) ->
+                scan(current, ruleHandler(callback), nativeScan, cancelled));
+    }
+
+    /**
+     * Scan a stream in bounded memory, window by window
+     * <br>The default overlap is the longest possible string match of the rules.
+     * @param stream
+     * @param options
+     * @return
+     */
+    @Override
+    public StreamScanResult scan(InputStream stream, StreamScanOptions options) {
+        checkState(rules != null);
+        return YaraStreamScanner.scan(this, stream, options, rules.getMaxMatchLength());
+    }
+
+    private RuleHandler ruleHandler(YaraScanCallback yaraScanCallback) {
+        checkState(rules != null);
+
+        if (yaraScanCallback == null) {
+            return null;
+        }
+
+        final YaraRuleCatalog catalog = rules.getCatalog();
+        return (context, rule) -> yaraScanCallback.onMatch(YaraRuleDecoder.decode(library, catalog, context, rule));
+    }
+
+    private void defineVariable(long scanner, String identifier, Object value) {
+        int ret;
+
+        if (value instanceof Long) {
+            ret = library.scannerDefineIntegerVariable(scanner, identifier, (Long) value);
+        }
+        else if (value instanceof Double) {
+            ret = library.scannerDefineFloatVariable(scanner, identifier, (Double) value);
+        }
+        else if (value instanceof Boolean) {
+            ret = library.scannerDefineBooleanVariable(scanner, identifier, (Boolean) value);
+        }
+        else {
+            ret = library.scannerDefineStringVariable(scanner, identifier, (String) value);
+        }
+
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+    }
+
+    private static int flags(ScanOptions options) {
+        int flags = 0;
+
+        if (options.isFastMode()) {
+            flags |= SCAN_FLAGS_FAST_MODE;
+        }
+
+        if (options.isNoTryCatch()) {
+            flags |= SCAN_FLAGS_NO_TRYCATCH;
+        }
+
+        return flags;
+    }
+
+    /**
+     * Options from the scanner settings
+     * @param moduleArgs
+     * @return
+     */
+    private ScanOptions options(Map<String, String> moduleArgs) {
+        return ScanOptions.builder()
+                .setTimeout(timeout)
+                .setMaxRules(maxRules)
+                .setNegate(notSatisfiedOnly)
+                .setFastMode(fastMode)
+                .setModuleArgs(moduleArgs)
+                .build();
+    }
+
+    private void scan(Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback, NativeScan nativeScan) {
+        scan(options(moduleArgs).toBuilder().setCallback(yaraScanCallback).build(), nativeScan);
+    }
+
+    private void scan(Map<String, String> moduleArgs, RuleHandler ruleHandler, NativeScan nativeScan) {
+        scan(options(moduleArgs), ruleHandler, nativeScan, null);
+    }
+
+    private void scan(ScanOptions options, NativeScan nativeScan) {
+        checkArgument(options != null);
+        scan(options, ruleHandler(options.getCallback()), nativeScan, null);
+    }
+
+    /**
+     * Run a scan on the calling thread's pooled native scanner
+     * @param options Scan options, the callback only gets warnings (matches go to the rule handler)
+     * @param ruleHandler
+     * @param nativeScan
+     * @param cancelled Aborts the scan when true, may be null
+     */
+    private void scan(ScanOptions options, RuleHandler ruleHandler, NativeScan nativeScan,
+                      BooleanSupplier cancelled) {
+        checkState(rules != null);
+
+        final Map<String, String> moduleArgs = options.getModuleArgs();
+
         Set<YaraModule> loadedModules = new HashSet<>();
 
         YaraModuleCallback moduleCallback = null;
 
-        if (moduleArgs != null) {
+        if (!moduleArgs.isEmpty()) {
             moduleCallback = module -> {
                 String name = module.getName();
 
@@ -294,26 +953,76 @@ public class YaraScannerImpl implements YaraScanner {
             };
         }
 
-        NativeScanCallback nativeCallback = new NativeScanCallback(library, yaraScanCallback, moduleCallback);
-        nativeCallback.setMaxRules(maxRules);
-        nativeCallback.setNegate(notSatisfiedOnly);
+        NativeScanCallback nativeCallback = new NativeScanCallback(library, ruleHandler, moduleCallback);
+        nativeCallback.setMaxRules(options.getMaxRules());
+        nativeCallback.setNegate(options.isNegate());
+        nativeCallback.setCancelled(cancelled);
+        nativeCallback.setWarningCallback(options.getCallback());
+
+        final YaraMetrics.Sample sample = YaraMetrics.start(metrics);
+        nativeCallback.setSample(sample);
+        final YaraScanEvent event = YaraEvents.scan(YaraEvents.ENGINE_EMBEDDED);
+        nativeCallback.setEvent(event);
+        ErrorCode error = null;
 
-        Callback callback = new Callback(nativeCallback, "nativeOnScan", 4);
+        final long callBackAddress = rules.callbackAddress();
+        final long id = YaraCallbackRegistry.register(nativeCallback);
 
         try {
-            final long callBackAddress = callback.getAddress();
-            if(callBackAddress == 0) {
-              throw new IllegalStateException("Too many concurent callbacks, unable to create.");
+            long scanner = rules.acquire(options.getTimeout(), flags(options));
+            try {
+                library.scannerSetCallback(scanner, callBackAddress, id);
+
+                final Map<String, Object> variables = options.getVariables();
+                final YaraProfiler profiler = rules.getProfiler();
+                try {
+                    variables.forEach((identifier, value) -> defineVariable(scanner, identifier, value));
+
+                    if (profiler != null) {
+                        profiler.begin(scanner);
+                    }
+
+                    int ret = nativeScan.scan(scanner);
+                    YaraScanWarning aborted = nativeCallback.getAborted();
+                    if (aborted != null) {
+                        throw new YaraException(aborted.getType().getErrorCode().getValue());
+                    }
+                    if (!ErrorCode.isSuccess(ret)) {
+                        throw new YaraException(ret);
+                    }
+                }
+                finally {
+                    if (profiler != null) {
+                        profiler.end(scanner);
+                    }
+                    if (!variables.isEmpty()) {
+                        library.scannerResetVariables(scanner, rules.getPeer());
+                    }
+                    if (sample != null) {
+                        // Callback setup and scan, variables and their reset, profiler begin and end
+                        sample.onNativeCalls(2 + (variables.isEmpty() ? 0 : variables.size() + 1)
+                                + (profiler != null ? 2 : 0));
+                    }
+                }
             }
-            int ret = library.rulesScanMem(peer, buffer, SCAN_FLAGS_NO_TRYCATCH, callBackAddress, 0, timeout);
-            if (!ErrorCode.isSuccess(ret)) {
-                throw new YaraException(ret);
+            finally {
+                rules.recycle(scanner);
             }
         }
+        catch (RuntimeException e) {
+            error = YaraMetrics.errorCode(e);
+            throw e;
+        }
         finally {
-            callback.dispose();
+            YaraCallbackRegistry.unregister(id);
             loadedModules.forEach( module -> module.unloadData());
+
+            if (sample != null) {
+                sample.finish(nativeScan.size(), nativeScan.isFile(), error);
+            }
+            if (event != null) {
+                event.finish(nativeScan.size(), nativeScan.isFile(), error);
+            }
         }
     }
-
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.YaraException;
+
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+import static com.github.subreption.yara.Preconditions.checkState;
+
+/**
+ * Pool of native scanners (YR_SCANNER) bound to a compiled ruleset
+ *
+ * @apiNote A native scanner is not thread safe, it is leased to one scan at a time and
+ * returned to a shared free list once the scan is done, so the pool holds as many native
+ * scanners as there are concurrent scans whatever the threads running them. Idle scanners
+ * beyond the cap are destroyed. Timeout and flags are only pushed to the native scanner
+ * when they differ from the values it was last configured with.
+ */
+class YaraScannerPool implements Closeable {
+    /**
+     * Default number of idle native scanners kept
+     */
+    static final int DEFAULT_MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static class Entry {
+        private final long peer;
+        private int timeout = -1;
+        private int flags = -1;
+
+        Entry(long peer) {
+            this.peer = peer;
+        }
+    }
+
+    private final YaraLibrary library;
+    private final long rules;
+    private final int maxIdle;
+    private final Deque<Entry> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final Map<Long, Entry> leased = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    YaraScannerPool(YaraLibrary library, long rules) {
+        this(library, rules, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param library
+     * @param rules
+     * @param maxIdle Maximum number of idle native scanners kept
+     */
+    YaraScannerPool(YaraLibrary library, long rules, int maxIdle) {
+        checkArgument(library != null);
+        checkArgument(rules != 0);
+        checkArgument(maxIdle > 0);
+
+        this.library = library;
+        this.rules = rules;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Lease an idle native scanner, creating one when none is left
+     * <br>The scanner is in use until {@link #recycle(long)} is called with it.
+     * @param timeout   Scan timeout (seconds)
+     * @param flags     Scan flags
+     * @return YR_SCANNER pointer
+     */
+    long acquire(int timeout, int flags) {
+        checkState(!closed);
+
+        Entry entry = idle.pollFirst();
+        if (entry != null) {
+            idleCount.decrementAndGet();
+        }
+        else {
+            entry = new Entry(create());
+        }
+
+        if (entry.timeout != timeout) {
+            library.scannerSetTimeout(entry.peer, timeout);
+            entry.timeout = timeout;
+        }
+
+        if (entry.flags != flags) {
+            library.scannerSetFlags(entry.peer, flags);
+            entry.flags = flags;
+        }
+
+        leased.put(entry.peer, entry);
+        return entry.peer;
+    }
+
+    /**
+     * Return a native scanner once its scan is done, destroyed when the pool is full
+     * @param scanner YR_SCANNER pointer from {@link #acquire(int, int)}
+     */
+    void recycle(long scanner) {
+        Entry entry = leased.remove(scanner);
+        checkArgument(entry != null);
+
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            library.scannerDestroy(entry.peer);
+            return;
+        }
+
+        // Most recently used first, its memory is the most likely to be warm
+        idle.offerFirst(entry);
+
+        if (closed) {
+            drain();
+        }
+    }
+
+    private long create() {
+        long scanner[] = new long[1];
+
+        int ret = library.scannerCreate(rules, scanner);
+        if (ret != ErrorCode.SUCCESS.getValue()) {
+            throw new YaraException(ret);
+        }
+
+        return scanner[0];
+    }
+
+    private void drain() {
+        Entry entry;
+        while (null != (entry = idle.pollFirst())) {
+            idleCount.decrementAndGet();
+            library.scannerDestroy(entry.peer);
+        }
+    }
+
+    /**
+     * Number of live native scanners, idle or leased
+     * @return
+     */
+    int size() {
+        return idleCount.get() + leased.size();
+    }
+
+    /**
+     * Destroy all idle native scanners, must happen before the rules are destroyed
+     * <br>Scanners still leased are destroyed when recycled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+}
@@ -18,8 +18,8 @@
 package com.github.subreption.yara.embedded;
 
 import java.util.Iterator;
+import java.util.List;
 
-import com.github.subreption.yara.GenericIterator;
 import static com.github.subreption.yara.Preconditions.checkArgument;
 import com.github.subreption.yara.YaraMatch;
 import com.github.subreption.yara.YaraString;
@@ -28,18 +28,15 @@ import com.github.subreption.yara.YaraString;
  * Yara rule strings
  */
 public class YaraStringImpl implements YaraString {
-    private final YaraLibrary library;
-    private final long context;
-    private final long peer;
+    private final String identifier;
+    private final List<YaraMatch> matches;
 
-    YaraStringImpl(YaraLibrary library, long context, long peer) {
-        checkArgument(library != null);
-        checkArgument(context != 0);
-        checkArgument(peer != 0);
+    YaraStringImpl(String identifier, List<YaraMatch> matches) {
+        checkArgument(identifier != null);
+        checkArgument(matches != null);
 
-        this.library = library;
-        this.context = context;
-        this.peer = peer;
+        this.identifier = identifier;
+        this.matches = matches;
     }
 
     /**
@@ -48,7 +45,7 @@ public class YaraStringImpl implements YaraString {
      * @return
      */
     public String getIdentifier() {
-        return library.stringIdentifier(peer);
+        return identifier;
     }
 
     /**
@@ -57,20 +54,6 @@ public class YaraStringImpl implements YaraString {
      * @return
      */
     public Iterator<YaraMatch> getMatches() {
-        return new GenericIterator<YaraMatch>() {
-            private long index = library.stringMatches(context, peer);
-
-            @Override
-            protected YaraMatchImpl getNext() {
-                if (index == 0) {
-                    return null;
-                }
-
-                long last = index;
-                index = library.stringMatchNext(index);
-
-                return new YaraMatchImpl(library, last);
-            }
-        };
+        return matches.iterator();
     }
 }
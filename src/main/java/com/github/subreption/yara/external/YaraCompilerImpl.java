@@ -21,12 +21,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
@@ -40,10 +42,13 @@ import org.slf4j.LoggerFactory;
 
 import com.github.subreption.yara.ErrorCode;
 import static com.github.subreption.yara.Preconditions.checkArgument;
+import static com.github.subreption.yara.Preconditions.checkState;
 import com.github.subreption.yara.Utils;
 import com.github.subreption.yara.YaraCompilationCallback;
 import com.github.subreption.yara.YaraCompiler;
 import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraRules;
+import com.github.subreption.yara.YaraRulesCache;
 import com.github.subreption.yara.YaraScanner;
 
 public class YaraCompilerImpl implements YaraCompiler {
@@ -54,6 +59,10 @@ public class YaraCompilerImpl implements YaraCompiler {
     private YaracExecutable yarac;
     private Path rules;
     private List<Path> tempFiles;
+    private YaraRulesCache cache;
+    private YaraRulesCache.Key cacheKey;
+    private int sources;
+    private List<String> declared = new ArrayList<>();
 
     public YaraCompilerImpl() {
         this.rules = null;
@@ -67,6 +76,52 @@ public class YaraCompilerImpl implements YaraCompiler {
         this.callback = cbk;
     }
 
+    @Override
+    public void setCache(YaraRulesCache cache) {
+        checkArgument(cache != null);
+        checkState(this.cache == null);
+        checkState(sources == 0);
+
+        this.cache = cache;
+        this.cacheKey = new YaraRulesCache.Key();
+    }
+
+    @Override
+    public void defineVariable(String identifier, long value) {
+        define(identifier, value);
+    }
+
+    @Override
+    public void defineVariable(String identifier, double value) {
+        define(identifier, value);
+    }
+
+    @Override
+    public void defineVariable(String identifier, boolean value) {
+        define(identifier, value);
+    }
+
+    @Override
+    public void defineVariable(String identifier, String value) {
+        checkArgument(value != null);
+        define(identifier, value);
+    }
+
+    private void define(String identifier, Object value) {
+        checkArgument(!Utils.isNullOrEmpty(identifier));
+
+        if (rules != null) {
+            // Mimic embedded behavior
+            throw new YaraException(ErrorCode.INSUFFICIENT_MEMORY.getValue());
+        }
+
+        yarac.defineVariable(identifier, value);
+
+        if (cache != null) {
+            cacheKey.define(identifier, value);
+        }
+    }
+
     @Override
     public void addRulesContent(String content, String namespace) {
         Boolean deleteImmediately = false;
@@ -86,6 +141,8 @@ public class YaraCompilerImpl implements YaraCompiler {
             Files.write(rule, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.WRITE);
             logger.debug(String.format("calling addRule: %s", rule.toString()));
             yarac.addRule(ns, rule);
+            declare(ns, content);
+            addCacheKey(namespace, () -> content.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
             logger.warn(String.format("IOException while adding rule content: %s", e.getMessage()));
             deleteImmediately = true;
@@ -131,8 +188,12 @@ public class YaraCompilerImpl implements YaraCompiler {
             // Log information about the rule being added
             logger.debug(String.format("Adding rule file: %s to namespace: %s", filePath, ns));
 
+            byte[] source = Files.readAllBytes(rulePath);
+
             // Add the rule using yarac
             yarac.addRule(ns, rulePath);
+            declare(ns, new String(source, StandardCharsets.UTF_8));
+            addCacheKey(namespace, () -> source);
         } catch (Exception e) {
             logger.warn(String.format("Failed to add rules file %s: %s", filePath, e.getMessage()));
             throw new RuntimeException(e);
@@ -201,16 +262,134 @@ public class YaraCompilerImpl implements YaraCompiler {
     @Override
     public YaraScanner createScanner() {
         try {
-            if (rules == null) {
-                rules = yarac.compile(callback);
-            }
-            return new YaraScannerImpl(rules);
+            return YaraScannerImpl.attach(new YaraRulesImpl(getRules(), false, declared));
+        }
+        catch (Exception e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    @Override
+    public YaraRules createRules() {
+        try {
+            return new YaraRulesImpl(getRules(), false, declared);
+        }
+        catch (Exception e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void save(Path path) {
+        checkArgument(path != null);
+
+        try {
+            Files.copy(getRules(), path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (Exception e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void save(OutputStream stream) {
+        checkArgument(stream != null);
+
+        try {
+            Files.copy(getRules(), stream);
         }
         catch (Exception e) {
             throw new YaraException(e.getMessage());
         }
     }
 
+    /**
+     * Rules source content, only read when caching
+     */
+    private interface SourceReader {
+        byte[] read() throws IOException;
+    }
+
+    /**
+     * Track the rules declared by a source, yarac compiles them in the order added
+     * @param namespace
+     * @param source
+     */
+    private void declare(String namespace, String source) {
+        if (declared == null) {
+            return;
+        }
+
+        List<String> identifiers = Utils.ruleDeclarations(source);
+        if (identifiers == null) {
+            // Included files, compiled positions are unknown
+            declared = null;
+            return;
+        }
+
+        String ns = (Utils.isNullOrEmpty(namespace) ? YaraRulesImpl.DEFAULT_NAMESPACE : namespace);
+        identifiers.forEach(identifier -> declared.add(ns + ":" + identifier));
+    }
+
+    private void addCacheKey(String namespace, SourceReader reader) throws IOException {
+        sources++;
+
+        if (cache != null) {
+            cacheKey.add(namespace, reader.read());
+        }
+    }
+
+    private Path getRules() throws Exception {
+        if (rules == null) {
+            rules = (cache != null ? getCachedRules() : yarac.compile(callback));
+        }
+        return rules;
+    }
+
+    /**
+     * Copy compiled rules out of the cache (entries may be evicted while in use),
+     * compile and store them on a miss
+     * @return
+     * @throws Exception
+     */
+    private Path getCachedRules() throws Exception {
+        if (!cacheKey.isCacheable()) {
+            logger.debug("Rules include other files, compiling without the cache");
+            return yarac.compile(callback);
+        }
+
+        String key = cacheKey.build(yarac.getVersion());
+
+        Path entry = cache.get(key);
+        if (entry != null) {
+            Path output = File.createTempFile(UUID.randomUUID().toString(), Utils.compiledRuleIdentifier).toPath();
+            try {
+                Files.copy(entry, output, StandardCopyOption.REPLACE_EXISTING);
+                logger.debug(String.format("Loaded cached rules %s", entry));
+                return output;
+            }
+            catch (IOException ioe) {
+                logger.warn(String.format("Failed to load cached rules %s: %s", entry, ioe.getMessage()));
+                Files.deleteIfExists(output);
+            }
+        }
+
+        Path output = yarac.compile(callback);
+        if (Files.size(output) == 0) {
+            // Compilation failed, nothing worth caching
+            return output;
+        }
+
+        try {
+            cache.put(key, path -> Files.copy(output, path, StandardCopyOption.REPLACE_EXISTING));
+        }
+        catch (IOException ioe) {
+            logger.warn(String.format("Failed to cache rules: %s", ioe.getMessage()));
+        }
+
+        return output;
+    }
+
     @Override
     public void close() throws Exception {
         for (Path p : packages) {
@@ -19,30 +19,66 @@ package com.github.subreption.yara.external;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.github.subreption.yara.Preconditions.checkArgument;
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.ScanOptions;
 import com.github.subreption.yara.Utils;
+import com.github.subreption.yara.YaraEvents;
 import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraMemoryBlock;
+import com.github.subreption.yara.YaraMetrics;
+import com.github.subreption.yara.YaraProcessEvent;
+import com.github.subreption.yara.YaraRuleSelector;
 import com.github.subreption.yara.YaraScanCallback;
+import com.github.subreption.yara.YaraScanWarning;
 
 public class YaraExecutable {
     private static final Logger logger = LoggerFactory.getLogger(YaraExecutable.class);
 
+    private static final String PROGRAM = "yara";
+
+    private static final Pattern WARNING = Pattern.compile("^warning: rule \"([^\"]+)\": (.*)$");
+    private static final Pattern STRING = Pattern.compile("\\$[A-Za-z0-9_]*");
+    private static final Pattern SCAN_ERROR = Pattern.compile("^error scanning (.*): ([^:]*)$");
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "yara-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private int timeout = 60;
     private boolean negate = false;
     private int maxRules = 0;
+    private boolean fastMode = false;
+    private YaraRuleSelector selector;
     private NativeExecutable executable;
     private Set<Path> rules = new HashSet<>();
 
@@ -87,21 +123,103 @@ public class YaraExecutable {
         return this;
     }
 
-    private String[] getCommandLine(Path target, Map<String, String> moduleArgs) {
-        List<String> args = new ArrayList<>();
-        args.add("-g"); // tags
-        args.add("-m"); // meta
-        args.add("-s"); // strings
+    public YaraExecutable setFastMode(boolean value) {
+        this.fastMode = value;
+        return this;
+    }
+
+    /**
+     * Limit matching to the selected rules
+     * @param selector Rule selector, null for all rules
+     * @return
+     */
+    public YaraExecutable setSelector(YaraRuleSelector selector) {
+        this.selector = selector;
+        return this;
+    }
+
+    /**
+     * Options from the executable settings
+     * @param moduleArgs
+     * @param callback
+     * @return
+     */
+    private ScanOptions options(Map<String, String> moduleArgs, YaraScanCallback callback) {
+        return ScanOptions.builder()
+                .setTimeout(timeout)
+                .setMaxRules(maxRules)
+                .setNegate(negate)
+                .setFastMode(fastMode)
+                .setModuleArgs(moduleArgs)
+                .setCallback(callback)
+                .build();
+    }
+
+    /**
+     * @param target File, directory or process id
+     * @param options
+     * @param details Print tags, metadata and strings of the matching rules
+     * @return
+     */
+    private String[] getCommandLine(String target, ScanOptions options, boolean details) {
+        return getCommandLine(target, options, details, new ArrayList<>());
+    }
 
-        if (negate) {
+    /**
+     * @param target File, directory or process id
+     * @param options
+     * @param details Print tags, metadata and strings of the matching rules
+     * @param args Additional switches
+     * @return
+     */
+    private String[] getCommandLine(String target, ScanOptions options, boolean details, List<String> args) {
+        if (details) {
+            args.add("-g"); // tags
+            args.add("-m"); // meta
+            args.add("-s"); // strings
+        }
+
+        if (options.isNegate()) {
             args.add("-n");
         }
 
-        if (maxRules > 0) {
+        if (selector != null) {
+            selector.getTags().forEach(tag -> {
+                args.add("-t");
+                args.add(tag);
+            });
+
+            selector.getIdentifiers().forEach(identifier -> {
+                args.add("-i");
+                args.add(identifier);
+            });
+
+            if (!selector.getNamespaces().isEmpty() && !args.contains("-e")) {
+                args.add("-e"); // print namespaces, filtered on output
+            }
+        }
+
+        if (options.isFastMode()) {
+            args.add("-f"); // fast matching mode
+        }
+
+        if (options.getMaxRules() > 0) {
             args.add("-l");
-            args.add(Integer.toString(maxRules));
+            args.add(Integer.toString(options.getMaxRules()));
+        }
+
+        if (options.getTimeout() > 0) {
+            args.add("-a");
+            args.add(Integer.toString(options.getTimeout()));
         }
 
+        options.getVariables().forEach((identifier, value) -> {
+            args.add("-d");
+            args.add(defineArgument(identifier, value));
+        });
+
+        Map<String, String> moduleArgs = options.getModuleArgs();
+
         // module initialization
         if (moduleArgs != null && moduleArgs.size() > 0) {
             moduleArgs.forEach( (k, v) -> {
@@ -121,43 +239,401 @@ public class YaraExecutable {
         }
 
         // sample
-        args.add(target.toAbsolutePath().toString());
+        args.add(target);
 
         return args.toArray(new String[]{});
     }
 
+    /**
+     * External variable definition (-d identifier=value)
+     * <br>yara infers the type from the value: floats always carry a decimal point, strings
+     * spelling a number or a boolean are read as such.
+     * @param identifier
+     * @param value Long, Double, Boolean or String
+     * @return
+     */
+    static String defineArgument(String identifier, Object value) {
+        String text;
+
+        if (value instanceof Double) {
+            text = BigDecimal.valueOf((Double) value).toPlainString();
+            if (text.indexOf('.') < 0) {
+                text += ".0";
+            }
+        }
+        else {
+            text = value.toString();
+        }
+
+        return String.format("%s=%s", identifier, text);
+    }
+
     public boolean match(Path target, Map<String, String> moduleArgs, YaraScanCallback callback) throws Exception {
-        if (target == null || callback == null) {
+        return match(target, options(moduleArgs, callback));
+    }
+
+    /**
+     * Match rules with per-call options, the executable settings are not used
+     *
+     * @param target
+     * @param options Options with a callback
+     * @return
+     * @throws Exception
+     */
+    public boolean match(Path target, ScanOptions options) throws Exception {
+        if (target == null || options == null || options.getCallback() == null) {
             throw new IllegalArgumentException();
         }
 
+        return matchDetails(target.toAbsolutePath().toString(), options);
+    }
+
+    private boolean matchDetails(String target, ScanOptions options) throws Exception {
+        YaraOutputProcessor outputProcessor = new YaraOutputProcessor(options.getCallback());
+
+        outputProcessor.onStart();
+        execute(getCommandLine(target, options, true), options.getTimeout(), outputProcessor::onLine,
+                options.getCallback());
+        outputProcessor.onComplete();
+
+        return true;
+    }
+
+    /**
+     * Match rules against the memory of a live process
+     *
+     * @param pid
+     * @param moduleArgs
+     * @param callback
+     * @return
+     * @throws Exception
+     */
+    public boolean matchProcess(int pid, Map<String, String> moduleArgs, YaraScanCallback callback) throws Exception {
+        return matchProcess(pid, options(moduleArgs, callback));
+    }
+
+    /**
+     * Match rules against the memory of a live process with per-call options
+     *
+     * @param pid
+     * @param options Options with a callback
+     * @return
+     * @throws Exception
+     */
+    public boolean matchProcess(int pid, ScanOptions options) throws Exception {
+        if (pid <= 0 || options == null || options.getCallback() == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchDetails(Integer.toString(pid), options);
+    }
+
+    /**
+     * Match rules, reporting the qualified identifiers of the matching rules only
+     * <br>yara runs with -e and without -g -m -s, each output line is <code>namespace:rule target</code>.
+     *
+     * @param target
+     * @param moduleArgs
+     * @param identifiers Called with <code>namespace:identifier</code> of each matching rule
+     * @return
+     * @throws Exception
+     */
+    public boolean matchIdentifiers(Path target, Map<String, String> moduleArgs, Consumer<String> identifiers)
+            throws Exception {
+        if (target == null || identifiers == null) {
+            throw new IllegalArgumentException();
+        }
+
+        ScanOptions options = options(moduleArgs, null);
+
+        List<String> args = new ArrayList<>();
+        args.add("-e");
+
+        Consumer<String> output = line -> {
+            int end = line.indexOf(' ');
+            if (end > 0) {
+                identifiers.accept(line.substring(0, end));
+            }
+        };
+
+        run(getCommandLine(target.toAbsolutePath().toString(), options, false, args), options.getTimeout(),
+                filtered(output, true), line -> processError(line, null), true);
+
+        return true;
+    }
+
+    /**
+     * Match rules against every file of a directory tree (yara -r)
+     * <br>Only the identifiers of the matching rules are reported, files yara fails to scan
+     * fail the whole run.
+     *
+     * @param root
+     * @param moduleArgs
+     * @param maxSize Skip files larger than this (bytes), 0 for no limit
+     * @param followSymlinks
+     * @param matches Called with the rule identifier and the matching file
+     * @return
+     * @throws Exception
+     */
+    public boolean matchTree(Path root, Map<String, String> moduleArgs, long maxSize, boolean followSymlinks,
+                             BiConsumer<String, Path> matches) throws Exception {
+        return matchTree(root, options(moduleArgs, null), maxSize, followSymlinks, 0, matches, null);
+    }
+
+    /**
+     * Match rules against every file of a directory tree (yara -r) with per-call options
+     * <br>The options timeout bounds each file (-a), the whole run is bounded by its own timeout.
+     * Only the identifiers of the matching rules are reported.
+     *
+     * @param root
+     * @param options Options, the callback (when set) only gets the scan warnings
+     * @param maxSize Skip files larger than this (bytes), 0 for no limit
+     * @param followSymlinks
+     * @param timeout Timeout of the whole run (seconds), 0 for no limit
+     * @param matches Called with the rule identifier and the matching file
+     * @param errors Called with each file yara failed to scan, null to fail the run instead
+     * @return
+     * @throws Exception
+     */
+    public boolean matchTree(Path root, ScanOptions options, long maxSize, boolean followSymlinks, int timeout,
+                             BiConsumer<String, Path> matches, BiConsumer<Path, YaraException> errors)
+            throws Exception {
+        if (root == null || options == null || matches == null || timeout < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add("-r");
+
+        if (!followSymlinks) {
+            args.add("-N");
+        }
+
+        if (maxSize > 0) {
+            args.add("-z");
+            args.add(Long.toString(maxSize));
+        }
+
+        Consumer<String> output = line -> {
+            int end = line.indexOf(' ');
+            if (end > 0) {
+                matches.accept(line.substring(0, end), Paths.get(line.substring(end + 1)));
+            }
+        };
+
+        Consumer<String> failures = line -> {
+            Matcher matcher = errors != null ? SCAN_ERROR.matcher(line.trim()) : null;
+            if (matcher != null && matcher.matches()) {
+                errors.accept(Paths.get(matcher.group(1)), new YaraException(matcher.group(2)));
+                return;
+            }
+            processError(line, options.getCallback());
+        };
+
+        run(getCommandLine(root.toAbsolutePath().toString(), options, false, args), timeout, filtered(output, false),
+                failures, false);
+
+        return true;
+    }
+
+    public boolean matchIdentifiers(ByteBuffer buffer, Map<String, String> moduleArgs, Consumer<String> identifiers)
+            throws Exception {
+        if (buffer == null || identifiers == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(bufferWriter(buffer), target -> matchIdentifiers(target, moduleArgs, identifiers));
+    }
+
+    public boolean matchIdentifiers(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                                    Consumer<String> identifiers) throws Exception {
+        if (channel == null || identifiers == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(channelWriter(channel, position, length),
+                target -> matchIdentifiers(target, moduleArgs, identifiers));
+    }
+
+    /**
+     * Run yara, the scan warnings are processed before any output line
+     * @param commandLine
+     * @param timeout   Timeout (seconds), 0 for no limit
+     * @param output    Gets every output line
+     * @param warnings  Gets the scan warnings, may be null
+     * @throws Exception
+     */
+    private void execute(String[] commandLine, int timeout, Consumer<String> output, YaraScanCallback warnings)
+            throws Exception {
+        run(commandLine, timeout, filtered(output, false), line -> processError(line, warnings), true);
+    }
+
+    /**
+     * Run yara, stdout and stderr are drained while the process runs
+     * <br>Error lines are handed over once the process exited, output lines as they are read or,
+     * when buffered, after the error lines; all on the calling thread. The process is killed
+     * when the timeout expires.
+     * @param commandLine
+     * @param timeout   Timeout (seconds), 0 for no limit
+     * @param output    Gets every output line
+     * @param errors    Gets every error line
+     * @param buffered  Hold the output lines until the error lines are processed
+     * @throws Exception
+     */
+    private void run(String[] commandLine, int timeout, Consumer<String> output, Consumer<String> errors,
+                     boolean buffered) throws Exception {
+        final List<String> lines = new ArrayList<>();
+        final Consumer<String> read = buffered ? lines::add : output;
+
+        final YaraProcessEvent event = YaraEvents.process(PROGRAM);
+        ErrorCode error = null;
+
         try {
-            Process process = executable.execute(getCommandLine(target, moduleArgs));
-            process.waitFor(timeout, TimeUnit.SECONDS);
+            Process process = executable.execute(commandLine);
+            if (event != null) {
+                event.onSpawned();
+            }
 
-            try (BufferedReader pout = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                 BufferedReader perr  = new BufferedReader(new InputStreamReader(process.getErrorStream())))
-            {
-                String line;
-                while(null != (line = perr.readLine())) {
-                    processError(line);
-                }
+            ErrorReader stderr = new ErrorReader(process);
+            stderr.start();
 
-                YaraOutputProcessor outputProcessor = new YaraOutputProcessor(callback);
+            final AtomicBoolean timedOut = new AtomicBoolean();
+            ScheduledFuture<?> watchdog = timeout > 0
+                    ? WATCHDOG.schedule(() -> {
+                        timedOut.set(true);
+                        process.destroyForcibly();
+                    }, timeout, TimeUnit.SECONDS)
+                    : null;
 
-                outputProcessor.onStart();
+            try (BufferedReader pout = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
                 while (null != (line = pout.readLine())) {
-                    outputProcessor.onLine(line);
+                    read.accept(line);
+                }
+
+                process.waitFor();
+            }
+            catch (IOException ioe) {
+                // Pipe closed by the watchdog
+                if (!timedOut.get()) {
+                    throw ioe;
+                }
+            }
+            finally {
+                if (watchdog != null) {
+                    watchdog.cancel(false);
+                }
+                if (process.isAlive()) {
+                    process.destroyForcibly();
                 }
-                outputProcessor.onComplete();
             }
 
-            return true;
+            if (event != null) {
+                event.onExited(process, !timedOut.get());
+            }
+
+            stderr.join();
+
+            if (timedOut.get()) {
+                throw new YaraException(ErrorCode.SCAN_TIMEOUT.getValue());
+            }
+
+            for (String line : stderr.getLines()) {
+                errors.accept(line);
+            }
+
+            lines.forEach(output);
         }
         catch (Throwable t) {
+            error = YaraMetrics.errorCode(t);
             logger.warn(String.format("Failed to match rules: %s", t.getMessage()));
             throw t;
         }
+        finally {
+            if (event != null) {
+                event.finish(error);
+            }
+        }
+    }
+
+    /**
+     * Drains the process stderr, so a process writing to both streams never blocks
+     */
+    private static class ErrorReader extends Thread {
+        private final Process process;
+        private final List<String> lines = new ArrayList<>();
+
+        ErrorReader(Process process) {
+            super("yara-stderr");
+            setDaemon(true);
+            this.process = process;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader perr = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                String line;
+                while (null != (line = perr.readLine())) {
+                    lines.add(line);
+                }
+            }
+            catch (IOException ioe) {
+                logger.debug(String.format("Failed to read yara errors: %s", ioe.getMessage()));
+            }
+        }
+
+        /**
+         * @return Error lines, once the reader is joined
+         */
+        List<String> getLines() {
+            return lines;
+        }
+    }
+
+    /**
+     * Apply the namespaces of the selector to the output
+     * @param output
+     * @param qualified Keep the namespace prefix (-e)
+     * @return
+     */
+    private Consumer<String> filtered(Consumer<String> output, boolean qualified) {
+        if (selector == null || selector.getNamespaces().isEmpty()) {
+            return output;
+        }
+        return namespaceFilter(selector.getNamespaces(), qualified, output);
+    }
+
+    /**
+     * Drop output of rules outside the namespaces, strip the namespace prefix (-e) otherwise
+     * @param namespaces
+     * @param qualified Keep the namespace prefix (-e) of the rules selected
+     * @param output
+     * @return
+     */
+    static Consumer<String> namespaceFilter(Set<String> namespaces, boolean qualified, Consumer<String> output) {
+        final boolean selected[] = new boolean[1];
+
+        return line -> {
+            // String matches belong to the last rule
+            if (line.startsWith("0x")) {
+                if (selected[0]) {
+                    output.accept(line);
+                }
+                return;
+            }
+
+            int separator = line.indexOf(':');
+            int end = line.indexOf(' ');
+            if (separator < 0 || (end >= 0 && separator > end)) {
+                selected[0] = false;
+                return;
+            }
+
+            selected[0] = namespaces.contains(line.substring(0, separator));
+            if (selected[0]) {
+                output.accept(qualified ? line : line.substring(separator + 1));
+            }
+        };
     }
 
     public boolean match(byte buffer[], Map<String, String> moduleArgs, YaraScanCallback callback) throws Exception {
@@ -165,48 +641,202 @@ public class YaraExecutable {
             throw new IllegalArgumentException();
         }
 
-        File ftmp = File.createTempFile("yara-",".dat");
-        try (FileOutputStream fos = new FileOutputStream(ftmp)) {
-            fos.write(buffer);
+        return match(ByteBuffer.wrap(buffer), moduleArgs, callback);
+    }
+
+    public boolean match(byte buffer[], ScanOptions options) throws Exception {
+        if (buffer == null) {
+            throw new IllegalArgumentException();
         }
 
-        Path target = ftmp.toPath();
-        try {
-            Process process = executable.execute(getCommandLine(target, moduleArgs));
-            process.waitFor(timeout, TimeUnit.SECONDS);
+        return match(ByteBuffer.wrap(buffer), options);
+    }
 
-            try (BufferedReader pout = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                 BufferedReader perr  = new BufferedReader(new InputStreamReader(process.getErrorStream())))
-            {
-                String line;
-                while(null != (line = perr.readLine())) {
-                    processError(line);
+    /**
+     * Match the remaining bytes of the buffer, written to a temporary target file
+     * straight from the buffer (no intermediate array for direct buffers)
+     *
+     * @param buffer
+     * @param moduleArgs
+     * @param callback
+     * @return
+     * @throws Exception
+     */
+    public boolean match(ByteBuffer buffer, Map<String, String> moduleArgs, YaraScanCallback callback) throws Exception {
+        if (buffer == null || callback == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(bufferWriter(buffer), target -> match(target, moduleArgs, callback));
+    }
+
+    public boolean match(ByteBuffer buffer, ScanOptions options) throws Exception {
+        if (buffer == null || options == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(bufferWriter(buffer), target -> match(target, options));
+    }
+
+    /**
+     * Match a region of an open file, copied to a temporary target file by the
+     * channel itself (zero-copy where the platform supports it)
+     *
+     * @param channel
+     * @param position
+     * @param length
+     * @param moduleArgs
+     * @param callback
+     * @return
+     * @throws Exception
+     */
+    public boolean match(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                         YaraScanCallback callback) throws Exception {
+        if (channel == null || callback == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(channelWriter(channel, position, length),
+                target -> match(target, moduleArgs, callback));
+    }
+
+    public boolean match(FileChannel channel, long position, long length, ScanOptions options) throws Exception {
+        if (channel == null || options == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(channelWriter(channel, position, length), target -> match(target, options));
+    }
+
+    /**
+     * Match blocks of a logical target, each block is written at its base offset of a
+     * temporary target file (gaps read as zeros)
+     *
+     * @param blocks
+     * @param moduleArgs
+     * @param callback
+     * @return
+     * @throws Exception
+     */
+    public boolean match(List<YaraMemoryBlock> blocks, Map<String, String> moduleArgs,
+                         YaraScanCallback callback) throws Exception {
+        return match(blocks, options(moduleArgs, callback));
+    }
+
+    public boolean match(List<YaraMemoryBlock> blocks, ScanOptions options) throws Exception {
+        if (blocks == null || options == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return matchTemporary(target -> {
+            for (YaraMemoryBlock block : blocks) {
+                ByteBuffer source = block.getBuffer().duplicate();
+                ((Buffer) source).limit(block.getOffset() + block.getLength());
+                ((Buffer) source).position(block.getOffset());
+
+                long position = block.getBase();
+                while (source.hasRemaining()) {
+                    position += target.write(source, position);
                 }
+            }
+        }, target -> match(target, options));
+    }
 
-                YaraOutputProcessor outputProcessor = new YaraOutputProcessor(callback);
+    /**
+     * Temporary target content writer
+     */
+    private interface TargetWriter {
+        void write(FileChannel target) throws IOException;
+    }
 
-                outputProcessor.onStart();
-                while (null != (line = pout.readLine())) {
-                    outputProcessor.onLine(line);
+    /**
+     * Match on a target file
+     */
+    private interface TargetMatcher {
+        boolean match(Path target) throws Exception;
+    }
+
+    private static TargetWriter bufferWriter(ByteBuffer buffer) {
+        return target -> {
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) {
+                target.write(source);
+            }
+        };
+    }
+
+    private static TargetWriter channelWriter(FileChannel channel, long position, long length) {
+        return target -> {
+            long done = 0;
+            while (done < length) {
+                long count = channel.transferTo(position + done, length - done, target);
+                if (count <= 0) {
+                    throw new IOException(String.format("Unexpected end of channel at %d", position + done));
                 }
-                outputProcessor.onComplete();
+                done += count;
             }
+        };
+    }
 
-            return true;
-        }
-        catch (Throwable t) {
-            logger.warn(String.format("Failed to match rules: %s", t.getMessage()));
-            throw t;
+    private boolean matchTemporary(TargetWriter writer, TargetMatcher matcher) throws Exception {
+        File ftmp = File.createTempFile("yara-",".dat");
+        try {
+            try (FileChannel target = FileChannel.open(ftmp.toPath(), StandardOpenOption.WRITE)) {
+                writer.write(target);
+            }
+
+            return matcher.match(ftmp.toPath());
         } finally {
-            if (ftmp != null) {
-                if (! ftmp.delete()) {
-                    logger.warn(String.format("Failed to delete tmp file %s", ftmp));
-                }
+            if (! ftmp.delete()) {
+                logger.warn(String.format("Failed to delete tmp file %s", ftmp));
             }
         }
     }
 
-    private void processError(String line) {
-        throw new YaraException(line);
+    /**
+     * Scan warnings are handed to the callback, anything else fails the scan
+     * <br>yara has already completed, aborting on a warning discards its results.
+     * @param line
+     * @param warnings
+     */
+    private void processError(String line, YaraScanCallback warnings) {
+        YaraScanWarning warning = scanWarning(line);
+        if (warning == null) {
+            throw new YaraException(line);
+        }
+
+        logger.debug(line);
+
+        if (warnings != null && warnings.onWarning(warning) == YaraScanCallback.Action.ABORT) {
+            throw new YaraException(warning.getType().getErrorCode().getValue());
+        }
+    }
+
+    /**
+     * Parse a scan warning printed by yara
+     * @param line
+     * @return Warning or null when the line is not a scan warning
+     */
+    static YaraScanWarning scanWarning(String line) {
+        Matcher matcher = WARNING.matcher(line.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        String text = matcher.group(2);
+
+        YaraScanWarning.Type type;
+        if (text.contains("too many matches")) {
+            type = YaraScanWarning.Type.TOO_MANY_MATCHES;
+        }
+        else if (text.contains("taking a very long time") || text.contains("slow")) {
+            type = YaraScanWarning.Type.SLOW_SCANNING;
+        }
+        else {
+            return null;
+        }
+
+        Matcher string = STRING.matcher(text);
+        return new YaraScanWarning(type, new YaraRuleImpl(matcher.group(1)), string.find() ? string.group() : null, -1);
     }
 }
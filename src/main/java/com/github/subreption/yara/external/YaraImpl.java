@@ -17,9 +17,23 @@
 
 package com.github.subreption.yara.external;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
 
+import static com.github.subreption.yara.Preconditions.checkArgument;
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.Utils;
 import com.github.subreption.yara.Yara;
 import com.github.subreption.yara.YaraCompiler;
+import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraScanner;
 
 public class YaraImpl implements Yara {
     @Override
@@ -27,6 +41,71 @@ public class YaraImpl implements Yara {
         return new YaraCompilerImpl();
     }
 
+    /**
+     * Load compiled rules
+     * <br>yara only treats a rules file as compiled when its name carries the
+     * compiled rules suffix, other files are scanned through a temporary copy.
+     */
+    @Override
+    public YaraScanner loadRules(Path path) {
+        checkArgument(path != null);
+
+        if (!Files.exists(path)) {
+            throw new YaraException(ErrorCode.COULD_NOT_OPEN_FILE.getValue());
+        }
+
+        if (path.toString().endsWith(Utils.compiledRuleIdentifier)) {
+            return new YaraScannerImpl(path);
+        }
+
+        try {
+            Path copy = createTemporary();
+            Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+
+            return new YaraScannerImpl(copy, true);
+        } catch (IOException e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    @Override
+    public YaraScanner loadRules(InputStream stream) {
+        checkArgument(stream != null);
+
+        try {
+            Path copy = createTemporary();
+            Files.copy(stream, copy, StandardCopyOption.REPLACE_EXISTING);
+
+            return new YaraScannerImpl(copy, true);
+        } catch (IOException e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    @Override
+    public YaraScanner loadRules(ByteBuffer buffer) {
+        checkArgument(buffer != null);
+
+        try {
+            Path copy = createTemporary();
+
+            try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+                ByteBuffer source = buffer.duplicate();
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+
+            return new YaraScannerImpl(copy, true);
+        } catch (IOException e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    private static Path createTemporary() throws IOException {
+        return Files.createTempFile(UUID.randomUUID().toString(), Utils.compiledRuleIdentifier);
+    }
+
     @Override
     public void close() throws Exception {
     }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.external;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.subreption.yara.Preconditions.checkArgument;
+import static com.github.subreption.yara.Preconditions.checkState;
+import com.github.subreption.yara.YaraRuleSelector;
+import com.github.subreption.yara.YaraRules;
+import com.github.subreption.yara.YaraScanner;
+
+/**
+ * Reference counted compiled rules file
+ */
+public class YaraRulesImpl implements YaraRules {
+    private static final Logger logger = LoggerFactory.getLogger(YaraRulesImpl.class);
+
+    /**
+     * Namespace yara puts rules added without one in
+     */
+    static final String DEFAULT_NAMESPACE = "default";
+
+    private final Path path;
+    private final boolean temporary;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final YaraRulesImpl parent;
+    private final YaraRuleSelector selector;
+
+    /**
+     * @param path
+     * @param temporary Rules file is deleted once the last reference is released
+     */
+    YaraRulesImpl(Path path, boolean temporary) {
+        this(path, temporary, null);
+    }
+
+    /**
+     * @param path
+     * @param temporary Rules file is deleted once the last reference is released
+     * @param declared  Qualified (<code>namespace:identifier</code>) rules in compiled order,
+     *                  null when unknown
+     */
+    YaraRulesImpl(Path path, boolean temporary, List<String> declared) {
+        checkArgument(path != null);
+
+        this.path = path;
+        this.temporary = temporary;
+        this.parent = null;
+        this.selector = null;
+
+        if (declared != null) {
+            declared.forEach(rule -> indexes.putIfAbsent(rule, indexes.size()));
+            nextIndex.set(indexes.size());
+        }
+    }
+
+    /**
+     * Subset of the parent rules, holds a reference on the parent
+     * @param parent
+     * @param selector
+     */
+    private YaraRulesImpl(YaraRulesImpl parent, YaraRuleSelector selector) {
+        this.path = parent.path;
+        this.temporary = false;
+        this.parent = parent;
+        this.selector = selector;
+    }
+
+    @Override
+    public YaraScanner createScanner() {
+        checkState(!closed.get());
+
+        retain();
+        return YaraScannerImpl.attach(this);
+    }
+
+    /**
+     * Subset of the rules, selected by yara itself (-t, -i) and by namespace on its output
+     * @param selector
+     * @return
+     */
+    @Override
+    public YaraRules subset(YaraRuleSelector selector) {
+        checkState(!closed.get());
+        checkArgument(selector != null);
+
+        retain();
+        return new YaraRulesImpl(this, selector);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Rule selector, null when not a subset
+     */
+    YaraRuleSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Index of a rule from its qualified identifier
+     * <br>Rules declared in the compiled sources are at their compiled position, as with the
+     * embedded engine. Rules loaded from a compiled file are indexed in order of first match,
+     * stable for the lifetime of the rules.
+     * @param rule <code>namespace:identifier</code>
+     * @return
+     */
+    int ruleIndex(String rule) {
+        if (parent != null) {
+            return parent.ruleIndex(rule);
+        }
+
+        return indexes.computeIfAbsent(rule, k -> nextIndex.getAndIncrement());
+    }
+
+    int references() {
+        return references.get();
+    }
+
+    void retain() {
+        int count;
+        do {
+            count = references.get();
+            checkState(count > 0);
+        } while (!references.compareAndSet(count, count + 1));
+    }
+
+    void release() {
+        int count = references.decrementAndGet();
+        checkState(count >= 0);
+
+        if (count == 0 && parent != null) {
+            parent.release();
+        }
+
+        if (count == 0 && temporary) {
+            try {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException ioe) {
+                logger.warn(String.format("Failed to delete rules %s: %s", path, ioe.getMessage()));
+            }
+        }
+    }
+}
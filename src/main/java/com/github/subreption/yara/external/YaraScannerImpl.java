@@ -18,24 +18,114 @@
 package com.github.subreption.yara.external;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.ScanOptions;
+import com.github.subreption.yara.TreeScanOptions;
+import com.github.subreption.yara.YaraBatchSink;
+import com.github.subreption.yara.YaraEvents;
 import static com.github.subreption.yara.Preconditions.checkArgument;
 import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraMemoryBlock;
+import com.github.subreption.yara.YaraMetrics;
+import com.github.subreption.yara.YaraRule;
+import com.github.subreption.yara.YaraRuleIdCallback;
 import com.github.subreption.yara.YaraScanCallback;
+import com.github.subreption.yara.YaraScanEvent;
+import com.github.subreption.yara.YaraScanWarning;
 import com.github.subreption.yara.YaraScanner;
 
 
 public class YaraScannerImpl implements YaraScanner {
+    /**
+     * yara invocation
+     */
+    private interface Match {
+        void run(Meter meter) throws Exception;
+    }
+
+    /**
+     * Metrics sample and flight recorder event of one scan, either may be null
+     */
+    private static final class Meter {
+        private final YaraMetrics.Sample sample;
+        private final YaraScanEvent event;
+
+        Meter(YaraMetrics.Sample sample, YaraScanEvent event) {
+            this.sample = sample;
+            this.event = event;
+        }
+
+        void onCallback() {
+            if (sample != null) {
+                sample.onCallback();
+            }
+        }
+
+        void onMatch(String identifier) {
+            if (sample != null) {
+                sample.onCallback();
+                sample.onMatch(identifier);
+            }
+            if (event != null) {
+                event.onMatch();
+            }
+        }
+
+        void finish(long size, boolean file, ErrorCode error) {
+            if (sample != null) {
+                sample.finish(size, file, error);
+            }
+            if (event != null) {
+                event.finish(size, file, error);
+            }
+        }
+    }
+
     private YaraExecutable yara;
     private YaraScanCallback callback;
+    private YaraRulesImpl rules;
+    private volatile YaraMetrics metrics;
 
     public YaraScannerImpl(Path rules) {
+        this(rules, false);
+    }
+
+    /**
+     * @param rules
+     * @param deleteOnClose Rules file is a temporary copy owned by the scanner
+     */
+    YaraScannerImpl(Path rules, boolean deleteOnClose) {
+        this(new YaraRulesImpl(rules, deleteOnClose));
+    }
+
+    /**
+     * Attach a scanner to shared rules
+     * @param rules Shared rules, a reference is held on behalf of the scanner
+     * @return
+     */
+    static YaraScannerImpl attach(YaraRulesImpl rules) {
+        return new YaraScannerImpl(rules);
+    }
+
+    private YaraScannerImpl(YaraRulesImpl rules) {
         checkArgument(rules != null);
         this.yara = new YaraExecutable();
-        this.yara.addRule(rules);
+        this.yara.addRule(rules.getPath());
+        this.yara.setSelector(rules.getSelector());
+        this.rules = rules;
     }
 
     @Override
@@ -53,6 +143,16 @@ public class YaraScannerImpl implements YaraScanner {
         yara.setNegate(value);
     }
 
+    @Override
+    public void setFastMode(boolean value) {
+        yara.setFastMode(value);
+    }
+
+    @Override
+    public void setMetrics(YaraMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public void setCallback(YaraScanCallback cbk) {
         checkArgument(cbk != null);
@@ -61,7 +161,7 @@ public class YaraScannerImpl implements YaraScanner {
 
     @Override
     public void scan(File file) {
-        scan(file, null);
+        scan(file, null, this.callback);
     }
 
     @Override
@@ -76,17 +176,25 @@ public class YaraScannerImpl implements YaraScanner {
             throw new YaraException(ErrorCode.COULD_NOT_OPEN_FILE.getValue());
         }
 
-        try {
-            yara.match(file.toPath(), moduleArgs, yaraScanCallback);
-        } catch (Exception e) {
-            throw new YaraException(e.getMessage());
+        match(file::length, true, meter -> yara.match(file.toPath(), moduleArgs, metered(yaraScanCallback, meter)));
+
+    }
+
+    @Override
+    public void scan(File file, ScanOptions options) {
+        checkArgument(file != null);
+        checkArgument(options != null);
+
+        if (!file.exists()) {
+            throw new YaraException(ErrorCode.COULD_NOT_OPEN_FILE.getValue());
         }
 
+        match(file::length, true, meter -> yara.match(file.toPath(), metered(options, meter)));
     }
 
     @Override
     public void scan(byte[] buffer) {
-        scan(buffer, null);
+        scan(buffer, null, this.callback);
     }
 
     @Override
@@ -98,14 +206,297 @@ public class YaraScannerImpl implements YaraScanner {
     public void scan(byte[] buffer, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
         checkArgument(buffer != null);
 
+        match(() -> buffer.length, false, meter -> yara.match(buffer, moduleArgs, metered(yaraScanCallback, meter)));
+    }
+
+    @Override
+    public void scan(byte[] buffer, ScanOptions options) {
+        checkArgument(buffer != null);
+        checkArgument(options != null);
+
+        match(() -> buffer.length, false, meter -> yara.match(buffer, metered(options, meter)));
+    }
+
+    @Override
+    public void scan(ByteBuffer buffer) {
+        checkArgument(buffer != null);
+        scan(buffer, buffer.position(), buffer.remaining());
+    }
+
+    @Override
+    public void scan(ByteBuffer buffer, int offset, int length) {
+        scan(buffer, offset, length, null, this.callback);
+    }
+
+    @Override
+    public void scan(ByteBuffer buffer, int offset, int length, Map<String, String> moduleArgs,
+                     YaraScanCallback yaraScanCallback) {
+        ByteBuffer region = region(buffer, offset, length);
+
+        match(region::remaining, false, meter -> yara.match(region, moduleArgs, metered(yaraScanCallback, meter)));
+    }
+
+    @Override
+    public void scan(ByteBuffer buffer, int offset, int length, ScanOptions options) {
+        checkArgument(options != null);
+        ByteBuffer region = region(buffer, offset, length);
+
+        match(region::remaining, false, meter -> yara.match(region, metered(options, meter)));
+    }
+
+    /**
+     * Run yara, recording the scan when metrics or flight recording are enabled
+     * @param size Bytes scanned, computed only when the scan is recorded
+     * @param file Whether the target is a file
+     * @param match
+     */
+    private void match(LongSupplier size, boolean file, Match match) {
+        final YaraMetrics.Sample sample = YaraMetrics.start(metrics);
+        final YaraScanEvent event = YaraEvents.scan(YaraEvents.ENGINE_EXTERNAL);
+        final Meter meter = sample != null || event != null ? new Meter(sample, event) : null;
+        ErrorCode error = null;
+
+        try {
+            match.run(meter);
+        } catch (YaraException e) {
+            error = e.getCode();
+            throw e;
+        } catch (Exception e) {
+            error = ErrorCode.UNKNOWN;
+            throw new YaraException(e.getMessage());
+        } finally {
+            if (meter != null) {
+                meter.finish(size.getAsLong(), file, error);
+            }
+        }
+    }
+
+    private static YaraScanCallback metered(YaraScanCallback callback, Meter meter) {
+        if (meter == null || callback == null) {
+            return callback;
+        }
+
+        return new YaraScanCallback() {
+            @Override
+            public void onMatch(YaraRule rule) {
+                meter.onMatch(rule.getIdentifier());
+                callback.onMatch(rule);
+            }
+
+            @Override
+            public Action onWarning(YaraScanWarning warning) {
+                meter.onCallback();
+                return callback.onWarning(warning);
+            }
+        };
+    }
+
+    private static ScanOptions metered(ScanOptions options, Meter meter) {
+        if (meter == null) {
+            return options;
+        }
+        return options.toBuilder().setCallback(metered(options.getCallback(), meter)).build();
+    }
+
+    private Consumer<String> meteredIds(YaraRuleIdCallback cbk, Meter meter) {
+        final YaraRulesImpl current = rules;
+
+        return rule -> {
+            if (meter != null) {
+                meter.onMatch(rule.substring(rule.indexOf(':') + 1));
+            }
+            cbk.onMatch(current.ruleIndex(rule));
+        };
+    }
+
+    private static void checkRegion(FileChannel channel, long position, long length) {
+        try {
+            checkArgument(position <= channel.size() - length);
+        } catch (IOException e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    private static long size(List<YaraMemoryBlock> blocks) {
+        long total = 0;
+        for (YaraMemoryBlock block : blocks) {
+            total += block.getLength();
+        }
+        return total;
+    }
+
+    private static ByteBuffer region(ByteBuffer buffer, int offset, int length) {
+        checkArgument(buffer != null);
+        checkArgument(offset >= 0 && length >= 0 && offset <= buffer.limit() - length);
+
+        ByteBuffer region = buffer.duplicate();
+        ((Buffer) region).limit(offset + length);
+        ((Buffer) region).position(offset);
+        return region;
+    }
+
+    @Override
+    public void scan(FileChannel channel) {
+        checkArgument(channel != null);
+
         try {
-            yara.match(buffer, moduleArgs, yaraScanCallback);
+            scan(channel, 0, channel.size());
+        } catch (IOException e) {
+            throw new YaraException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void scan(FileChannel channel, long position, long length) {
+        scan(channel, position, length, null, this.callback);
+    }
+
+    @Override
+    public void scan(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                     YaraScanCallback yaraScanCallback) {
+        checkArgument(channel != null);
+        checkArgument(position >= 0 && length >= 0);
+        checkRegion(channel, position, length);
+        match(() -> length, true, meter -> yara.match(channel, position, length, moduleArgs,
+                metered(yaraScanCallback, meter)));
+    }
+
+    @Override
+    public void scan(FileChannel channel, long position, long length, ScanOptions options) {
+        checkArgument(channel != null);
+        checkArgument(options != null);
+        checkArgument(position >= 0 && length >= 0);
+        checkRegion(channel, position, length);
+        match(() -> length, true, meter -> yara.match(channel, position, length, metered(options, meter)));
+    }
+
+    @Override
+    public void scan(List<YaraMemoryBlock> blocks, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
+        YaraMemoryBlock.checkBlocks(blocks);
+
+        match(() -> size(blocks), false, meter -> yara.match(blocks, moduleArgs, metered(yaraScanCallback, meter)));
+    }
+
+    @Override
+    public void scan(List<YaraMemoryBlock> blocks, ScanOptions options) {
+        YaraMemoryBlock.checkBlocks(blocks);
+        checkArgument(options != null);
+
+        match(() -> size(blocks), false, meter -> yara.match(blocks, metered(options, meter)));
+    }
+
+    @Override
+    public void scanProcess(int pid) {
+        scanProcess(pid, null, this.callback);
+    }
+
+    @Override
+    public void scanProcess(int pid, Map<String, String> moduleArgs, YaraScanCallback yaraScanCallback) {
+        checkArgument(pid > 0);
+
+        match(() -> -1, false, meter -> yara.matchProcess(pid, moduleArgs, metered(yaraScanCallback, meter)));
+    }
+
+    @Override
+    public void scanProcess(int pid, ScanOptions options) {
+        checkArgument(pid > 0);
+        checkArgument(options != null);
+
+        match(() -> -1, false, meter -> yara.matchProcess(pid, metered(options, meter)));
+    }
+
+    @Override
+    public void scanRuleIds(File file, Map<String, String> moduleArgs, YaraRuleIdCallback cbk) {
+        checkArgument(file != null);
+        checkArgument(cbk != null);
+
+        if (!file.exists()) {
+            throw new YaraException(ErrorCode.COULD_NOT_OPEN_FILE.getValue());
+        }
+
+        match(file::length, true, meter -> yara.matchIdentifiers(file.toPath(), moduleArgs, meteredIds(cbk, meter)));
+    }
+
+    @Override
+    public void scanRuleIds(byte[] buffer, Map<String, String> moduleArgs, YaraRuleIdCallback cbk) {
+        checkArgument(buffer != null);
+        scanRuleIds(ByteBuffer.wrap(buffer), 0, buffer.length, moduleArgs, cbk);
+    }
+
+    @Override
+    public void scanRuleIds(ByteBuffer buffer, int offset, int length, Map<String, String> moduleArgs,
+                            YaraRuleIdCallback cbk) {
+        checkArgument(buffer != null);
+        checkArgument(cbk != null);
+        checkArgument(offset >= 0 && length >= 0 && offset <= buffer.limit() - length);
+
+        ByteBuffer region = buffer.duplicate();
+        ((Buffer) region).limit(offset + length);
+        ((Buffer) region).position(offset);
+
+        match(region::remaining, false, meter -> yara.matchIdentifiers(region, moduleArgs, meteredIds(cbk, meter)));
+    }
+
+    @Override
+    public void scanRuleIds(FileChannel channel, long position, long length, Map<String, String> moduleArgs,
+                            YaraRuleIdCallback cbk) {
+        checkArgument(channel != null);
+        checkArgument(cbk != null);
+        checkArgument(position >= 0 && length >= 0);
+        checkRegion(channel, position, length);
+        match(() -> length, true, meter -> yara.matchIdentifiers(channel, position, length, moduleArgs,
+                meteredIds(cbk, meter)));
+    }
+
+    /**
+     * Scan a directory tree
+     * <br>With external recursion enabled and no filters yara cannot apply (glob, extension,
+     * minimum size), yara walks the tree itself (-r) and the reported rules only carry
+     * their identifier. yara only reports files with matches: {@link YaraBatchSink#onComplete(Path)}
+     * is called for each of them once yara is done, {@link YaraBatchSink#onError(Path, Exception)}
+     * for each file yara failed to scan.
+     * @param root
+     * @param options
+     * @param sink
+     */
+    @Override
+    public void scanTree(Path root, TreeScanOptions options, YaraBatchSink sink) {
+        // A zero maximum size only accepts empty files, yara reads -z 0 as no limit
+        if (options == null || !options.isExternalRecursion()
+                || options.getGlob() != null || !options.getExtensions().isEmpty()
+                || options.getMinSize() > 0 || options.getMaxSize() == 0) {
+            YaraScanner.super.scanTree(root, options, sink);
+            return;
+        }
+
+        checkArgument(root != null && Files.isDirectory(root));
+        checkArgument(sink != null);
+
+        long maxSize = options.getMaxSize() != Long.MAX_VALUE ? options.getMaxSize() : 0;
+        boolean follow = options.getSymlinks() == TreeScanOptions.Symlinks.FOLLOW;
+        Set<Path> reported = new LinkedHashSet<>();
+
+        try {
+            yara.matchTree(root, options.getScanOptions(), maxSize, follow, options.getTimeout(),
+                    (identifier, path) -> {
+                        reported.add(path);
+                        sink.onMatch(path, new YaraRuleImpl(identifier));
+                    },
+                    sink::onError);
+        } catch (YaraException e) {
+            throw e;
         } catch (Exception e) {
             throw new YaraException(e.getMessage());
         }
+
+        reported.forEach(sink::onComplete);
     }
 
     @Override
     public void close() throws Exception {
+        if (rules != null) {
+            rules.release();
+            rules = null;
+        }
     }
 }
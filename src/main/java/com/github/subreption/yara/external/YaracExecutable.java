@@ -22,8 +22,8 @@ import java.io.File;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import static com.github.subreption.yara.Preconditions.checkArgument;
 import com.github.subreption.yara.Utils;
 import com.github.subreption.yara.YaraCompilationCallback;
+import com.github.subreption.yara.YaraCompilationWarning;
 
 /**
  * User: pba
@@ -49,7 +50,8 @@ public class YaracExecutable {
 
     private int timeout = 60;
     private NativeExecutable executable;
-    private Map<String, Set<Path>> rules = new HashMap<>();
+    private Set<String> rules = new LinkedHashSet<>();
+    private Map<String, Object> variables = new LinkedHashMap<>();
 
     public YaracExecutable() {
         this.executable = YaraExecutableManager.getYarac();
@@ -74,18 +76,29 @@ public class YaracExecutable {
             throw new IllegalArgumentException();
         }
 
-        Set<Path> paths = rules.get(namespace);
-        if (paths == null) {
-            paths = new HashSet<>();
-            rules.put(namespace, paths);
-        }
-
         logger.debug(String.format("Adding rule from %s", file));
-        paths.add(file);
+
+        // Compiled in the order added, as the embedded compiler does
+        String prefix = Utils.isNullOrEmpty(namespace) ? "" : namespace + ":";
+        rules.add(prefix + file.toAbsolutePath().toString());
 
         return this;
     }
 
+    /**
+     * Define an external variable (-d)
+     * @param identifier
+     * @param value Long, Double, Boolean or String
+     * @return
+     */
+    public YaracExecutable defineVariable(String identifier, Object value) {
+        checkArgument(!Utils.isNullOrEmpty(identifier));
+        checkArgument(value != null);
+
+        variables.put(identifier, value);
+        return this;
+    }
+
     public YaracExecutable setTimeout(int timeout) {
         checkArgument(timeout > 0);
         this.timeout = timeout;
@@ -96,13 +109,12 @@ public class YaracExecutable {
     private String[] getCommandLine(Path output) {
         List<String> args = new ArrayList<>();
 
-        for (Map.Entry<String, Set<Path>> kv : rules.entrySet()) {
-            for (Path path : kv.getValue()) {
-                String prefix = Utils.isNullOrEmpty(kv.getKey()) ?
-                        "" : kv.getKey() + ":";
-                args.add(prefix + path.toAbsolutePath().toString());
-            }
-        }
+        variables.forEach((identifier, value) -> {
+            args.add("-d");
+            args.add(YaraExecutable.defineArgument(identifier, value));
+        });
+
+        args.addAll(rules);
 
         args.add(output.toAbsolutePath().toString());
 
@@ -139,6 +151,21 @@ public class YaracExecutable {
         }
     }
 
+    /**
+     * Version reported by yarac (the libyara version it is built against)
+     * @return
+     * @throws Exception
+     */
+    public String getVersion() throws Exception {
+        Process process = executable.execute("-v");
+        process.waitFor(timeout, TimeUnit.SECONDS);
+
+        try (BufferedReader pout = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line = pout.readLine();
+            return line != null ? line.trim() : "";
+        }
+    }
+
     private void processError(YaraCompilationCallback callback, String line) {
         int lineNumber = 0;
         String filename = null;
@@ -200,5 +227,9 @@ public class YaracExecutable {
         logger.warn(String.format("Compilation failed at line %d in %s: %s", lineNumber, filename, temp.toString().trim()));
 
         callback.onError(level, filename, lineNumber, temp.toString().trim());
+
+        if (level == YaraCompilationCallback.ErrorLevel.WARNING) {
+            callback.onWarning(YaraCompilationWarning.parse(filename, lineNumber, null, temp.toString().trim()));
+        }
     }
 }
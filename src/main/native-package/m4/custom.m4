@@ -8,6 +8,18 @@ AC_DEFUN([CUSTOM_M4_SETUP],
   CFLAGS="$CFLAGS $YARA_INC"
   CXXFLAGS="$CXXFLAGS $YARA_INC"
   LDFLAGS="$LDFLAGS $YARA_LIB"
+
+  dnl Rule profiling, libyara must be configured with --enable-profiling as well
+  AC_ARG_ENABLE([profiling],
+    [AS_HELP_STRING([--enable-profiling], [enable rule profiling (requires a profiling libyara build)])],
+    [yara_profiling=$enableval],
+    [yara_profiling=no])
+
+  if test "x$yara_profiling" = "xyes"; then
+    CFLAGS="$CFLAGS -DYR_PROFILING_ENABLED"
+    CXXFLAGS="$CXXFLAGS -DYR_PROFILING_ENABLED"
+  fi
+
   AC_SUBST(CFLAGS)
   AC_SUBST(CXXFLAGS)
   AC_SUBST(LDFLAGS)
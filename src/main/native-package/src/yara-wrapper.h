@@ -21,6 +21,11 @@
 #include "yara.h"
 #include <jni.h>
 
+#if !defined(_WIN32)
+#include <sys/mman.h>
+#include <unistd.h>
+#endif
+
 #ifdef __cplusplus
 extern "C" {
 #endif
@@ -32,6 +37,14 @@ cast_jstring(JNIEnv *env, const char * v) {
             (*env)->NewStringUTF(env, v);
 }
 
+/*
+ * libyara version
+ */
+static jstring
+yara_version(JNIEnv *env) {
+    return cast_jstring(env, YR_VERSION);
+}
+
 /*
  * Rule indentifier
  */
@@ -131,6 +144,21 @@ yara_string_identifier(JNIEnv *env, void *v) {
             cast_jstring(env, ((YR_STRING*)v)->identifier);
 }
 
+static jint
+yara_string_rule_index(JNIEnv *env, void *v) {
+    return !v ? -1 : (jint)((YR_STRING*)v)->rule_idx;
+}
+
+static jlong
+yara_string_match_count(JNIEnv *env, void *context, void *v) {
+    YR_STRING *string = (YR_STRING *)v;
+
+    if (!context || !string) {
+        return 0;
+    }
+    return ((YR_SCAN_CONTEXT*)context)->matches[string->idx].count;
+}
+
 static void*
 yara_string_matches(JNIEnv *env, void *context, void *v) {
     YR_STRING *string = (YR_STRING *)v;
@@ -201,6 +229,241 @@ yara_match_bytes(JNIEnv *env, void *v) {
     return value;
 }
 
+/*
+ *  Rule serialization
+ *
+ *  Rules are written in one pass to a direct buffer, native byte order, strings and
+ *  data are int32 length prefixed (-1 for NULL).
+ *
+ *  Catalog, written once per ruleset, rules in rules_table order:
+ *    int32 rule count     { identifier, namespace,
+ *                           int32 tag count    { tag },
+ *                           int32 meta count   { int32 type, identifier, int64 integer, string },
+ *                           int32 string count { identifier } }
+ *
+ *  Matched rule, written on each match:
+ *    int32 rule index, int32 string count { int32 match count,
+ *                                           { int64 offset, int32 match length, data } }
+ *
+ *  Nothing is written past the buffer capacity but the full size is always computed,
+ *  the caller retries with a larger buffer when the returned size exceeds it.
+ */
+typedef struct {
+    uint8_t *base;
+    int64_t  capacity;
+    int64_t  position;
+} yara_writer;
+
+static void
+yara_writer_put(yara_writer *w, const void *data, size_t length) {
+    if (length > 0 && w->position + (int64_t)length <= w->capacity) {
+        memcpy(w->base + w->position, data, length);
+    }
+    w->position += (int64_t)length;
+}
+
+static void
+yara_writer_int(yara_writer *w, int32_t v) {
+    yara_writer_put(w, &v, sizeof(v));
+}
+
+static void
+yara_writer_long(yara_writer *w, int64_t v) {
+    yara_writer_put(w, &v, sizeof(v));
+}
+
+static void
+yara_writer_patch(yara_writer *w, int64_t at, int32_t v) {
+    if (at + (int64_t)sizeof(v) <= w->capacity) {
+        memcpy(w->base + at, &v, sizeof(v));
+    }
+}
+
+static void
+yara_writer_data(yara_writer *w, const void *data, int32_t length) {
+    if (!data) {
+        yara_writer_int(w, -1);
+        return;
+    }
+
+    yara_writer_int(w, length);
+    yara_writer_put(w, data, (size_t)length);
+}
+
+static void
+yara_writer_string(yara_writer *w, const char *v) {
+    yara_writer_data(w, v, v ? (int32_t)strlen(v) : 0);
+}
+
+static int
+yara_writer_open(JNIEnv *env, yara_writer *w, jobject buffer) {
+    w->base = (uint8_t *)(*env)->GetDirectBufferAddress(env, buffer);
+    w->capacity = (int64_t)(*env)->GetDirectBufferCapacity(env, buffer);
+    w->position = 0;
+
+    return w->base != 0 && w->capacity >= 0;
+}
+
+static void
+yara_write_rule_info(yara_writer *w, YR_RULE *rule) {
+    YR_META     *meta = 0;
+    YR_STRING   *string = 0;
+    const char  *tag = 0;
+    int64_t      at = 0;
+    int32_t      count = 0;
+
+    yara_writer_string(w, rule->identifier);
+    yara_writer_string(w, rule->ns ? rule->ns->name : NULL);
+
+    at = w->position;
+    yara_writer_int(w, 0);
+    count = 0;
+    yr_rule_tags_foreach(rule, tag) {
+        yara_writer_string(w, tag);
+        count++;
+    }
+    yara_writer_patch(w, at, count);
+
+    at = w->position;
+    yara_writer_int(w, 0);
+    count = 0;
+    yr_rule_metas_foreach(rule, meta) {
+        yara_writer_int(w, meta->type);
+        yara_writer_string(w, meta->identifier);
+        yara_writer_long(w, (int64_t)meta->integer);
+        yara_writer_string(w, meta->string);
+        count++;
+    }
+    yara_writer_patch(w, at, count);
+
+    at = w->position;
+    yara_writer_int(w, 0);
+    count = 0;
+    yr_rule_strings_foreach(rule, string) {
+        yara_writer_string(w, string->identifier);
+        count++;
+    }
+    yara_writer_patch(w, at, count);
+}
+
+static int64_t
+yara_rules_catalog(JNIEnv *env, void *v, jobject buffer) {
+    YR_RULES    *rules = (YR_RULES *)v;
+    YR_RULE     *rule = 0;
+    yara_writer  w;
+    int32_t      count = 0;
+
+    if (!rules || !buffer || !yara_writer_open(env, &w, buffer)) {
+        return -1;
+    }
+
+    yara_writer_int(&w, 0);
+    yr_rules_foreach(rules, rule) {
+        yara_write_rule_info(&w, rule);
+        count++;
+    }
+    yara_writer_patch(&w, 0, count);
+
+    return w.position;
+}
+
+static int64_t
+yara_rule_serialize(JNIEnv *env, void *v, void *r, jobject buffer) {
+    YR_SCAN_CONTEXT *context = (YR_SCAN_CONTEXT *)v;
+    YR_RULE         *rule = (YR_RULE *)r;
+    YR_STRING       *string = 0;
+    YR_MATCH        *match = 0;
+    yara_writer      w;
+    int64_t          at = 0;
+    int64_t          inner = 0;
+    int32_t          count = 0;
+    int32_t          matches = 0;
+
+    if (!context || !rule || !buffer || !yara_writer_open(env, &w, buffer)) {
+        return -1;
+    }
+
+    yara_writer_int(&w, (int32_t)(rule - context->rules->rules_table));
+
+    at = w.position;
+    yara_writer_int(&w, 0);
+    count = 0;
+    yr_rule_strings_foreach(rule, string) {
+        inner = w.position;
+        yara_writer_int(&w, 0);
+        matches = 0;
+        yr_string_matches_foreach(context, string, match) {
+            if (match->is_private) {
+                continue;
+            }
+
+            yara_writer_long(&w, match->offset);
+            yara_writer_int(&w, match->match_length);
+            yara_writer_data(&w, match->data, match->data_length);
+            matches++;
+        }
+        yara_writer_patch(&w, inner, matches);
+
+        count++;
+    }
+    yara_writer_patch(&w, at, count);
+
+    return w.position;
+}
+
+/*
+ *  Rule indexes, computed from the YR_RULE pointer handed to the scan callback
+ *  as (rule - rules_table) / sizeof(YR_RULE)
+ */
+static void*
+yara_rules_table(JNIEnv *env, void *v) {
+    return !v ? 0 : (void *)((YR_RULES*)v)->rules_table;
+}
+
+static jint
+yara_rule_size(JNIEnv *env) {
+    return (jint)sizeof(YR_RULE);
+}
+
+/*
+ * Upper bound of the length of any string match: literal strings are bounded by their
+ * (encoded) length, regular expressions and hex strings with jumps by the regexp scan limit
+ */
+static jint
+yara_rules_max_match_length(JNIEnv *env, void *v) {
+    YR_RULES *rules = (YR_RULES*)v;
+    YR_RULE *rule = NULL;
+    YR_STRING *string = NULL;
+    jint max = 0;
+
+    if (!rules) {
+        return -1;
+    }
+
+    yr_rules_foreach(rules, rule) {
+        yr_rule_strings_foreach(rule, string) {
+            jint length = YR_RE_SCAN_LIMIT;
+
+            if (STRING_IS_LITERAL(string)) {
+                length = string->length;
+
+                if (string->flags & (STRING_FLAGS_BASE64 | STRING_FLAGS_BASE64_WIDE)) {
+                    length *= 3;
+                }
+                else if (STRING_IS_WIDE(string)) {
+                    length *= 2;
+                }
+            }
+
+            if (length > max) {
+                max = length;
+            }
+        }
+    }
+
+    return max;
+}
+
 /*
  *  Compilation
  */
@@ -220,6 +483,503 @@ yara_compiler_add_file(JNIEnv *env, void *compiler, const char *path, const char
     return ret;
 }
 
+/*
+ *  Scanning
+ */
+static int
+yara_scanner_scan_mem_region(JNIEnv *env, void *scanner, jbyte *buffer, jint offset, jint length) {
+    if (!scanner || !buffer || offset < 0 || length < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    return yr_scanner_scan_mem((YR_SCANNER*)scanner, (const uint8_t*)buffer + offset, (size_t)length);
+}
+
+/*
+ * The buffer local reference keeps the direct buffer (and its memory)
+ * reachable for the whole scan, no copy of the contents is made.
+ */
+static int
+yara_scanner_scan_direct(JNIEnv *env, void *scanner, jobject buffer, jint offset, jint length) {
+    uint8_t *address = 0;
+
+    if (!scanner || !buffer || offset < 0 || length < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    if (0 == (address = (uint8_t*)(*env)->GetDirectBufferAddress(env, buffer))) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    return yr_scanner_scan_mem((YR_SCANNER*)scanner, address + offset, (size_t)length);
+}
+
+/*
+ *  Configuration
+ */
+static int
+yara_set_max_process_memory_chunk(JNIEnv *env, jlong size) {
+    if (size <= 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    return yr_set_configuration_uint64(YR_CONFIG_MAX_PROCESS_MEMORY_CHUNK, (uint64_t)size);
+}
+
+static jlong
+yara_get_max_process_memory_chunk(JNIEnv *env) {
+    uint64_t size = 0;
+
+    if (ERROR_SUCCESS != yr_get_configuration_uint64(YR_CONFIG_MAX_PROCESS_MEMORY_CHUNK, &size)) {
+        return -1;
+    }
+
+    return (jlong)size;
+}
+
+/*
+ *  Profiling
+ *
+ *  Requires libyara and this wrapper built with YR_PROFILING_ENABLED (--enable-profiling),
+ *  the scanner structure differs otherwise. libyara accumulates per-rule costs on the
+ *  scanner across scans, they are added to the given counters (indexed by rule) and reset.
+ *  Null counters only reset.
+ */
+static jint
+yara_profiling_enabled(JNIEnv *env) {
+#ifdef YR_PROFILING_ENABLED
+    return 1;
+#else
+    return 0;
+#endif
+}
+
+static int
+yara_scanner_profile(JNIEnv *env, void *v, jlong *atom_matches, jlong *match_time, jlong *exec_time, jint count) {
+#ifdef YR_PROFILING_ENABLED
+    YR_SCANNER *scanner = (YR_SCANNER*)v;
+    uint32_t i = 0;
+
+    if (!scanner || !scanner->profiling_info || count < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    if (atom_matches && match_time && exec_time) {
+        for (i = 0; i < scanner->rules->num_rules && i < (uint32_t)count; ++i) {
+            atom_matches[i] += (jlong)scanner->profiling_info[i].atom_matches;
+            match_time[i] += (jlong)scanner->profiling_info[i].match_time;
+            exec_time[i] += (jlong)scanner->profiling_info[i].exec_time;
+        }
+    }
+
+    memset(scanner->profiling_info, 0, scanner->rules->num_rules * sizeof(YR_PROFILING_INFO));
+    return ERROR_SUCCESS;
+#else
+    return ERROR_INVALID_ARGUMENT;
+#endif
+}
+
+/*
+ *  Rule subsets
+ *
+ *  Disabled rules are not evaluated but libyara still reports them as not matching, the
+ *  subset callback drops those messages before they reach the Java callback. Rules left
+ *  out of a subset but referenced by the rules kept stay enabled and are suppressed, their
+ *  messages are dropped the same way. The Java callback is the process wide registry
+ *  callback, it never changes once created.
+ */
+#define YARA_RULE_FLAGS_SUPPRESSED 0x40000000
+
+static YR_CALLBACK_FUNC yara_subset_next = NULL;
+
+static int
+yara_subset_callback(YR_SCAN_CONTEXT *context, int message, void *message_data, void *user_data) {
+    if ((message == CALLBACK_MSG_RULE_MATCHING || message == CALLBACK_MSG_RULE_NOT_MATCHING) &&
+            (RULE_IS_DISABLED((YR_RULE*)message_data) ||
+             (((YR_RULE*)message_data)->flags & YARA_RULE_FLAGS_SUPPRESSED))) {
+        return CALLBACK_CONTINUE;
+    }
+
+    return yara_subset_next(context, message, message_data, user_data);
+}
+
+static void
+yara_rule_suppress(JNIEnv *env, void *v) {
+    ((YR_RULE*)v)->flags |= YARA_RULE_FLAGS_SUPPRESSED;
+}
+
+static jint
+yara_rule_global(JNIEnv *env, void *v) {
+    return RULE_IS_GLOBAL((YR_RULE*)v) ? 1 : 0;
+}
+
+static jlong
+yara_subset_callback_address(JNIEnv *env, jlong next) {
+    if (!next) {
+        return 0;
+    }
+
+    yara_subset_next = (YR_CALLBACK_FUNC)(intptr_t)next;
+    return (jlong)(intptr_t)&yara_subset_callback;
+}
+
+/*
+ *  External variables
+ *
+ *  Pooled scanners outlive a scan, values defined for one scan are put back to the
+ *  defaults compiled into the rules once it completes.
+ */
+static int
+yara_scanner_reset_variables(JNIEnv *env, void *scanner, void *v) {
+    YR_RULES *rules = (YR_RULES*)v;
+    YR_EXTERNAL_VARIABLE *external = NULL;
+    int ret = ERROR_SUCCESS;
+
+    if (!scanner || !rules) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    for (external = rules->ext_vars_table; !EXTERNAL_VARIABLE_IS_NULL(external); ++external) {
+        switch (external->type) {
+            case EXTERNAL_VARIABLE_TYPE_INTEGER:
+                ret = yr_scanner_define_integer_variable((YR_SCANNER*)scanner, external->identifier,
+                                                         external->value.i);
+                break;
+            case EXTERNAL_VARIABLE_TYPE_FLOAT:
+                ret = yr_scanner_define_float_variable((YR_SCANNER*)scanner, external->identifier,
+                                                       external->value.f);
+                break;
+            case EXTERNAL_VARIABLE_TYPE_BOOLEAN:
+                ret = yr_scanner_define_boolean_variable((YR_SCANNER*)scanner, external->identifier,
+                                                         (int)external->value.i);
+                break;
+            case EXTERNAL_VARIABLE_TYPE_STRING:
+            case EXTERNAL_VARIABLE_TYPE_MALLOC_STRING:
+                ret = yr_scanner_define_string_variable((YR_SCANNER*)scanner, external->identifier,
+                                                        external->value.s);
+                break;
+        }
+
+        if (ret != ERROR_SUCCESS) {
+            return ret;
+        }
+    }
+
+    return ERROR_SUCCESS;
+}
+
+/*
+ *  Memory blocks
+ *
+ *  Direct buffers scanned as one logical target through a memory block iterator, each
+ *  block keeps its base offset. The buffers array holds the buffers reachable for the
+ *  whole scan, no copy of the contents is made.
+ */
+typedef struct {
+    YR_MEMORY_BLOCK *blocks;
+    size_t           count;
+    size_t           current;
+    uint64_t         size;
+} yara_block_iterator;
+
+static const uint8_t*
+yara_block_fetch(YR_MEMORY_BLOCK *block) {
+    return (const uint8_t*)block->context;
+}
+
+static YR_MEMORY_BLOCK*
+yara_block_first(YR_MEMORY_BLOCK_ITERATOR *iterator) {
+    yara_block_iterator *context = (yara_block_iterator*)iterator->context;
+
+    context->current = 0;
+    return context->count > 0 ? &context->blocks[0] : NULL;
+}
+
+static YR_MEMORY_BLOCK*
+yara_block_next(YR_MEMORY_BLOCK_ITERATOR *iterator) {
+    yara_block_iterator *context = (yara_block_iterator*)iterator->context;
+
+    if (context->current + 1 >= context->count) {
+        return NULL;
+    }
+
+    return &context->blocks[++context->current];
+}
+
+static uint64_t
+yara_block_file_size(YR_MEMORY_BLOCK_ITERATOR *iterator) {
+    return ((yara_block_iterator*)iterator->context)->size;
+}
+
+static int
+yara_scanner_scan_blocks(JNIEnv *env, void *scanner, jobject buffers, jlong *bases, jint *offsets,
+                         jint *lengths, jint count) {
+    YR_MEMORY_BLOCK_ITERATOR iterator;
+    yara_block_iterator context;
+    jint i = 0;
+    int ret = ERROR_SUCCESS;
+
+    if (!scanner || !buffers || !bases || !offsets || !lengths || count < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    memset(&context, 0, sizeof(context));
+    memset(&iterator, 0, sizeof(iterator));
+
+    if (count > 0 && 0 == (context.blocks = (YR_MEMORY_BLOCK*)calloc((size_t)count, sizeof(YR_MEMORY_BLOCK)))) {
+        return ERROR_INSUFFICIENT_MEMORY;
+    }
+
+    for (i = 0; i < count; ++i) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, (jobjectArray)buffers, i);
+        uint8_t *address = buffer ? (uint8_t*)(*env)->GetDirectBufferAddress(env, buffer) : 0;
+
+        if (buffer) {
+            (*env)->DeleteLocalRef(env, buffer);
+        }
+
+        if (!address || offsets[i] < 0 || lengths[i] < 0 || bases[i] < 0) {
+            free(context.blocks);
+            return ERROR_INVALID_ARGUMENT;
+        }
+
+        context.blocks[i].base = (uint64_t)bases[i];
+        context.blocks[i].size = (size_t)lengths[i];
+        context.blocks[i].context = address + offsets[i];
+        context.blocks[i].fetch_data = yara_block_fetch;
+
+        if (context.blocks[i].base + context.blocks[i].size > context.size) {
+            context.size = context.blocks[i].base + context.blocks[i].size;
+        }
+    }
+
+    context.count = (size_t)count;
+
+    iterator.context = &context;
+    iterator.first = yara_block_first;
+    iterator.next = yara_block_next;
+    iterator.file_size = yara_block_file_size;
+
+    ret = yr_scanner_scan_mem_blocks((YR_SCANNER*)scanner, &iterator);
+
+    free(context.blocks);
+    return ret;
+}
+
+/*
+ *  File descriptors
+ *
+ *  The descriptor is read from the channel's FileDescriptor, JNI field access is not
+ *  subject to module access checks. -1 is returned when the layout is not the expected
+ *  one and callers must fall back to mapping the channel from Java.
+ */
+static jint
+yara_channel_fd(JNIEnv *env, jobject channel) {
+    jclass   cls = 0;
+    jfieldID fid = 0;
+    jobject  fdo = 0;
+
+    if (!channel) {
+        return -1;
+    }
+
+    cls = (*env)->GetObjectClass(env, channel);
+    fid = (*env)->GetFieldID(env, cls, "fd", "Ljava/io/FileDescriptor;");
+    if (!fid) {
+        (*env)->ExceptionClear(env);
+        return -1;
+    }
+
+    if (0 == (fdo = (*env)->GetObjectField(env, channel, fid))) {
+        return -1;
+    }
+
+    cls = (*env)->GetObjectClass(env, fdo);
+    fid = (*env)->GetFieldID(env, cls, "fd", "I");
+    if (!fid) {
+        (*env)->ExceptionClear(env);
+        return -1;
+    }
+
+    return (*env)->GetIntField(env, fdo, fid);
+}
+
+/*
+ * Scan a window of an open file, mapped for the duration of the scan only
+ */
+static int
+yara_scanner_scan_fd_region(JNIEnv *env, void *scanner, jint fd, int64_t offset, int64_t length) {
+#if defined(_WIN32)
+    return ERROR_COULD_NOT_MAP_FILE;
+#else
+    static const uint8_t empty = 0;
+    long    page    = sysconf(_SC_PAGESIZE);
+    off_t   aligned = 0;
+    size_t  delta   = 0;
+    void   *base    = 0;
+    int     ret     = 0;
+
+    if (!scanner || fd < 0 || offset < 0 || length < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    if (length == 0) {
+        return yr_scanner_scan_mem((YR_SCANNER*)scanner, &empty, 0);
+    }
+
+    aligned = (off_t)(offset - (offset % page));
+    delta = (size_t)(offset - aligned);
+
+    base = mmap(NULL, (size_t)length + delta, PROT_READ, MAP_PRIVATE, fd, aligned);
+    if (base == MAP_FAILED) {
+        return ERROR_COULD_NOT_MAP_FILE;
+    }
+
+    ret = yr_scanner_scan_mem((YR_SCANNER*)scanner, (const uint8_t*)base + delta, (size_t)length);
+
+    munmap(base, (size_t)length + delta);
+    return ret;
+#endif
+}
+
+/*
+ *  Compiled rules streams
+ *
+ *  Rules are saved to and loaded from memory, the Java side does the actual I/O
+ *  so no upcall is needed while libyara serializes.
+ */
+typedef struct {
+    uint8_t *data;
+    size_t   length;
+    size_t   capacity;
+    size_t   offset;
+} yara_memory_stream;
+
+static size_t
+yara_memory_stream_read(void *ptr, size_t size, size_t count, void *user_data) {
+    yara_memory_stream *ms = (yara_memory_stream *)user_data;
+    size_t n = 0;
+
+    if (size == 0 || count == 0) {
+        return 0;
+    }
+
+    n = (ms->length - ms->offset) / size;
+    if (n > count) {
+        n = count;
+    }
+
+    memcpy(ptr, ms->data + ms->offset, n * size);
+    ms->offset += n * size;
+
+    return n;
+}
+
+static size_t
+yara_memory_stream_write(const void *ptr, size_t size, size_t count, void *user_data) {
+    yara_memory_stream *ms = (yara_memory_stream *)user_data;
+    size_t total = size * count;
+
+    if (total == 0) {
+        return count;
+    }
+
+    if (ms->length + total > ms->capacity) {
+        size_t capacity = ms->capacity ? ms->capacity : 65536;
+        uint8_t *data = 0;
+
+        while (capacity < ms->length + total) {
+            capacity *= 2;
+        }
+
+        if (0 == (data = realloc(ms->data, capacity))) {
+            return 0;
+        }
+
+        ms->data = data;
+        ms->capacity = capacity;
+    }
+
+    memcpy(ms->data + ms->length, ptr, total);
+    ms->length += total;
+
+    return count;
+}
+
+/* Object is used as workaround for a bug in hawtjni */
+static jobject
+yara_rules_save_stream(JNIEnv *env, void *rules, jint *error) {
+    yara_memory_stream ms;
+    YR_STREAM stream;
+    jbyteArray value = 0;
+    int ret = 0;
+
+    memset(&ms, 0, sizeof(ms));
+    stream.user_data = &ms;
+    stream.read = NULL;
+    stream.write = yara_memory_stream_write;
+
+    if (ERROR_SUCCESS == (ret = yr_rules_save_stream((YR_RULES*)rules, &stream))) {
+        value = (*env)->NewByteArray(env, (jsize)ms.length);
+
+        if (value != NULL) {
+            (*env)->SetByteArrayRegion(env, value, 0, (jsize)ms.length, (const jbyte*)ms.data);
+        }
+        else {
+            ret = ERROR_INSUFFICIENT_MEMORY;
+        }
+    }
+
+    free(ms.data);
+
+    if (error) {
+        *error = ret;
+    }
+
+    return value;
+}
+
+static int
+yara_rules_load_memory(const uint8_t *data, size_t length, YR_RULES **rules) {
+    yara_memory_stream ms;
+    YR_STREAM stream;
+
+    ms.data = (uint8_t *)data;
+    ms.length = length;
+    ms.capacity = length;
+    ms.offset = 0;
+
+    stream.user_data = &ms;
+    stream.read = yara_memory_stream_read;
+    stream.write = NULL;
+
+    return yr_rules_load_stream(&stream, rules);
+}
+
+static int
+yara_rules_load_stream(JNIEnv *env, jbyte *buffer, jint offset, jint length, void **rules) {
+    if (!buffer || !rules || offset < 0 || length < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    return yara_rules_load_memory((const uint8_t*)buffer + offset, (size_t)length, (YR_RULES**)rules);
+}
+
+static int
+yara_rules_load_direct(JNIEnv *env, jobject buffer, jint offset, jint length, void **rules) {
+    uint8_t *address = 0;
+
+    if (!buffer || !rules || offset < 0 || length < 0) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    if (0 == (address = (uint8_t*)(*env)->GetDirectBufferAddress(env, buffer))) {
+        return ERROR_INVALID_ARGUMENT;
+    }
+
+    return yara_rules_load_memory(address + offset, (size_t)length, (YR_RULES**)rules);
+}
+
 /*
  *  Module functions
  */
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScanOptionsTest {
+    @Test
+    public void testDefaults() {
+        ScanOptions options = ScanOptions.DEFAULT;
+
+        assertEquals(ScanOptions.DEFAULT_TIMEOUT, options.getTimeout());
+        assertEquals(0, options.getMaxRules());
+        assertFalse(options.isNegate());
+        assertFalse(options.isFastMode());
+        assertTrue(options.isNoTryCatch());
+        assertTrue(options.getModuleArgs().isEmpty());
+        assertNull(options.getCallback());
+    }
+
+    @Test
+    public void testBuilder() {
+        YaraScanCallback callback = rule -> {};
+
+        ScanOptions options = ScanOptions.builder()
+                .setTimeout(5)
+                .setMaxRules(2)
+                .setNegate(true)
+                .setFastMode(true)
+                .setNoTryCatch(false)
+                .setModuleArg("module", "value")
+                .setCallback(callback)
+                .build();
+
+        assertEquals(5, options.getTimeout());
+        assertEquals(2, options.getMaxRules());
+        assertTrue(options.isNegate());
+        assertTrue(options.isFastMode());
+        assertFalse(options.isNoTryCatch());
+        assertEquals(Collections.singletonMap("module", "value"), options.getModuleArgs());
+        assertSame(callback, options.getCallback());
+    }
+
+    @Test
+    public void testToBuilder() {
+        ScanOptions options = ScanOptions.builder()
+                .setTimeout(5)
+                .setNegate(true)
+                .setModuleArg("module", "value")
+                .build();
+
+        YaraScanCallback callback = rule -> {};
+        ScanOptions copy = options.toBuilder().setCallback(callback).build();
+
+        assertEquals(5, copy.getTimeout());
+        assertTrue(copy.isNegate());
+        assertEquals(options.getModuleArgs(), copy.getModuleArgs());
+        assertSame(callback, copy.getCallback());
+        assertNull(options.getCallback());
+    }
+
+    @Test
+    public void testImmutable() {
+        ScanOptions options = ScanOptions.builder().setModuleArg("module", "value").build();
+        assertThrows(UnsupportedOperationException.class, () -> options.getModuleArgs().put("other", "value"));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> ScanOptions.builder().setTimeout(-1));
+        assertThrows(IllegalArgumentException.class, () -> ScanOptions.builder().setMaxRules(-1));
+    }
+
+    @Test
+    public void testVariables() {
+        ScanOptions options = ScanOptions.builder()
+                .setVariable("size_class", 3)
+                .setVariable("ratio", 0.5)
+                .setVariable("trusted", true)
+                .setVariable("tenant", "acme")
+                .build();
+
+        assertEquals(Arrays.asList("size_class", "ratio", "trusted", "tenant"),
+                new ArrayList<>(options.getVariables().keySet()));
+        assertEquals(3L, options.getVariables().get("size_class"));
+        assertEquals(0.5, options.getVariables().get("ratio"));
+        assertEquals(true, options.getVariables().get("trusted"));
+        assertEquals("acme", options.getVariables().get("tenant"));
+
+        ScanOptions copy = options.toBuilder().setVariable("tenant", "other").build();
+        assertEquals("other", copy.getVariables().get("tenant"));
+        assertEquals("acme", options.getVariables().get("tenant"));
+
+        assertTrue(ScanOptions.DEFAULT.getVariables().isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> options.getVariables().put("other", 1L));
+    }
+
+    @Test
+    public void testVariablesInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> ScanOptions.builder().setVariable(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> ScanOptions.builder().setVariable("", true));
+        assertThrows(IllegalArgumentException.class, () -> ScanOptions.builder().setVariable("tenant", (String) null));
+    }
+}
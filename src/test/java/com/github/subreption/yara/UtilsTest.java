@@ -17,6 +17,8 @@
 
 package com.github.subreption.yara;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Test;
 
@@ -68,4 +70,21 @@ public class UtilsTest {
         String value = "123\\\n123";
         assertEquals("123\n123", Utils.unescape(value));
     }
+
+    @Test
+    public void testRuleDeclarations() {
+        String source = "import \"pe\"\n" +
+                "// rule Commented\n" +
+                "/* rule Block { } */\n" +
+                "global private rule First : tag1 tag2 {\n" +
+                "  meta: description = \"rule Quoted { }\"\n" +
+                "  strings: $a = /rule Regex \\{/ $b = { 4D 5A }\n" +
+                "  condition: $a and $b and filesize / 2 > 1 and pe.imphash() matches /}{/\n" +
+                "}\n" +
+                "rule Second{condition:true}rule Third\n" +
+                "{ condition: First }\n";
+
+        assertEquals(Arrays.asList("First", "Second", "Third"), Utils.ruleDeclarations(source));
+        assertEquals(null, Utils.ruleDeclarations("include \"other.yara\"\nrule First { condition: true }"));
+    }
 }
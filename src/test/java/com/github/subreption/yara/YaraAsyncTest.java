@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class YaraAsyncTest {
+    @Test
+    public void testSubmitInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> YaraAsync.submit(null, (cb, cancelled) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> YaraAsync.submit(Runnable::run, null));
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        YaraRule rule = mock(YaraRule.class);
+
+        CompletableFuture<ScanResult> future = YaraAsync.submit(YaraAsync.defaultExecutor(), (cb, cancelled) -> {
+            assertTrue(Thread.currentThread().isDaemon());
+            cb.onMatch(rule);
+        });
+
+        ScanResult result = future.get(10, TimeUnit.SECONDS);
+        assertTrue(result.isMatch());
+        assertEquals(1, result.getRules().size());
+        assertSame(rule, result.getRules().get(0));
+    }
+
+    @Test
+    public void testFailure() {
+        CompletableFuture<ScanResult> future = YaraAsync.submit(Runnable::run, (cb, cancelled) -> {
+            throw new YaraException("failure");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof YaraException);
+    }
+
+    @Test
+    public void testRejected() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        CompletableFuture<ScanResult> future = YaraAsync.submit(executor, (cb, cancelled) -> {});
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testCancelPending() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            CompletableFuture<ScanResult> future = YaraAsync.submit(executor, (cb, cancelled) -> ran.set(true));
+            assertTrue(future.cancel(true));
+            gate.countDown();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            assertFalse(ran.get());
+            assertThrows(CancellationException.class, future::get);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean aborted = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            CompletableFuture<ScanResult> future = YaraAsync.submit(executor, (cb, cancelled) -> {
+                started.countDown();
+                while (!cancelled.getAsBoolean()) {
+                    Thread.yield();
+                }
+                aborted.set(true);
+            });
+
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(future.cancel(true));
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(aborted.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
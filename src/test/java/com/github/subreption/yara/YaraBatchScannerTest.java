@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class YaraBatchScannerTest {
+    private Path directory;
+    private YaraRules rules;
+    private YaraScanner scanner;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("yara-batch");
+        rules = mock(YaraRules.class);
+        scanner = mock(YaraScanner.class);
+        when(rules.createScanner()).thenReturn(scanner);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testCreateInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraBatchScanner(null));
+        assertThrows(IllegalArgumentException.class, () -> new YaraBatchScanner(rules, 0));
+    }
+
+    @Test
+    public void testLargestFirst() throws Exception {
+        Path small = file("small", 10);
+        Path large = file("large", 1000);
+        Path medium = file("medium", 100);
+
+        List<Path> order = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            order.add(((File) invocation.getArgument(0)).toPath());
+            return null;
+        }).when(scanner).scan(any(File.class), any(ScanOptions.class));
+
+        try (YaraBatchScanner batch = new YaraBatchScanner(rules, 1)) {
+            batch.scanAll(Arrays.asList(small, large, medium), null, (path, rule) -> {});
+        }
+
+        assertEquals(Arrays.asList(large, medium, small), order);
+        verify(rules, times(1)).createScanner();
+        verify(scanner, times(1)).close();
+    }
+
+    @Test
+    public void testLargestFirstParallel() throws Exception {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 12; ++i) {
+            paths.add(file("file" + i, (i + 1) * 10));
+        }
+
+        // The first scans wait for each other, every worker holds one of them
+        CountDownLatch started = new CountDownLatch(3);
+        List<Path> order = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            order.add(((File) invocation.getArgument(0)).toPath());
+            started.countDown();
+            started.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(scanner).scan(any(File.class), any(ScanOptions.class));
+
+        try (YaraBatchScanner batch = new YaraBatchScanner(rules, 3)) {
+            batch.scanAll(paths, null, (path, rule) -> {});
+        }
+
+        assertEquals(12, order.size());
+        assertEquals(new HashSet<>(paths.subList(9, 12)), new HashSet<>(order.subList(0, 3)));
+    }
+
+    @Test
+    public void testResults() throws Exception {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 64; ++i) {
+            paths.add(file("file" + i, i));
+        }
+
+        YaraRule rule = mock(YaraRule.class);
+        doAnswer(invocation -> {
+            File file = invocation.getArgument(0);
+            ScanOptions options = invocation.getArgument(1);
+            assertEquals("value", options.getModuleArgs().get("module"));
+
+            if (file.getName().startsWith("file1")) {
+                ((ScanOptions) invocation.getArgument(1)).getCallback().onMatch(rule);
+            }
+            if (file.getName().startsWith("file2")) {
+                throw new YaraException("failure");
+            }
+            return null;
+        }).when(scanner).scan(any(File.class), any(ScanOptions.class));
+
+        Map<Path, YaraRule> matches = new ConcurrentHashMap<>();
+        Map<Path, Exception> errors = new ConcurrentHashMap<>();
+        Map<Path, Boolean> completed = new ConcurrentHashMap<>();
+
+        ScanOptions options = ScanOptions.builder().setModuleArg("module", "value").build();
+
+        try (YaraBatchScanner batch = new YaraBatchScanner(rules, 4)) {
+            batch.scanAll(paths, options, new YaraBatchSink() {
+                @Override
+                public void onMatch(Path path, YaraRule r) {
+                    matches.put(path, r);
+                }
+
+                @Override
+                public void onError(Path path, Exception e) {
+                    errors.put(path, e);
+                }
+
+                @Override
+                public void onComplete(Path path) {
+                    completed.put(path, true);
+                }
+            });
+        }
+
+        assertEquals(11, matches.size());
+        assertEquals(11, errors.size());
+        assertEquals(64 - 11, completed.size());
+        assertTrue(matches.keySet().stream().allMatch(p -> p.getFileName().toString().startsWith("file1")));
+    }
+
+    @Test
+    public void testScanAfterClose() {
+        YaraBatchScanner batch = new YaraBatchScanner(rules, 1);
+        batch.close();
+
+        assertThrows(IllegalStateException.class,
+                () -> batch.scanAll(Collections.emptyList(), null, (path, rule) -> {}));
+    }
+
+    private Path file(String name, int size) throws IOException {
+        return Files.write(directory.resolve(name), new byte[size]);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class YaraCompilationWarningTest {
+    @Test
+    public void testSlowString() {
+        YaraCompilationWarning warning = YaraCompilationWarning.parse("rules.yar", 3, "Zeros",
+                "string \"$a\" may slow down scanning");
+
+        assertEquals(YaraCompilationWarning.Type.SLOW_STRING, warning.getType());
+        assertEquals("rules.yar", warning.getFileName());
+        assertEquals(3, warning.getLineNumber());
+        assertEquals("Zeros", warning.getRuleIdentifier());
+        assertEquals("$a", warning.getStringIdentifier());
+    }
+
+    @Test
+    public void testRuleFromMessage() {
+        YaraCompilationWarning warning = YaraCompilationWarning.parse("", 1, null,
+                "$hex_1 in rule Packed is slowing down scanning");
+
+        assertEquals(YaraCompilationWarning.Type.SLOW_STRING, warning.getType());
+        assertEquals("Packed", warning.getRuleIdentifier());
+        assertEquals("$hex_1", warning.getStringIdentifier());
+    }
+
+    @Test
+    public void testDeprecated() {
+        YaraCompilationWarning warning = YaraCompilationWarning.parse("", 1, null,
+                "Using deprecated \"entrypoint\" keyword. Use the \"entry_point\" function from PE module instead.");
+
+        assertEquals(YaraCompilationWarning.Type.DEPRECATED, warning.getType());
+        assertNull(warning.getRuleIdentifier());
+        assertNull(warning.getStringIdentifier());
+    }
+
+    @Test
+    public void testOther() {
+        YaraCompilationWarning warning = YaraCompilationWarning.parse("", 1, null, null);
+
+        assertEquals(YaraCompilationWarning.Type.OTHER, warning.getType());
+        assertEquals("", warning.getMessage());
+    }
+}
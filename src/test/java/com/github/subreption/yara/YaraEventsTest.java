@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YaraEventsTest {
+    @Test
+    public void testNotRecording() {
+        assertTrue(YaraEvents.isAvailable());
+        assertNull(YaraEvents.scan(YaraEvents.ENGINE_EMBEDDED));
+        assertNull(YaraEvents.compile(YaraCompileEvent.GET_RULES, null));
+        assertNull(YaraEvents.process("yara"));
+    }
+
+    @Test
+    public void testEnabledPerType() {
+        try (Recording recording = new Recording()) {
+            recording.enable(YaraScanEvent.class);
+            recording.disable(YaraCompileEvent.class);
+            recording.disable(YaraProcessEvent.class);
+            recording.start();
+
+            assertNotNull(YaraEvents.scan(YaraEvents.ENGINE_EMBEDDED));
+            assertNull(YaraEvents.compile(YaraCompileEvent.GET_RULES, null));
+            assertNull(YaraEvents.process("yara"));
+
+            recording.stop();
+        }
+
+        assertNull(YaraEvents.scan(YaraEvents.ENGINE_EMBEDDED));
+    }
+
+    @Test
+    public void testScanEvent() throws IOException {
+        List<RecordedEvent> events = record(YaraScanEvent.class, () -> {
+            YaraScanEvent event = YaraEvents.scan(YaraEvents.ENGINE_EXTERNAL);
+            assertNotNull(event);
+
+            event.onMatch();
+            event.onMatch();
+            event.finish(100, true, ErrorCode.SCAN_TIMEOUT);
+        });
+
+        assertEquals(1, events.size());
+
+        RecordedEvent event = events.get(0);
+        assertEquals(YaraEvents.ENGINE_EXTERNAL, event.getString("engine"));
+        assertEquals(100, event.getLong("size"));
+        assertTrue(event.getBoolean("file"));
+        assertEquals(2, event.getInt("matches"));
+        assertTrue(event.getBoolean("timedOut"));
+        assertEquals(ErrorCode.SCAN_TIMEOUT.name(), event.getString("error"));
+    }
+
+    @Test
+    public void testCompileEvent() throws IOException {
+        List<RecordedEvent> events = record(YaraCompileEvent.class, () -> {
+            YaraEvents.compile(YaraCompileEvent.ADD_SOURCE, "ns").finish(42, 1, ErrorCode.SUCCESS);
+            YaraEvents.compile(YaraCompileEvent.GET_RULES, null).finish(-1, 1, null);
+        });
+
+        assertEquals(2, events.size());
+
+        assertEquals(YaraCompileEvent.ADD_SOURCE, events.get(0).getString("phase"));
+        assertEquals("ns", events.get(0).getString("namespace"));
+        assertEquals(42, events.get(0).getLong("size"));
+        assertNull(events.get(0).getString("error"));
+
+        assertEquals(YaraCompileEvent.GET_RULES, events.get(1).getString("phase"));
+        assertEquals(-1, events.get(1).getLong("size"));
+        assertEquals(1, events.get(1).getInt("sources"));
+    }
+
+    @Test
+    public void testProcessEvent() throws IOException {
+        List<RecordedEvent> events = record(YaraProcessEvent.class, () -> {
+            YaraProcessEvent event = YaraEvents.process("yara");
+            event.onSpawned();
+            event.onExited(null, false);
+            event.finish(ErrorCode.UNKNOWN);
+        });
+
+        assertEquals(1, events.size());
+
+        RecordedEvent event = events.get(0);
+        assertEquals("yara", event.getString("program"));
+        assertEquals(-1, event.getInt("exitCode"));
+        assertEquals(ErrorCode.UNKNOWN.name(), event.getString("error"));
+        assertFalse(event.getDuration("spawnTime").isNegative());
+        assertTrue(event.getDuration().compareTo(event.getDuration("parseTime")) >= 0);
+    }
+
+    private static List<RecordedEvent> record(Class<? extends jdk.jfr.Event> type, Runnable emit)
+            throws IOException {
+        Path file = Files.createTempFile("yara", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(type);
+            recording.start();
+            emit.run();
+            recording.stop();
+            recording.dump(file);
+
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals(type.getAnnotation(jdk.jfr.Name.class).value()))
+                    .collect(Collectors.toList());
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
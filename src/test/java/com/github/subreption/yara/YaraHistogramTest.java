@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YaraHistogramTest {
+    @Test
+    public void testEmpty() {
+        YaraHistogram.Snapshot snapshot = new YaraHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testBuckets() {
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789L, Long.MAX_VALUE };
+
+        for (long value : values) {
+            int index = YaraHistogram.index(value);
+            assertTrue(YaraHistogram.lowest(index) <= value, Long.toString(value));
+            assertTrue(YaraHistogram.highest(index) >= value, Long.toString(value));
+
+            // Relative error bound
+            assertTrue(YaraHistogram.highest(index) - YaraHistogram.lowest(index) <= value / YaraHistogram.SUB_BUCKETS);
+        }
+
+        // Buckets are contiguous
+        for (int i = 1; i < YaraHistogram.index(Long.MAX_VALUE); ++i) {
+            assertEquals(YaraHistogram.highest(i - 1) + 1, YaraHistogram.lowest(i));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        YaraHistogram histogram = new YaraHistogram();
+        for (long i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000);
+        }
+
+        YaraHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500, snapshot.getMean(), 0.001);
+
+        assertWithin(500000, snapshot.getValueAtPercentile(50));
+        assertWithin(990000, snapshot.getValueAtPercentile(99));
+        assertEquals(1000000, snapshot.getValueAtPercentile(100));
+        assertWithin(1000, snapshot.getValueAtPercentile(0));
+
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAtPercentile(101));
+    }
+
+    @Test
+    public void testNegative() {
+        YaraHistogram histogram = new YaraHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        YaraHistogram histogram = new YaraHistogram();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        YaraHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.getCount());
+        assertEquals(4L * (9999 * 10000 / 2), snapshot.getTotal());
+        assertEquals(9999, snapshot.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / YaraHistogram.SUB_BUCKETS,
+                String.format("%d not within %d", actual, expected));
+    }
+}
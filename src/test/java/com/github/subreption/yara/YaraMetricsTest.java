@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YaraMetricsTest {
+    @Test
+    public void testStartDisabled() {
+        assertNull(YaraMetrics.start(null));
+    }
+
+    @Test
+    public void testSample() {
+        YaraMetrics metrics = new YaraMetrics();
+
+        YaraMetrics.Sample sample = metrics.start();
+        sample.onCallback();
+        sample.onCallback();
+        sample.onNativeCalls(3);
+        sample.onMatch("Hello");
+        sample.finish(100, true, null);
+
+        // Only the first completion counts
+        sample.finish(100, true, ErrorCode.SCAN_TIMEOUT);
+
+        sample = metrics.start();
+        sample.onMatch("Hello");
+        sample.onMatch("World");
+        sample.finish(-1, false, ErrorCode.SCAN_TIMEOUT);
+
+        metrics.start().finish(50, false, ErrorCode.SUCCESS);
+
+        YaraMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getScans());
+        assertEquals(1, snapshot.getFiles());
+        assertEquals(150, snapshot.getBytes());
+        assertEquals(2, snapshot.getCallbacks());
+        assertEquals(3, snapshot.getNativeCalls());
+        assertEquals(1.0, snapshot.getNativeCallsPerScan(), 0.001);
+        assertEquals(1, snapshot.getTimeouts());
+        assertEquals(1, snapshot.getErrors().size());
+        assertEquals(0, snapshot.getErrors(ErrorCode.CALLBACK_ERROR));
+        assertEquals(2L, snapshot.getMatches().get("Hello"));
+        assertEquals(1L, snapshot.getMatches().get("World"));
+        assertEquals(3, snapshot.getLatency().getCount());
+        assertTrue(snapshot.getLatency().getMax() >= 0);
+    }
+
+    @Test
+    public void testErrorCode() {
+        assertEquals(ErrorCode.SCAN_TIMEOUT, YaraMetrics.errorCode(new YaraException(ErrorCode.SCAN_TIMEOUT.getValue())));
+        assertEquals(ErrorCode.UNKNOWN, YaraMetrics.errorCode(new IllegalStateException()));
+    }
+
+    @Test
+    public void testReset() {
+        YaraMetrics metrics = new YaraMetrics();
+
+        YaraMetrics.Sample sample = metrics.start();
+        sample.onMatch("Hello");
+        sample.finish(10, true, ErrorCode.SCAN_TIMEOUT);
+
+        metrics.reset();
+
+        YaraMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(0, snapshot.getScans());
+        assertEquals(0, snapshot.getBytes());
+        assertEquals(0, snapshot.getTimeouts());
+        assertTrue(snapshot.getMatches().isEmpty());
+        assertEquals(0, snapshot.getLatency().getCount());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YaraRuleSelectorTest {
+    @Test
+    public void testEmpty() {
+        YaraRuleSelector selector = YaraRuleSelector.builder().build();
+        assertTrue(selector.matches(null, "Rule", Collections.emptyIterator()));
+    }
+
+    @Test
+    public void testTags() {
+        YaraRuleSelector selector = YaraRuleSelector.builder().addTag("ransomware").addTag("worm").build();
+
+        assertTrue(selector.matches(null, "Rule", Arrays.asList("misc", "worm").iterator()));
+        assertFalse(selector.matches(null, "Rule", Collections.singletonList("misc").iterator()));
+        assertFalse(selector.matches(null, "Rule", Collections.emptyIterator()));
+    }
+
+    @Test
+    public void testNamespaces() {
+        YaraRuleSelector selector = YaraRuleSelector.builder().addNamespace("tenant").build();
+
+        assertTrue(selector.matches("tenant", "Rule", Collections.emptyIterator()));
+        assertFalse(selector.matches("other", "Rule", Collections.emptyIterator()));
+        assertFalse(selector.matches(null, "Rule", Collections.emptyIterator()));
+
+        selector = YaraRuleSelector.builder().addNamespace(YaraRuleSelector.DEFAULT_NAMESPACE).build();
+        assertTrue(selector.matches(null, "Rule", Collections.emptyIterator()));
+    }
+
+    @Test
+    public void testCombined() {
+        YaraRuleSelector selector = YaraRuleSelector.builder()
+                .addTag("ransomware")
+                .addIdentifier("Rule")
+                .build();
+
+        assertTrue(selector.matches(null, "Rule", Collections.singletonList("ransomware").iterator()));
+        assertFalse(selector.matches(null, "Other", Collections.singletonList("ransomware").iterator()));
+        assertFalse(selector.matches(null, "Rule", Collections.singletonList("misc").iterator()));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> YaraRuleSelector.builder().addTag(null));
+        assertThrows(IllegalArgumentException.class, () -> YaraRuleSelector.builder().addNamespace(""));
+        assertThrows(IllegalArgumentException.class, () -> YaraRuleSelector.builder().addIdentifier(null));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class YaraRulesCacheTest {
+    private Path directory;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("yara-cache");
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testCreateInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraRulesCache(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> new YaraRulesCache(directory, 0));
+    }
+
+    @Test
+    public void testKeyStable() {
+        String first = new YaraRulesCache.Key().add("ns", "rule a {}".getBytes()).build("4.5.2");
+        String second = new YaraRulesCache.Key().add("ns", "rule a {}".getBytes()).build("4.5.2");
+
+        assertEquals(first, second);
+        assertEquals(64, first.length());
+    }
+
+    @Test
+    public void testKeyDiffers() {
+        String base = new YaraRulesCache.Key().add("ns", "rule a {}".getBytes()).build("4.5.2");
+
+        assertNotEquals(base, new YaraRulesCache.Key().add("ns", "rule b {}".getBytes()).build("4.5.2"));
+        assertNotEquals(base, new YaraRulesCache.Key().add("other", "rule a {}".getBytes()).build("4.5.2"));
+        assertNotEquals(base, new YaraRulesCache.Key().add("ns", "rule a {}".getBytes()).build("4.5.3"));
+        assertNotEquals(
+                new YaraRulesCache.Key().add("ab", "c".getBytes()).build(null),
+                new YaraRulesCache.Key().add("a", "bc".getBytes()).build(null));
+    }
+
+    @Test
+    public void testKeyOrdered() {
+        String first = new YaraRulesCache.Key()
+                .add(null, "rule a {}".getBytes())
+                .add(null, "rule b {}".getBytes())
+                .build(null);
+        String second = new YaraRulesCache.Key()
+                .add(null, "rule b {}".getBytes())
+                .add(null, "rule a {}".getBytes())
+                .build(null);
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void testKeyVariables() {
+        String base = new YaraRulesCache.Key().add("ns", "rule a {}".getBytes()).build(null);
+        String defined = new YaraRulesCache.Key().define("x", 1L).add("ns", "rule a {}".getBytes()).build(null);
+
+        assertNotEquals(base, defined);
+        assertEquals(defined, new YaraRulesCache.Key().define("x", 1L).add("ns", "rule a {}".getBytes()).build(null));
+        assertNotEquals(defined, new YaraRulesCache.Key().define("x", 2L).add("ns", "rule a {}".getBytes()).build(null));
+        assertNotEquals(defined, new YaraRulesCache.Key().define("x", "1").add("ns", "rule a {}".getBytes()).build(null));
+        assertNotEquals(
+                new YaraRulesCache.Key().define("ns", "rule a {}").build(null),
+                new YaraRulesCache.Key().add("ns", "rule a {}".getBytes()).build(null));
+
+        assertThrows(IllegalArgumentException.class, () -> new YaraRulesCache.Key().define(null, 1L));
+        assertThrows(IllegalArgumentException.class, () -> new YaraRulesCache.Key().define("x", null));
+    }
+
+    @Test
+    public void testKeyIncludes() {
+        assertTrue(new YaraRulesCache.Key().add("ns", "rule a { condition: true }".getBytes()).isCacheable());
+        assertTrue(new YaraRulesCache.Key()
+                .add("ns", "// include \"x.yar\"\nrule a { meta: s = \"include\" condition: true }".getBytes())
+                .isCacheable());
+
+        YaraRulesCache.Key key = new YaraRulesCache.Key()
+                .add("ns", "include \"x.yar\"".getBytes())
+                .add("ns", "rule a { condition: true }".getBytes());
+        assertFalse(key.isCacheable());
+    }
+
+    @Test
+    public void testMiss() {
+        YaraRulesCache cache = new YaraRulesCache(directory, 1024);
+        assertNull(cache.get("missing"));
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+        YaraRulesCache cache = new YaraRulesCache(directory, 1024);
+
+        Path entry = cache.put("key", path -> Files.write(path, new byte[] { 1, 2, 3 }));
+
+        assertNotNull(entry);
+        assertEquals(entry, cache.get("key"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(cache.get("key")));
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void testPutFailure() throws IOException {
+        YaraRulesCache cache = new YaraRulesCache(directory, 1024);
+
+        assertThrows(IOException.class, () -> cache.put("key", path -> { throw new IOException(); }));
+        assertNull(cache.get("key"));
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            assertEquals(0, paths.count());
+        }
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        YaraRulesCache cache = new YaraRulesCache(directory, 250);
+
+        Path first = cache.put("first", path -> Files.write(path, new byte[100]));
+        Path second = cache.put("second", path -> Files.write(path, new byte[100]));
+
+        Files.setLastModifiedTime(first, FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(second, FileTime.fromMillis(2000));
+
+        // A hit makes first the most recently used entry
+        assertNotNull(cache.get("first"));
+
+        cache.put("third", path -> Files.write(path, new byte[100]));
+
+        assertTrue(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void testKeepOversizedEntry() throws IOException {
+        YaraRulesCache cache = new YaraRulesCache(directory, 10);
+
+        cache.put("first", path -> Files.write(path, new byte[5]));
+        Path large = cache.put("large", path -> Files.write(path, new byte[100]));
+
+        assertTrue(Files.exists(large));
+        assertNull(cache.get("first"));
+        assertEquals(1, count());
+    }
+
+    private long count() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(p -> p.toString().endsWith(YaraRulesCache.SUFFIX)).count();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class YaraStreamScannerTest {
+    private static final byte[] NEEDLE = "needle".getBytes(StandardCharsets.US_ASCII);
+
+    private YaraScanner scanner;
+    private List<Integer> windowSizes;
+
+    @BeforeEach
+    public void setup() {
+        windowSizes = new ArrayList<>();
+        scanner = mock(YaraScanner.class);
+
+        // Reports a Needle rule with every occurrence of the needle in the region
+        doAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            YaraScanCallback callback = ((ScanOptions) invocation.getArgument(3)).getCallback();
+
+            byte[] region = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(offset);
+            source.get(region);
+            windowSizes.add(length);
+
+            List<Long> offsets = new ArrayList<>();
+            for (int i = 0; i + NEEDLE.length <= length; ++i) {
+                if (Arrays.equals(NEEDLE, Arrays.copyOfRange(region, i, i + NEEDLE.length))) {
+                    offsets.add((long) i);
+                }
+            }
+
+            if (!offsets.isEmpty()) {
+                callback.onMatch(rule(offsets));
+            }
+            return null;
+        }).when(scanner).scan(any(ByteBuffer.class), anyInt(), anyInt(), any(ScanOptions.class));
+        doCallRealMethod().when(scanner).scan(any(InputStream.class), any());
+        doCallRealMethod().when(scanner).scan((InputStream) null, null);
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> scanner.scan((InputStream) null, null));
+        assertThrows(IllegalArgumentException.class, () -> StreamScanOptions.builder().setChunkSize(0));
+        assertThrows(IllegalArgumentException.class, () -> StreamScanOptions.builder().setOverlap(-1));
+    }
+
+    @Test
+    public void testSingleWindow() {
+        StreamScanResult result = scanner.scan(stream(100, 3, 50), null);
+
+        assertFalse(result.isWindowed());
+        assertEquals(1, result.getWindows());
+        assertEquals(100, result.getLength());
+        assertEquals(Arrays.asList(3L, 50L), offsets(result));
+    }
+
+    @Test
+    public void testEmpty() {
+        StreamScanResult result = scanner.scan(new ByteArrayInputStream(new byte[0]), null);
+
+        assertEquals(1, result.getWindows());
+        assertEquals(0, result.getLength());
+        assertFalse(result.isMatch());
+    }
+
+    @Test
+    public void testWindows() {
+        // Needles inside windows, across window boundaries and at the very end
+        StreamScanOptions options = StreamScanOptions.builder().setChunkSize(16).setOverlap(NEEDLE.length).build();
+        StreamScanResult result = scanner.scan(stream(100, 0, 14, 20, 30, 45, 94), options);
+
+        assertTrue(result.isWindowed());
+        assertEquals(100, result.getLength());
+        assertEquals(NEEDLE.length, result.getOverlap());
+        assertEquals(Arrays.asList(0L, 14L, 20L, 30L, 45L, 94L), offsets(result));
+        assertEquals(1, result.getRules().size());
+
+        // Bounded windows
+        assertTrue(windowSizes.stream().allMatch(size -> size <= 16 + NEEDLE.length));
+        assertEquals(result.getWindows(), windowSizes.size());
+    }
+
+    @Test
+    public void testDefaultOverlap() {
+        StreamScanOptions options = StreamScanOptions.builder().setChunkSize(16).build();
+
+        StreamScanResult result = YaraStreamScanner.scan(scanner, stream(40, 14), options, 10);
+        assertEquals(10, result.getOverlap());
+        assertEquals(Collections.singletonList(14L), offsets(result));
+
+        result = YaraStreamScanner.scan(scanner, stream(40, 14), options, -1);
+        assertEquals(YaraStreamScanner.DEFAULT_OVERLAP, result.getOverlap());
+        assertFalse(result.isWindowed());
+    }
+
+    @Test
+    public void testMatchData() {
+        StreamScanOptions options = StreamScanOptions.builder().setChunkSize(8).setOverlap(NEEDLE.length).build();
+        StreamScanResult result = scanner.scan(stream(30, 20), options);
+
+        YaraMatch match = result.getRules().get(0).getStrings().next().getMatches().next();
+        assertEquals(20, match.getOffset());
+        assertArrayEquals(NEEDLE, match.getBytes());
+    }
+
+    private static ByteArrayInputStream stream(int length, int... needles) {
+        byte[] data = new byte[length];
+        for (int offset : needles) {
+            System.arraycopy(NEEDLE, 0, data, offset, NEEDLE.length);
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    private static List<Long> offsets(StreamScanResult result) {
+        List<Long> offsets = new ArrayList<>();
+        for (YaraRule rule : result.getRules()) {
+            for (Iterator<YaraString> strings = rule.getStrings(); strings.hasNext(); ) {
+                strings.next().getMatches().forEachRemaining(m -> offsets.add(m.getOffset()));
+            }
+        }
+        return offsets;
+    }
+
+    private static YaraRule rule(List<Long> offsets) {
+        List<YaraMatch> matches = new ArrayList<>();
+        for (long offset : offsets) {
+            YaraMatch match = mock(YaraMatch.class);
+            when(match.getOffset()).thenReturn(offset);
+            when(match.getBytes()).thenReturn(NEEDLE.clone());
+            matches.add(match);
+        }
+
+        YaraString string = mock(YaraString.class);
+        when(string.getIdentifier()).thenReturn("$a");
+        when(string.getMatches()).thenAnswer(invocation -> matches.iterator());
+
+        YaraRule rule = mock(YaraRule.class);
+        when(rule.getIdentifier()).thenReturn("Needle");
+        when(rule.getTags()).thenAnswer(invocation -> Collections.emptyIterator());
+        when(rule.getMetadata()).thenAnswer(invocation -> Collections.emptyIterator());
+        when(rule.getStrings()).thenAnswer(invocation -> Collections.singletonList(string).iterator());
+        return rule;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.subreption.yara;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+
+public class YaraTreeScannerTest {
+    private Path root;
+    private YaraScanner scanner;
+    private Set<Path> scanned;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("yara-tree");
+
+        Files.createDirectories(root.resolve("a/b/c"));
+        Files.write(root.resolve("top.exe"), new byte[10]);
+        Files.write(root.resolve("a/one.dll"), new byte[100]);
+        Files.write(root.resolve("a/b/two.EXE"), new byte[1000]);
+        Files.write(root.resolve("a/b/c/three.txt"), new byte[1]);
+
+        scanned = ConcurrentHashMap.newKeySet();
+        scanner = mock(YaraScanner.class);
+        doAnswer(invocation -> {
+            File file = invocation.getArgument(0);
+            scanned.add(file.toPath());
+            ((ScanOptions) invocation.getArgument(1)).getCallback().onMatch(mock(YaraRule.class));
+            return null;
+        }).when(scanner).scan(any(File.class), any(ScanOptions.class));
+        doCallRealMethod().when(scanner).scanTree(any(), any(), any());
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> scanner.scanTree(root.resolve("top.exe"), null, (p, r) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> scanner.scanTree(root, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> TreeScanOptions.builder().setMinSize(10).setMaxSize(1).build());
+    }
+
+    @Test
+    public void testPool() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            TreeScanOptions options = TreeScanOptions.builder().setPool(pool).build();
+
+            for (int i = 0; i < 4; ++i) {
+                scanner.scanTree(root, options, (path, rule) -> threads.add(Thread.currentThread()));
+            }
+
+            assertEquals(4, relative(scanned).size());
+            assertTrue(threads.size() <= 2);
+            assertTrue(threads.stream().allMatch(t -> t instanceof ForkJoinWorkerThread
+                    && ((ForkJoinWorkerThread) t).getPool() == pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAll() {
+        Set<Path> matched = ConcurrentHashMap.newKeySet();
+        scanner.scanTree(root, null, (path, rule) -> matched.add(path));
+
+        assertEquals(names("top.exe", "a/one.dll", "a/b/two.EXE", "a/b/c/three.txt"), relative(scanned));
+        assertEquals(scanned, matched);
+    }
+
+    @Test
+    public void testExtensionFilter() {
+        TreeScanOptions options = TreeScanOptions.builder().addExtension(".exe").addExtension("dll").build();
+        scanner.scanTree(root, options, (path, rule) -> {});
+
+        assertEquals(names("top.exe", "a/one.dll", "a/b/two.EXE"), relative(scanned));
+    }
+
+    @Test
+    public void testSizeFilter() {
+        TreeScanOptions options = TreeScanOptions.builder().setMinSize(10).setMaxSize(100).build();
+        scanner.scanTree(root, options, (path, rule) -> {});
+
+        assertEquals(names("top.exe", "a/one.dll"), relative(scanned));
+    }
+
+    @Test
+    public void testGlobFilter() {
+        TreeScanOptions options = TreeScanOptions.builder().setGlob("a/**").setParallelism(2).build();
+        scanner.scanTree(root, options, (path, rule) -> {});
+
+        assertEquals(names("a/one.dll", "a/b/two.EXE", "a/b/c/three.txt"), relative(scanned));
+    }
+
+    @Test
+    public void testSymlinks() throws IOException {
+        // Loops back to the root
+        Files.createSymbolicLink(root.resolve("a/b/c/loop"), root);
+        Files.createSymbolicLink(root.resolve("link.dll"), root.resolve("a/one.dll"));
+
+        scanner.scanTree(root, null, (path, rule) -> {});
+        assertEquals(names("top.exe", "a/one.dll", "a/b/two.EXE", "a/b/c/three.txt"), relative(scanned));
+
+        scanned.clear();
+        TreeScanOptions options = TreeScanOptions.builder().setSymlinks(TreeScanOptions.Symlinks.FOLLOW).build();
+        scanner.scanTree(root, options, (path, rule) -> {});
+        assertEquals(names("top.exe", "a/one.dll", "a/b/two.EXE", "a/b/c/three.txt", "link.dll"), relative(scanned));
+    }
+
+    @Test
+    public void testScanError() {
+        doAnswer(invocation -> {
+            throw new YaraException("failure");
+        }).when(scanner).scan(any(File.class), any(ScanOptions.class));
+
+        Set<Path> errors = ConcurrentHashMap.newKeySet();
+        Set<Path> completed = ConcurrentHashMap.newKeySet();
+
+        scanner.scanTree(root, null, new YaraBatchSink() {
+            @Override
+            public void onMatch(Path path, YaraRule rule) {
+            }
+
+            @Override
+            public void onError(Path path, Exception e) {
+                errors.add(path);
+            }
+
+            @Override
+            public void onComplete(Path path) {
+                completed.add(path);
+            }
+        });
+
+        assertEquals(4, errors.size());
+        assertEquals(0, completed.size());
+    }
+
+    @Test
+    public void testTimeout() {
+        doAnswer(invocation -> {
+            Thread.sleep(1500);
+            scanned.add(((File) invocation.getArgument(0)).toPath());
+            return null;
+        }).when(scanner).scan(any(File.class), any(ScanOptions.class));
+
+        TreeScanOptions options = TreeScanOptions.builder().setParallelism(1).setTimeout(1).build();
+
+        YaraException e = assertThrows(YaraException.class, () -> scanner.scanTree(root, options, (path, rule) -> {}));
+        assertEquals(ErrorCode.SCAN_TIMEOUT, e.getCode());
+        assertTrue(scanned.size() < 4);
+
+        assertThrows(IllegalArgumentException.class, () -> TreeScanOptions.builder().setTimeout(-1));
+    }
+
+    private Set<String> names(String... names) {
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+    private Set<String> relative(Set<Path> paths) {
+        return paths.stream()
+                .map(p -> root.relativize(p).toString())
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class YaraCallbackRegistryTest {
+    @Test
+    public void testRegisterNull() {
+        assertThrows(IllegalArgumentException.class, () -> YaraCallbackRegistry.register(null));
+    }
+
+    @Test
+    public void testDispatch() {
+        final AtomicLong first = new AtomicLong();
+        final AtomicLong second = new AtomicLong();
+
+        long firstId = YaraCallbackRegistry.register((context, type, message) -> {
+            first.set(message);
+            return 0;
+        });
+        long secondId = YaraCallbackRegistry.register((context, type, message) -> {
+            second.set(message);
+            return 0;
+        });
+
+        try {
+            assertNotEquals(firstId, secondId);
+
+            assertEquals(0, YaraCallbackRegistry.nativeOnScan(1, 1, 10, firstId));
+            assertEquals(0, YaraCallbackRegistry.nativeOnScan(1, 1, 20, secondId));
+
+            assertEquals(10, first.get());
+            assertEquals(20, second.get());
+        }
+        finally {
+            YaraCallbackRegistry.unregister(firstId);
+            YaraCallbackRegistry.unregister(secondId);
+        }
+    }
+
+    @Test
+    public void testDispatchUnregistered() {
+        long id = YaraCallbackRegistry.register((context, type, message) -> 0);
+        YaraCallbackRegistry.unregister(id);
+
+        // CALLBACK_ABORT
+        assertEquals(1, YaraCallbackRegistry.nativeOnScan(1, 1, 1, id));
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        final int threads = 8;
+        final int iterations = 1000;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < iterations; ++j) {
+                    final long expected = j;
+                    long id = YaraCallbackRegistry.register((context, type, message) -> expected);
+                    try {
+                        assertEquals(expected, YaraCallbackRegistry.nativeOnScan(0, 0, 0, id));
+                    }
+                    finally {
+                        YaraCallbackRegistry.unregister(id);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, YaraCallbackRegistry.size());
+    }
+}
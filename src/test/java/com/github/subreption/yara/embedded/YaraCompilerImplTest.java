@@ -17,17 +17,29 @@
 
 package com.github.subreption.yara.embedded;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.BeforeEach;
@@ -38,8 +50,10 @@ import org.slf4j.LoggerFactory;
 
 import com.github.subreption.yara.TestUtils;
 import com.github.subreption.yara.YaraCompilationCallback;
+import com.github.subreption.yara.YaraCompileEvent;
 import com.github.subreption.yara.YaraCompiler;
 import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraRulesCache;
 import com.github.subreption.yara.YaraScanner;
 
 import net.jcip.annotations.NotThreadSafe;
@@ -319,4 +333,159 @@ public class YaraCompilerImplTest {
             }
         }
     }
+
+    @Test
+    public void testSaveLoadRules() throws Exception {
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        Path compiled = Files.createTempFile(UUID.randomUUID().toString(), ".yaracc");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(callback);
+            compiler.addRulesContent(YARA_RULE_HELLO, null);
+
+            compiler.save(compiled);
+            compiler.save(output);
+        }
+
+        try {
+            assertTrue(Files.size(compiled) > 0);
+            assertEquals(Files.size(compiled), output.size());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(output.size());
+            direct.put(output.toByteArray());
+            direct.flip();
+
+            assertLoadedRulesMatch(yara.loadRules(compiled));
+            assertLoadedRulesMatch(yara.loadRules(new ByteArrayInputStream(output.toByteArray())));
+            assertLoadedRulesMatch(yara.loadRules(ByteBuffer.wrap(output.toByteArray())));
+            assertLoadedRulesMatch(yara.loadRules(direct));
+        }
+        finally {
+            Files.deleteIfExists(compiled);
+        }
+    }
+
+    @Test
+    public void testLoadInvalidRules() throws Exception {
+        assertThrows(YaraException.class,
+                () -> yara.loadRules(ByteBuffer.wrap("not compiled rules".getBytes())).scan("Hello world".getBytes()));
+    }
+
+    @Test
+    public void testCachedRules() throws Exception {
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        Path directory = Files.createTempDirectory("yara-cache");
+        YaraRulesCache cache = new YaraRulesCache(directory, 1024 * 1024);
+
+        try {
+            for (int i = 0; i < 2; ++i) {
+                try (YaraCompiler compiler = yara.createCompiler()) {
+                    compiler.setCallback(callback);
+                    compiler.setCache(cache);
+                    compiler.addRulesContent(YARA_RULE_HELLO, null);
+
+                    assertLoadedRulesMatch(compiler.createScanner());
+                }
+
+                try (Stream<Path> entries = Files.list(directory)) {
+                    assertEquals(1, entries.count());
+                }
+            }
+        }
+        finally {
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.forEach(p -> p.toFile().delete());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testCacheAfterRules() throws Exception {
+        Path directory = Files.createTempDirectory("yara-cache");
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.addRulesContent(YARA_RULE_HELLO, null);
+            assertThrows(IllegalStateException.class,
+                    () -> compiler.setCache(new YaraRulesCache(directory, 1024)));
+        }
+        finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testCachedRulesError() throws Exception {
+        final AtomicBoolean called = new AtomicBoolean();
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> called.set(true);
+
+        Path directory = Files.createTempDirectory("yara-cache");
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(callback);
+            compiler.setCache(new YaraRulesCache(directory, 1024));
+            compiler.addRulesContent(YARA_RULE_FAIL, null);
+
+            assertThrows(YaraException.class, compiler::createScanner);
+            assertTrue(called.get());
+        }
+        finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testCachedRulesSourceCount() throws Exception {
+        Path directory = Files.createTempDirectory("yara-cache");
+        Path file = Files.createTempFile("yara", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(YaraCompileEvent.class);
+            recording.start();
+
+            // Cache miss, the deferred source is compiled once
+            try (YaraCompiler compiler = yara.createCompiler()) {
+                compiler.setCache(new YaraRulesCache(directory, 1024 * 1024));
+                compiler.addRulesContent(YARA_RULE_HELLO, null);
+                compiler.createRules().close();
+            }
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> rules = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals("com.github.subreption.yara.Compile"))
+                    .filter(e -> YaraCompileEvent.GET_RULES.equals(e.getString("phase")))
+                    .collect(Collectors.toList());
+            assertEquals(1, rules.size());
+            assertEquals(1, rules.get(0).getInt("sources"));
+        }
+        finally {
+            Files.deleteIfExists(file);
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.forEach(p -> p.toFile().delete());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private void assertLoadedRulesMatch(YaraScanner scanner) throws Exception {
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try {
+            scanner.setCallback(v -> {
+                assertEquals("HelloWorld", v.getIdentifier());
+                match.set(true);
+            });
+            scanner.scan("Hello world".getBytes());
+        }
+        finally {
+            scanner.close();
+        }
+
+        assertTrue(match.get());
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.github.subreption.yara.YaraException;
+
+public class YaraProfilerTest {
+    private YaraLibrary library;
+    private YaraRuleCatalog catalog;
+
+    @BeforeEach
+    public void setup() {
+        library = mock(YaraLibrary.class);
+
+        List<YaraRuleImpl> rules = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            rules.add(new YaraRuleImpl(i, "rule" + i, "default", Collections.emptyList(),
+                    Collections.emptyList(), Collections.emptyList()));
+        }
+        catalog = new YaraRuleCatalog(rules);
+
+        // Rule i costs (i * 10) match time and (i) exec time per scan, rule 0 costs nothing
+        doAnswer(invocation -> {
+            long[] atomMatches = invocation.getArgument(1);
+            long[] matchTime = invocation.getArgument(2);
+            long[] execTime = invocation.getArgument(3);
+            for (int i = 0; atomMatches != null && i < atomMatches.length; ++i) {
+                atomMatches[i] += i;
+                matchTime[i] += i * 10;
+                execTime[i] += i;
+            }
+            return 0;
+        }).when(library).scannerProfile(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    public void testCreateInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraProfiler(null, catalog));
+        assertThrows(IllegalArgumentException.class, () -> new YaraProfiler(library, null));
+    }
+
+    @Test
+    public void testReport() {
+        YaraProfiler profiler = new YaraProfiler(library, catalog);
+
+        for (int i = 0; i < 2; ++i) {
+            profiler.begin(1);
+            profiler.end(1);
+        }
+
+        verify(library, times(2)).scannerProfile(eq(1L), isNull(), isNull(), isNull());
+
+        List<YaraRuleProfile> report = profiler.report();
+        assertEquals(2, profiler.getScans());
+        assertEquals(2, report.size());
+
+        assertEquals("rule2", report.get(0).getIdentifier());
+        assertEquals(40, report.get(0).getMatchTime());
+        assertEquals(4, report.get(0).getExecTime());
+        assertEquals(4, report.get(0).getAtomMatches());
+        assertEquals(44, report.get(0).getCost());
+
+        assertEquals("rule1", report.get(1).getIdentifier());
+        assertEquals(22, report.get(1).getCost());
+
+        assertEquals(1, profiler.report(1).size());
+        assertThrows(IllegalArgumentException.class, () -> profiler.report(0));
+    }
+
+    @Test
+    public void testPerThread() throws Exception {
+        YaraProfiler profiler = new YaraProfiler(library, catalog);
+
+        profiler.end(1);
+
+        Thread thread = new Thread(() -> profiler.end(2));
+        thread.start();
+        thread.join();
+
+        assertEquals(2, profiler.getScans());
+        assertEquals(44, profiler.report().get(0).getCost());
+    }
+
+    @Test
+    public void testReset() {
+        YaraProfiler profiler = new YaraProfiler(library, catalog);
+
+        profiler.end(1);
+        profiler.reset();
+
+        assertEquals(0, profiler.getScans());
+        assertTrue(profiler.report().isEmpty());
+    }
+
+    @Test
+    public void testFailure() {
+        doReturn(1).when(library).scannerProfile(anyLong(), any(), any(), any());
+
+        YaraProfiler profiler = new YaraProfiler(library, catalog);
+        assertThrows(YaraException.class, () -> profiler.begin(1));
+        assertThrows(YaraException.class, () -> profiler.end(1));
+        assertEquals(0, profiler.getScans());
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraMatch;
+import com.github.subreption.yara.YaraMeta;
+import com.github.subreption.yara.YaraRule;
+import com.github.subreption.yara.YaraString;
+
+public class YaraRuleDecoderTest {
+    @Test
+    public void testDecodeCatalog() {
+        YaraRuleCatalog catalog = YaraRuleDecoder.decodeCatalog(flip(catalog()));
+
+        assertEquals(2, catalog.size());
+        assertEquals(0, catalog.indexOf(null, "HelloWorld"));
+        assertEquals(0, catalog.indexOf("default", "HelloWorld"));
+        assertEquals(1, catalog.indexOf("other", "NoMatch"));
+        assertEquals(-1, catalog.indexOf("other", "HelloWorld"));
+
+        YaraRuleImpl rule = (YaraRuleImpl) catalog.get(0);
+        assertEquals(0, rule.getIndex());
+        assertEquals("default", rule.getNamespace());
+        assertRuleInfo(rule);
+
+        YaraString string = rule.getStrings().next();
+        assertEquals("$a", string.getIdentifier());
+        assertFalse(string.getMatches().hasNext());
+
+        assertEquals("NoMatch", catalog.get(1).getIdentifier());
+        assertThrows(IllegalArgumentException.class, () -> catalog.get(2));
+    }
+
+    @Test
+    public void testDecodeMatch() {
+        YaraRuleCatalog catalog = YaraRuleDecoder.decodeCatalog(flip(catalog()));
+
+        YaraRuleImpl rule = YaraRuleDecoder.decode(catalog, flip(match(0, 32)));
+
+        assertRuleInfo(rule);
+        assertSame(catalog.get(0).getIdentifier(), rule.getIdentifier());
+
+        Iterator<YaraString> strings = rule.getStrings();
+        YaraString string = strings.next();
+        assertEquals("$a", string.getIdentifier());
+        assertFalse(strings.hasNext());
+
+        Iterator<YaraMatch> matches = string.getMatches();
+        YaraMatch match = matches.next();
+        assertEquals(42, match.getOffset());
+        assertEquals(32, ((YaraMatchImpl) match).getLength());
+        assertEquals("Hello world", match.getValue());
+        assertArrayEquals("Hello world".getBytes(), Arrays.copyOf(match.getBytes(), 11));
+        assertFalse(matches.hasNext());
+
+        // Catalog entry is left untouched
+        assertFalse(catalog.get(0).getStrings().next().getMatches().hasNext());
+    }
+
+    @Test
+    public void testDecodeNoMatchesSharesEntry() {
+        YaraRuleCatalog catalog = YaraRuleDecoder.decodeCatalog(flip(catalog()));
+
+        ByteBuffer buffer = allocate(64);
+        buffer.putInt(1);
+        buffer.putInt(1);
+        buffer.putInt(0);
+
+        assertSame(catalog.get(1), YaraRuleDecoder.decode(catalog, flip(buffer)));
+    }
+
+    @Test
+    public void testDecodeInvalidIndex() {
+        YaraRuleCatalog catalog = YaraRuleDecoder.decodeCatalog(flip(catalog()));
+
+        assertThrows(YaraException.class, () -> YaraRuleDecoder.decode(catalog, flip(match(5, 1))));
+    }
+
+    @Test
+    public void testDecodeGrowsBuffer() {
+        final ByteBuffer serialized = match(0, 200 * 1024);
+        final int size = serialized.position();
+
+        YaraLibrary library = mock(YaraLibrary.class);
+        doAnswer(invocation -> {
+            ByteBuffer target = invocation.getArgument(2);
+            if (target.capacity() >= size) {
+                target.duplicate().put(flip(serialized.duplicate()));
+            }
+            return (long) size;
+        }).when(library).ruleSerialize(anyLong(), anyLong(), any(ByteBuffer.class));
+
+        YaraRuleCatalog catalog = YaraRuleDecoder.decodeCatalog(flip(catalog()));
+        YaraRule rule = YaraRuleDecoder.decode(library, catalog, 1, 2);
+
+        assertEquals(200 * 1024, rule.getStrings().next().getMatches().next().getBytes().length);
+        verify(library, times(2)).ruleSerialize(anyLong(), anyLong(), any(ByteBuffer.class));
+    }
+
+    @Test
+    public void testCatalogFromLibrary() {
+        final ByteBuffer serialized = catalog();
+
+        YaraLibrary library = mock(YaraLibrary.class);
+        doAnswer(invocation -> {
+            ByteBuffer target = invocation.getArgument(1);
+            target.duplicate().put(flip(serialized.duplicate()));
+            return (long) serialized.position();
+        }).when(library).rulesCatalog(anyLong(), any(ByteBuffer.class));
+
+        assertEquals(2, YaraRuleDecoder.catalog(library, 1).size());
+    }
+
+    @Test
+    public void testDecodeError() {
+        YaraLibrary library = mock(YaraLibrary.class);
+        doAnswer(invocation -> -1L).when(library).rulesCatalog(anyLong(), any(ByteBuffer.class));
+
+        assertThrows(YaraException.class, () -> YaraRuleDecoder.catalog(library, 1));
+    }
+
+    private static ByteBuffer catalog() {
+        ByteBuffer buffer = allocate(1024);
+        buffer.putInt(2);
+
+        putString(buffer, "HelloWorld");
+        putString(buffer, "default");
+
+        buffer.putInt(2);
+        putString(buffer, "Hello");
+        putString(buffer, "World");
+
+        buffer.putInt(2);
+        buffer.putInt(2);
+        putString(buffer, "my_identifier_1");
+        buffer.putLong(0);
+        putString(buffer, "Some string data");
+        buffer.putInt(1);
+        putString(buffer, "my_identifier_2");
+        buffer.putLong(24);
+        buffer.putInt(-1);
+
+        buffer.putInt(1);
+        putString(buffer, "$a");
+
+        putString(buffer, "NoMatch");
+        putString(buffer, "other");
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putInt(1);
+        putString(buffer, "$a");
+
+        return buffer;
+    }
+
+    private static ByteBuffer match(int index, int dataLength) {
+        byte[] data = new byte[dataLength];
+        System.arraycopy("Hello world".getBytes(), 0, data, 0, Math.min(11, dataLength));
+
+        ByteBuffer buffer = allocate(dataLength + 64);
+        buffer.putInt(index);
+        buffer.putInt(1);
+        buffer.putInt(1);
+        buffer.putLong(42);
+        buffer.putInt(dataLength);
+        buffer.putInt(data.length);
+        buffer.put(data);
+
+        return buffer;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer flip(ByteBuffer buffer) {
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void assertRuleInfo(YaraRule rule) {
+        assertEquals("HelloWorld", rule.getIdentifier());
+
+        Iterator<String> tags = rule.getTags();
+        assertEquals("Hello", tags.next());
+        assertEquals("World", tags.next());
+        assertFalse(tags.hasNext());
+
+        Iterator<YaraMeta> metas = rule.getMetadata();
+        YaraMeta meta = metas.next();
+        assertEquals(YaraMeta.Type.STRING, meta.getType());
+        assertEquals("my_identifier_1", meta.getIdentifier());
+        assertEquals("Some string data", meta.getString());
+
+        meta = metas.next();
+        assertEquals(YaraMeta.Type.INTEGER, meta.getType());
+        assertEquals("my_identifier_2", meta.getIdentifier());
+        assertEquals(24, meta.getInteger());
+        assertNull(meta.getString());
+        assertFalse(metas.hasNext());
+    }
+}
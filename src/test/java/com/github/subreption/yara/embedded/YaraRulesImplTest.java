@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.github.subreption.yara.YaraScanner;
+
+public class YaraRulesImplTest {
+    private YaraLibrary library;
+    private final AtomicLong handles = new AtomicLong(100);
+
+    @BeforeEach
+    public void setup() {
+        library = mock(YaraLibrary.class);
+
+        doAnswer(invocation -> {
+            long[] ref = invocation.getArgument(1);
+            ref[0] = handles.incrementAndGet();
+            return 0;
+        }).when(library).scannerCreate(anyLong(), any(long[].class));
+    }
+
+    @Test
+    public void testCreateNoRules() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraRulesImpl(library, 0));
+    }
+
+    @Test
+    public void testCreateNoLibrary() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraRulesImpl(null, 1));
+    }
+
+    @Test
+    public void testClose() {
+        YaraRulesImpl rules = new YaraRulesImpl(library, 1);
+
+        rules.close();
+        rules.close();
+
+        assertEquals(0, rules.references());
+        verify(library, times(1)).rulesDestroy(1);
+    }
+
+    @Test
+    public void testReleasedByLastScanner() throws Exception {
+        YaraRulesImpl rules = new YaraRulesImpl(library, 1);
+
+        YaraScanner first = rules.createScanner();
+        YaraScanner second = rules.createScanner();
+        assertEquals(3, rules.references());
+
+        rules.close();
+        first.close();
+        verify(library, never()).rulesDestroy(anyLong());
+
+        second.close();
+        second.close();
+        assertEquals(0, rules.references());
+        verify(library, times(1)).rulesDestroy(1);
+    }
+
+    @Test
+    public void testCreateScannerAfterClose() {
+        YaraRulesImpl rules = new YaraRulesImpl(library, 1);
+        rules.close();
+
+        assertThrows(IllegalStateException.class, rules::createScanner);
+    }
+
+    @Test
+    public void testNativeScannersDestroyed() throws Exception {
+        YaraRulesImpl rules = new YaraRulesImpl(library, 1);
+
+        long scanner = rules.acquire(60, 4);
+        rules.recycle(scanner);
+        rules.close();
+
+        verify(library, times(1)).scannerDestroy(scanner);
+        verify(library, times(1)).rulesDestroy(1);
+    }
+
+    @Test
+    public void testSubsetEnabled() {
+        String namespaces[] = { "a", "a", "a", "a", "b", "b", "c", "c" };
+        boolean global[] =    { false, false, false, false, false, false, false, true };
+        boolean selected[] =  { false, false, true, false, false, true, false, false };
+
+        // Rules before a selected rule of their namespace may be referenced by it, global
+        // rules apply to the whole namespace; namespaces without a selected rule are dropped
+        boolean expected[] =  { true, true, true, false, true, true, false, false };
+
+        assertArrayEquals(expected, YaraRulesImpl.enabled(namespaces, global, selected));
+    }
+
+    @Test
+    public void testSubsetEnabledGlobal() {
+        String namespaces[] = { "a", "a", "a", "a" };
+        boolean global[] =    { false, true, false, false };
+        boolean selected[] =  { true, false, false, false };
+
+        // Global rules may reference the rules declared before them
+        assertArrayEquals(new boolean[] { true, true, false, false },
+                YaraRulesImpl.enabled(namespaces, global, selected));
+
+        global[3] = true;
+        assertArrayEquals(new boolean[] { true, true, true, true },
+                YaraRulesImpl.enabled(namespaces, global, selected));
+    }
+
+    @Test
+    public void testScannerOwnsRules() throws Exception {
+        YaraScannerImpl scanner = new YaraScannerImpl(library, 1);
+        scanner.close();
+
+        verify(library, times(1)).rulesDestroy(1);
+    }
+}
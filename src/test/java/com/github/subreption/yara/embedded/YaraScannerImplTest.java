@@ -17,33 +17,75 @@
 
 package com.github.subreption.yara.embedded;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 import static org.mockito.Mockito.mock;
 
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.ScanOptions;
+import com.github.subreption.yara.ScanResult;
+import com.github.subreption.yara.StreamScanOptions;
+import com.github.subreption.yara.StreamScanResult;
+import com.github.subreption.yara.TreeScanOptions;
 import com.github.subreption.yara.YaraCompilationCallback;
+import com.github.subreption.yara.YaraCompilationWarning;
+import com.github.subreption.yara.YaraCompileEvent;
 import com.github.subreption.yara.YaraCompiler;
+import com.github.subreption.yara.YaraEvents;
+import com.github.subreption.yara.YaraException;
 import com.github.subreption.yara.YaraMatch;
+import com.github.subreption.yara.YaraMemoryBlock;
 import com.github.subreption.yara.YaraMeta;
+import com.github.subreption.yara.YaraMetrics;
+import com.github.subreption.yara.YaraRule;
+import com.github.subreption.yara.YaraRuleSelector;
+import com.github.subreption.yara.YaraRules;
 import com.github.subreption.yara.YaraScanCallback;
+import com.github.subreption.yara.YaraScanEvent;
+import com.github.subreption.yara.YaraScanWarning;
 import com.github.subreption.yara.YaraScanner;
 import com.github.subreption.yara.YaraString;
 import com.github.subreption.yara.TestUtils;
@@ -349,6 +391,861 @@ public class YaraScannerImplTest {
         assertTrue(match.get());
     }
 
+    @Test
+    public void testScanDirectBufferMatch() throws Exception {
+        byte[] content = "Hello world".getBytes();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content);
+        buffer.flip();
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            assertMetas(v.getMetadata());
+            assertStrings(v.getStrings());
+            assertTags(v.getTags());
+            match.set(true);
+        };
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.setCallback(scanCallback);
+                scanner.scan(buffer);
+            }
+        }
+
+        assertTrue(match.get());
+        assertEquals(0, buffer.position());
+        assertEquals(content.length, buffer.limit());
+    }
+
+    @Test
+    public void testScanHeapBufferRegion() throws Exception {
+        byte[] content = "xxHello worldxx".getBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicInteger match = new AtomicInteger();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            match.incrementAndGet();
+        };
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.setCallback(scanCallback);
+
+                // Region containing the string
+                scanner.scan(buffer, 2, 11);
+                assertEquals(1, match.get());
+
+                // Region cutting the string
+                scanner.scan(buffer, 3, 11);
+                assertEquals(1, match.get());
+
+                // Read-only buffers have no accessible array
+                scanner.scan(buffer.asReadOnlyBuffer(), 2, 11);
+                assertEquals(2, match.get());
+            }
+        }
+    }
+
+    @Test
+    public void testScanBufferWrongRegion() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.setCallback(v -> {});
+                assertThrows(IllegalArgumentException.class, () -> scanner.scan(ByteBuffer.allocate(4), 2, 4));
+            }
+        }
+    }
+
+    @Test
+    public void testScanChannelMatch() throws Exception {
+        File temp = File.createTempFile(UUID.randomUUID().toString(), ".tmp");
+        Files.write(Paths.get(temp.getAbsolutePath()), "Hello world".getBytes(), StandardOpenOption.WRITE);
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            assertMetas(v.getMetadata());
+            assertStrings(v.getStrings());
+            match.set(true);
+        };
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner();
+                 FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.READ)) {
+                scanner.setCallback(scanCallback);
+                scanner.scan(channel);
+
+                assertEquals(0, channel.position());
+            }
+        }
+        finally {
+            temp.delete();
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testScanChannelRegion() throws Exception {
+        // Place the string past the first page to exercise unaligned windows
+        byte[] content = new byte[8192];
+        byte[] hello = "Hello world".getBytes();
+        System.arraycopy(hello, 0, content, 5000, hello.length);
+
+        File temp = File.createTempFile(UUID.randomUUID().toString(), ".tmp");
+        Files.write(Paths.get(temp.getAbsolutePath()), content, StandardOpenOption.WRITE);
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicInteger match = new AtomicInteger();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            assertEquals(3, v.getStrings().next().getMatches().next().getOffset());
+            match.incrementAndGet();
+        };
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner();
+                 FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.READ)) {
+                scanner.setCallback(scanCallback);
+
+                scanner.scan(channel, 4997, 100);
+                assertEquals(1, match.get());
+
+                scanner.scan(channel, 5001, 100);
+                assertEquals(1, match.get());
+
+                assertThrows(IllegalArgumentException.class, () -> scanner.scan(channel, 8000, 1000));
+            }
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    @Test
+    public void testScanSharedRules() throws Exception {
+        final int threads = 8;
+        final int iterations = 50;
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicInteger matches = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraRules rules = compiler.createRules()) {
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int i = 0; i < threads; ++i) {
+                        futures.add(executor.submit(() -> {
+                            try (YaraScanner scanner = rules.createScanner()) {
+                                scanner.setCallback(v -> {
+                                    if ("HelloWorld".equals(v.getIdentifier())) {
+                                        matches.incrementAndGet();
+                                    }
+                                });
+
+                                for (int j = 0; j < iterations; ++j) {
+                                    scanner.scan("Hello world".getBytes());
+                                }
+                            }
+                            catch (Exception e) {
+                                failures.incrementAndGet();
+                            }
+                        }));
+                    }
+
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                }
+                finally {
+                    executor.shutdown();
+                }
+            }
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(threads * iterations, matches.get());
+    }
+
+    @Test
+    public void testScanSharedRulesAfterClose() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            YaraScanner scanner;
+            try (YaraRules rules = compiler.createRules()) {
+                scanner = rules.createScanner();
+            }
+
+            // The scanner still holds a reference to the rules
+            try {
+                scanner.setCallback(v -> match.set(true));
+                scanner.scan("Hello world".getBytes());
+            }
+            finally {
+                scanner.close();
+            }
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testCatalog() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, "test");
+
+            try (YaraScannerImpl scanner = (YaraScannerImpl) compiler.createScanner()) {
+                YaraRuleCatalog catalog = scanner.getCatalog();
+
+                assertEquals(2, catalog.size());
+                assertEquals(0, catalog.indexOf("test", "HelloWorld"));
+                assertEquals(1, catalog.indexOf("test", "NoMatch"));
+                assertEquals(-1, catalog.indexOf(null, "HelloWorld"));
+                assertTags(catalog.get(0).getTags());
+                assertMetas(catalog.get(1).getMetadata());
+
+                scanner.setCallback(v -> {
+                    assertEquals(0, ((YaraRuleImpl) v).getIndex());
+                    assertEquals("test", ((YaraRuleImpl) v).getNamespace());
+                    assertSame(catalog.get(0).getIdentifier(), v.getIdentifier());
+                    assertStrings(v.getStrings());
+                    match.set(true);
+                });
+                scanner.scan("Hello world".getBytes());
+            }
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testScanRuleIds() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final List<Integer> indexes = new ArrayList<>();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.scanRuleIds("Hello world".getBytes(), null, indexes::add);
+                assertEquals(1, indexes.size());
+                assertEquals(0, (int) indexes.get(0));
+
+                ByteBuffer buffer = ByteBuffer.wrap("xxHello worldxx".getBytes());
+                scanner.scanRuleIds(buffer, 2, 11, null, indexes::add);
+                assertEquals(2, indexes.size());
+                assertEquals(0, (int) indexes.get(1));
+
+                assertEquals(1, scanner.matchedRules("Hello world".getBytes()).cardinality());
+                assertTrue(scanner.matchedRules("Nothing here".getBytes()).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testScanAsync() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                ScanResult result = scanner.scanAsync("Hello world".getBytes(), null).get(60, TimeUnit.SECONDS);
+                assertEquals(1, result.getRules().size());
+                assertEquals("HelloWorld", result.getRules().get(0).getIdentifier());
+
+                ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+                buffer.put("xxHello world".getBytes());
+                ((Buffer) buffer).flip();
+                ((Buffer) buffer).position(2);
+                assertTrue(scanner.scanAsync(buffer, null).get(60, TimeUnit.SECONDS).isMatch());
+
+                assertFalse(scanner.scanAsync("Nothing".getBytes(), ScanOptions.DEFAULT)
+                        .get(60, TimeUnit.SECONDS).isMatch());
+            }
+        }
+    }
+
+    @Test
+    public void testScanStream() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        byte[] content = "xxxxxxxxxxxxHello worldxxxxxxxxxxxxxxHello worldxx".getBytes();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                StreamScanOptions options = StreamScanOptions.builder().setChunkSize(8).build();
+                StreamScanResult result = scanner.scan(new ByteArrayInputStream(content), options);
+
+                // Overlap sized on the longest string
+                assertEquals("Hello world".length(), result.getOverlap());
+                assertTrue(result.isWindowed());
+                assertEquals(content.length, result.getLength());
+                assertEquals(1, result.getRules().size());
+
+                Iterator<YaraMatch> matches = result.getRules().get(0).getStrings().next().getMatches();
+                assertEquals(12, matches.next().getOffset());
+                assertEquals(37, matches.next().getOffset());
+                assertFalse(matches.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testScanBlocks() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(16);
+        direct.put("xHello world".getBytes());
+        ((Buffer) direct).flip();
+        ((Buffer) direct).position(1);
+
+        List<YaraMemoryBlock> blocks = Arrays.asList(
+                new YaraMemoryBlock(0, ByteBuffer.wrap("nothing".getBytes())),
+                new YaraMemoryBlock(100, ByteBuffer.wrap("Hello world".getBytes())),
+                new YaraMemoryBlock(200, direct));
+
+        final List<Long> offsets = new ArrayList<>();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.scan(blocks, null, v -> {
+                    assertEquals("HelloWorld", v.getIdentifier());
+                    v.getStrings().next().getMatches().forEachRemaining(m -> offsets.add(m.getOffset()));
+                });
+
+                assertThrows(IllegalArgumentException.class, () -> scanner.scan(
+                        Arrays.asList(blocks.get(1), blocks.get(0)), null, v -> {}));
+            }
+        }
+
+        assertEquals(Arrays.asList(100L, 200L), offsets);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void testScanProcess() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        // The child keeps the rule string in its arguments while blocked on stdin
+        Process child = new ProcessBuilder("sh", "-c", "echo $$; read line # Hello world").start();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            int pid = Integer.parseInt(reader.readLine().trim());
+
+            try (YaraCompiler compiler = yara.createCompiler()) {
+                compiler.setCallback(compileCallback);
+                compiler.addRulesContent(YARA_RULES, null);
+
+                try (YaraScanner scanner = compiler.createScanner()) {
+                    scanner.scanProcess(pid, null, v -> {
+                        if ("HelloWorld".equals(v.getIdentifier())) {
+                            match.set(true);
+                        }
+                    });
+                }
+            }
+        }
+        finally {
+            child.destroy();
+            child.waitFor();
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testScanOptions() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                // Scanner settings are not used by per-call scans
+                scanner.setCallback(v -> fail());
+                scanner.setNotSatisfiedOnly(true);
+
+                List<String> matches = new ArrayList<>();
+                ScanOptions options = ScanOptions.builder()
+                        .setCallback(v -> matches.add(v.getIdentifier()))
+                        .build();
+
+                scanner.scan("Hello world".getBytes(), options);
+                assertEquals(Collections.singletonList("HelloWorld"), matches);
+
+                matches.clear();
+                scanner.scan("Hello world".getBytes(), options.toBuilder().setNegate(true).build());
+                assertEquals(Collections.singletonList("NoMatch"), matches);
+
+                matches.clear();
+                scanner.scan(UUID.randomUUID().toString().getBytes(),
+                        options.toBuilder().setNegate(true).setMaxRules(1).build());
+                assertEquals(1, matches.size());
+            }
+        }
+    }
+
+    @Test
+    public void testScanFastMode() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        String rules = "rule Presence { strings: $a = \"Hello\" condition: $a }\n" +
+                "rule Count { strings: $a = \"Hello\" condition: #a == 3 }";
+        byte[] content = "Hello Hello Hello".getBytes();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(rules, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                Map<String, Integer> matches = new HashMap<>();
+                ScanOptions options = ScanOptions.builder()
+                        .setCallback(v -> matches.put(v.getIdentifier(), countMatches(v)))
+                        .build();
+
+                scanner.scan(content, options);
+                assertEquals(3, matches.get("Presence").intValue());
+                assertEquals(3, matches.get("Count").intValue());
+
+                // Same rules match, presence only strings stop at their first match
+                matches.clear();
+                scanner.scan(content, options.toBuilder().setFastMode(true).build());
+                assertEquals(1, matches.get("Presence").intValue());
+                assertEquals(3, matches.get("Count").intValue());
+
+                matches.clear();
+                scanner.setFastMode(true);
+                scanner.setCallback(v -> matches.put(v.getIdentifier(), countMatches(v)));
+                scanner.scan(content);
+                assertEquals(1, matches.get("Presence").intValue());
+                assertEquals(3, matches.get("Count").intValue());
+            }
+        }
+    }
+
+    private static int countMatches(YaraRule rule) {
+        int count = 0;
+
+        Iterator<YaraString> strings = rule.getStrings();
+        while (strings.hasNext()) {
+            Iterator<YaraMatch> matches = strings.next().getMatches();
+            while (matches.hasNext()) {
+                matches.next();
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testScanVariables() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        String rules = "rule Size { condition: size_class > 2 }\n" +
+                "rule Ratio { condition: ratio > 0.5 }\n" +
+                "rule Trusted { condition: trusted }\n" +
+                "rule Tenant { condition: tenant == \"acme\" }";
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.defineVariable("size_class", 1);
+            compiler.defineVariable("ratio", 0.25);
+            compiler.defineVariable("trusted", false);
+            compiler.defineVariable("tenant", "none");
+            compiler.addRulesContent(rules, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                List<String> matches = new ArrayList<>();
+                ScanOptions defaults = ScanOptions.builder()
+                        .setCallback(v -> matches.add(v.getIdentifier()))
+                        .build();
+
+                scanner.scan("Hello world".getBytes(), defaults);
+                assertTrue(matches.isEmpty());
+
+                scanner.scan("Hello world".getBytes(), defaults.toBuilder()
+                        .setVariable("size_class", 3)
+                        .setVariable("ratio", 0.75)
+                        .setVariable("trusted", true)
+                        .setVariable("tenant", "acme")
+                        .build());
+                assertEquals(Arrays.asList("Size", "Ratio", "Trusted", "Tenant"), matches);
+
+                // Values only apply to the scan they were passed to
+                matches.clear();
+                scanner.scan("Hello world".getBytes(), defaults);
+                assertTrue(matches.isEmpty());
+
+                assertThrows(YaraException.class, () -> scanner.scan("Hello world".getBytes(),
+                        defaults.toBuilder().setVariable("undefined", 1).build()));
+            }
+        }
+    }
+
+    @Test
+    public void testScanSubset() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("rule Ransom : ransomware { strings: $a = \"Hello\" condition: $a }\n" +
+                    "rule Other : misc { strings: $a = \"Hello\" condition: $a }", "malware");
+            compiler.addRulesContent("rule Tenant { strings: $a = \"Hello\" condition: $a }", "tenant");
+
+            try (YaraRules rules = compiler.createRules()) {
+                assertEquals(Arrays.asList("Other", "Ransom", "Tenant"), scanSubset(rules, "Hello world", false));
+
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addTag("ransomware").build())) {
+                    assertEquals(Collections.singletonList("Ransom"), scanSubset(subset, "Hello world", false));
+
+                    // Rules left out are not reported as not satisfied either
+                    assertEquals(Collections.singletonList("Ransom"), scanSubset(subset, "Nothing", true));
+                }
+
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addNamespace("tenant").build())) {
+                    assertEquals(Collections.singletonList("Tenant"), scanSubset(subset, "Hello world", false));
+                }
+
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addIdentifier("Other").build())) {
+                    assertEquals(Collections.singletonList("Other"), scanSubset(subset, "Hello world", false));
+                }
+
+                // The shared rules are left untouched
+                assertEquals(Arrays.asList("Other", "Ransom", "Tenant"), scanSubset(rules, "Hello world", false));
+            }
+        }
+    }
+
+    @Test
+    public void testRepeatedTreeScans() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        Path root = Files.createTempDirectory("yara-tree");
+        try {
+            for (int i = 0; i < 32; ++i) {
+                Files.write(root.resolve("file" + i), "Hello world".getBytes());
+            }
+
+            try (YaraCompiler compiler = yara.createCompiler()) {
+                compiler.setCallback(compileCallback);
+                compiler.addRulesContent(YARA_RULES, null);
+
+                try (YaraRules rules = compiler.createRules();
+                     YaraScanner scanner = rules.createScanner()) {
+                    TreeScanOptions options = TreeScanOptions.builder().setParallelism(4).build();
+                    AtomicInteger matches = new AtomicInteger();
+
+                    for (int i = 0; i < 8; ++i) {
+                        scanner.scanTree(root, options, (path, rule) -> matches.incrementAndGet());
+                    }
+
+                    // Native scanners are reused from one tree scan to the next
+                    assertEquals(8 * 32, matches.get());
+                    assertTrue(((YaraRulesImpl) rules).scanners() <= 4);
+                }
+            }
+        }
+        finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testScanSubsetDependencies() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("private rule IsHello { strings: $a = \"Hello\" condition: $a }\n" +
+                    "rule Helper { strings: $a = \"world\" condition: $a }\n" +
+                    "rule Ransom : ransomware { condition: IsHello and Helper }\n" +
+                    "rule Trailing { strings: $a = \"Hello\" condition: $a }", "malware");
+
+            try (YaraRules rules = compiler.createRules()) {
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addTag("ransomware").build())) {
+                    // Rules the selected rule depends on are evaluated but not reported
+                    assertEquals(Collections.singletonList("Ransom"), scanSubset(subset, "Hello world", false));
+                    assertEquals(Collections.singletonList("Ransom"), scanSubset(subset, "Nothing", true));
+                }
+            }
+        }
+    }
+
+    private static List<String> scanSubset(YaraRules rules, String content, boolean negate) throws Exception {
+        List<String> matches = new ArrayList<>();
+
+        try (YaraScanner scanner = rules.createScanner()) {
+            scanner.scan(content.getBytes(), ScanOptions.builder()
+                    .setNegate(negate)
+                    .setCallback(v -> matches.add(v.getIdentifier()))
+                    .build());
+        }
+
+        Collections.sort(matches);
+        return matches;
+    }
+
+    @Test
+    public void testScanProfiling() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("rule Slow { strings: $a = /Hel+o [a-z]+/ condition: $a }\n" +
+                    "rule Idle { strings: $a = \"Absent\" condition: $a }", null);
+
+            try (YaraRules rules = compiler.createRules()) {
+                YaraRulesImpl impl = (YaraRulesImpl) rules;
+
+                if (!impl.getLibrary().profilingEnabled()) {
+                    assertThrows(UnsupportedOperationException.class, impl::enableProfiling);
+                    return;
+                }
+
+                YaraProfiler profiler = impl.enableProfiling();
+                assertSame(profiler, impl.enableProfiling());
+
+                try (YaraScanner scanner = rules.createScanner()) {
+                    scanner.setCallback(v -> {});
+                    for (int i = 0; i < 3; ++i) {
+                        scanner.scan("Hello world".getBytes());
+                    }
+                }
+
+                assertEquals(3, profiler.getScans());
+
+                List<YaraRuleProfile> report = profiler.report();
+                assertFalse(report.isEmpty());
+                assertEquals("Slow", report.get(0).getIdentifier());
+                assertTrue(report.get(0).getAtomMatches() > 0);
+
+                profiler.reset();
+                assertTrue(profiler.report().isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testScanWarnings() throws Exception {
+        List<YaraCompilationWarning> compileWarnings = new ArrayList<>();
+        YaraCompilationCallback compileCallback = new YaraCompilationCallback() {
+            @Override
+            public void onError(ErrorLevel errorLevel, String fileName, long lineNumber, String message) {
+                assertEquals(ErrorLevel.WARNING, errorLevel);
+            }
+
+            @Override
+            public void onWarning(YaraCompilationWarning warning) {
+                compileWarnings.add(warning);
+            }
+        };
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("rule Zeros { strings: $a = { 00 } condition: $a }", null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                assertEquals(1, compileWarnings.size());
+                assertEquals(YaraCompilationWarning.Type.SLOW_STRING, compileWarnings.get(0).getType());
+                assertEquals("$a", compileWarnings.get(0).getStringIdentifier());
+
+                // More matches than libyara keeps for one string
+                byte[] buffer = new byte[1100000];
+                List<YaraScanWarning> warnings = new ArrayList<>();
+
+                scanner.scan(buffer, ScanOptions.builder().setCallback(new YaraScanCallback() {
+                    @Override
+                    public void onMatch(YaraRule rule) {
+                    }
+
+                    @Override
+                    public Action onWarning(YaraScanWarning warning) {
+                        warnings.add(warning);
+                        return Action.CONTINUE;
+                    }
+                }).build());
+
+                YaraScanWarning warning = warnings.stream()
+                        .filter(w -> w.getType() == YaraScanWarning.Type.TOO_MANY_MATCHES)
+                        .findFirst()
+                        .orElse(null);
+                assertNotNull(warning);
+                assertEquals("Zeros", warning.getRule().getIdentifier());
+                assertEquals("$a", warning.getStringIdentifier());
+                assertTrue(warning.getCount() > 0);
+
+                YaraException e = assertThrows(YaraException.class, () -> scanner.scan(buffer,
+                        ScanOptions.builder().setCallback(new YaraScanCallback() {
+                            @Override
+                            public void onMatch(YaraRule rule) {
+                            }
+
+                            @Override
+                            public Action onWarning(YaraScanWarning warning) {
+                                return Action.ABORT;
+                            }
+                        }).build()));
+                assertEquals(ErrorCode.TOO_MANY_MATCHES, e.getCode());
+            }
+        }
+    }
+
+    @Test
+    public void testScanMetrics() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = yara.createCompiler()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                YaraMetrics metrics = new YaraMetrics();
+                scanner.setMetrics(metrics);
+                scanner.setCallback(v -> {});
+
+                byte[] buffer = "Hello world".getBytes();
+                scanner.scan(buffer);
+                scanner.scan(buffer);
+
+                File temp = File.createTempFile(UUID.randomUUID().toString(), ".tmp");
+                try {
+                    Files.write(Paths.get(temp.getAbsolutePath()), buffer, StandardOpenOption.WRITE);
+                    scanner.scan(temp);
+                }
+                finally {
+                    temp.delete();
+                }
+
+                YaraMetrics.Snapshot snapshot = metrics.snapshot();
+                assertEquals(3, snapshot.getScans());
+                assertEquals(1, snapshot.getFiles());
+                assertEquals(3L * buffer.length, snapshot.getBytes());
+                assertEquals(3L, snapshot.getMatches().get("HelloWorld"));
+                assertTrue(snapshot.getCallbacks() >= 3);
+                assertTrue(snapshot.getNativeCalls() >= 9);
+                assertEquals(3, snapshot.getLatency().getCount());
+                assertTrue(snapshot.getErrors().isEmpty());
+
+                // Recording stops with the metrics unset
+                scanner.setMetrics(null);
+                scanner.scan(buffer);
+                assertEquals(3, metrics.snapshot().getScans());
+            }
+        }
+    }
+
+    @Test
+    public void testScanEvents() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+        Path file = Files.createTempFile("yara", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(YaraCompileEvent.class);
+            recording.enable(YaraScanEvent.class);
+            recording.start();
+
+            try (YaraCompiler compiler = yara.createCompiler()) {
+                compiler.setCallback(compileCallback);
+                compiler.addRulesContent(YARA_RULES, null);
+
+                try (YaraScanner scanner = compiler.createScanner()) {
+                    scanner.setCallback(v -> {});
+                    scanner.scan("Hello world".getBytes());
+                }
+            }
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            List<RecordedEvent> compiles = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("com.github.subreption.yara.Compile"))
+                    .collect(Collectors.toList());
+            assertEquals(2, compiles.size());
+            assertEquals(YaraCompileEvent.ADD_SOURCE, compiles.get(0).getString("phase"));
+            assertEquals(YARA_RULES.length(), compiles.get(0).getLong("size"));
+            assertEquals(YaraCompileEvent.GET_RULES, compiles.get(1).getString("phase"));
+
+            List<RecordedEvent> scans = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("com.github.subreption.yara.Scan"))
+                    .collect(Collectors.toList());
+            assertEquals(1, scans.size());
+            assertEquals(YaraEvents.ENGINE_EMBEDDED, scans.get(0).getString("engine"));
+            assertEquals(11, scans.get(0).getLong("size"));
+            assertEquals(1, scans.get(0).getInt("matches"));
+            assertFalse(scans.get(0).getBoolean("timedOut"));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     private void assertMetas(Iterator<YaraMeta> metas) {
         assertNotNull(metas);
 
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2024 Subreption LLC. All rights reserved.
+ * Copyright (c) 2015-2022 Paul Apostolescu. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.subreption.yara.embedded;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.github.subreption.yara.YaraException;
+
+public class YaraScannerPoolTest {
+    private YaraLibrary library;
+    private final AtomicLong handles = new AtomicLong(100);
+
+    @BeforeEach
+    public void setup() {
+        library = mock(YaraLibrary.class);
+
+        doAnswer(invocation -> {
+            long[] ref = invocation.getArgument(1);
+            ref[0] = handles.incrementAndGet();
+            return 0;
+        }).when(library).scannerCreate(anyLong(), any(long[].class));
+    }
+
+    @Test
+    public void testCreateNoRules() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraScannerPool(library, 0));
+    }
+
+    @Test
+    public void testCreateNoLibrary() {
+        assertThrows(IllegalArgumentException.class, () -> new YaraScannerPool(null, 1));
+    }
+
+    @Test
+    public void testReuse() {
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+
+        long first = pool.acquire(60, 4);
+        pool.recycle(first);
+        long second = pool.acquire(60, 4);
+
+        assertEquals(first, second);
+        assertEquals(1, pool.size());
+        verify(library, times(1)).scannerCreate(eq(1L), any(long[].class));
+        verify(library, times(1)).scannerSetTimeout(first, 60);
+        verify(library, times(1)).scannerSetFlags(first, 4);
+    }
+
+    @Test
+    public void testSettingsReapplied() {
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+
+        long scanner = pool.acquire(60, 4);
+        pool.recycle(scanner);
+        pool.recycle(pool.acquire(10, 4));
+        pool.recycle(pool.acquire(10, 5));
+
+        verify(library, times(1)).scannerSetTimeout(scanner, 60);
+        verify(library, times(1)).scannerSetTimeout(scanner, 10);
+        verify(library, times(1)).scannerSetFlags(scanner, 4);
+        verify(library, times(1)).scannerSetFlags(scanner, 5);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+
+        long local = pool.acquire(60, 4);
+        long[] remote = new long[1];
+
+        Thread thread = new Thread(() -> remote[0] = pool.acquire(60, 4));
+        thread.start();
+        thread.join();
+
+        assertNotEquals(local, remote[0]);
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testShortLivedThreads() throws Exception {
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+
+        for (int i = 0; i < 16; ++i) {
+            Thread thread = new Thread(() -> pool.recycle(pool.acquire(60, 4)));
+            thread.start();
+            thread.join();
+        }
+
+        // Scanners of threads gone are handed to the next ones
+        assertEquals(1, pool.size());
+        verify(library, times(1)).scannerCreate(eq(1L), any(long[].class));
+    }
+
+    @Test
+    public void testReentrant() {
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+
+        long outer = pool.acquire(60, 4);
+
+        // Scan from within a scan callback
+        long inner = pool.acquire(10, 5);
+        assertNotEquals(outer, inner);
+        verify(library, times(1)).scannerSetTimeout(inner, 10);
+        verify(library, times(1)).scannerSetFlags(inner, 5);
+
+        pool.recycle(inner);
+        pool.recycle(outer);
+        assertEquals(2, pool.size());
+        verify(library, times(0)).scannerDestroy(anyLong());
+
+        // Most recently used first
+        assertEquals(outer, pool.acquire(60, 4));
+    }
+
+    @Test
+    public void testMaxIdle() {
+        YaraScannerPool pool = new YaraScannerPool(library, 1, 2);
+
+        long scanners[] = new long[4];
+        for (int i = 0; i < scanners.length; ++i) {
+            scanners[i] = pool.acquire(60, 4);
+        }
+        assertEquals(4, pool.size());
+
+        for (long scanner : scanners) {
+            pool.recycle(scanner);
+        }
+
+        assertEquals(2, pool.size());
+        verify(library, times(1)).scannerDestroy(scanners[2]);
+        verify(library, times(1)).scannerDestroy(scanners[3]);
+        assertThrows(IllegalArgumentException.class, () -> new YaraScannerPool(library, 1, 0));
+    }
+
+    @Test
+    public void testClose() {
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+
+        long idle = pool.acquire(60, 4);
+        long leased = pool.acquire(60, 4);
+        pool.recycle(idle);
+        pool.close();
+
+        verify(library, times(1)).scannerDestroy(idle);
+        assertEquals(1, pool.size());
+        assertThrows(IllegalStateException.class, () -> pool.acquire(60, 4));
+
+        // Scans still running when closed give their scanner back
+        pool.recycle(leased);
+        verify(library, times(1)).scannerDestroy(leased);
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testCreateFailure() {
+        doAnswer(invocation -> 1).when(library).scannerCreate(anyLong(), any(long[].class));
+
+        YaraScannerPool pool = new YaraScannerPool(library, 1);
+        assertThrows(YaraException.class, () -> pool.acquire(60, 4));
+        verify(library, times(0)).scannerSetTimeout(anyLong(), anyInt());
+    }
+}
@@ -17,14 +17,18 @@
 
 package com.github.subreption.yara.external;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -40,6 +44,7 @@ import com.github.subreption.yara.TestUtils;
 import com.github.subreption.yara.YaraCompilationCallback;
 import com.github.subreption.yara.YaraCompiler;
 import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraRulesCache;
 import com.github.subreption.yara.YaraScanner;
 
 /**
@@ -314,4 +319,131 @@ public class YaraCompilerTest {
         }
     }
 
+    @Test
+    public void testSaveLoadRules() throws Exception {
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        Path compiled = Files.createTempFile(UUID.randomUUID().toString(), ".yaracc");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(callback);
+            compiler.addRulesContent(YARA_RULE_HELLO, null);
+
+            compiler.save(compiled);
+            compiler.save(output);
+        }
+
+        try {
+            assertTrue(Files.size(compiled) > 0);
+            assertEquals(Files.size(compiled), output.size());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(output.size());
+            direct.put(output.toByteArray());
+            direct.flip();
+
+            assertLoadedRulesMatch(new YaraImpl().loadRules(compiled));
+            assertLoadedRulesMatch(new YaraImpl().loadRules(new ByteArrayInputStream(output.toByteArray())));
+            assertLoadedRulesMatch(new YaraImpl().loadRules(ByteBuffer.wrap(output.toByteArray())));
+            assertLoadedRulesMatch(new YaraImpl().loadRules(direct));
+        }
+        finally {
+            Files.deleteIfExists(compiled);
+        }
+    }
+
+    @Test
+    public void testLoadInvalidRules() throws Exception {
+        assertThrows(YaraException.class,
+                () -> new YaraImpl().loadRules(ByteBuffer.wrap("not compiled rules".getBytes())).scan("Hello world".getBytes()));
+    }
+
+    @Test
+    public void testCachedRules() throws Exception {
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        Path directory = Files.createTempDirectory("yara-cache");
+        YaraRulesCache cache = new YaraRulesCache(directory, 1024 * 1024);
+
+        try {
+            for (int i = 0; i < 2; ++i) {
+                try (YaraCompiler compiler = new YaraCompilerImpl()) {
+                    compiler.setCallback(callback);
+                    compiler.setCache(cache);
+                    compiler.addRulesContent(YARA_RULE_HELLO, null);
+
+                    assertLoadedRulesMatch(compiler.createScanner());
+                }
+
+                try (Stream<Path> entries = Files.list(directory)) {
+                    assertEquals(1, entries.count());
+                }
+            }
+        }
+        finally {
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.forEach(p -> p.toFile().delete());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testCacheAfterRules() throws Exception {
+        Path directory = Files.createTempDirectory("yara-cache");
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.addRulesContent(YARA_RULE_HELLO, null);
+            assertThrows(IllegalStateException.class,
+                    () -> compiler.setCache(new YaraRulesCache(directory, 1024)));
+        }
+        finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testCachedRulesError() throws Exception {
+        final AtomicBoolean called = new AtomicBoolean();
+        YaraCompilationCallback callback = (errorLevel, fileName, lineNumber, message) -> called.set(true);
+
+        Path directory = Files.createTempDirectory("yara-cache");
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(callback);
+            compiler.setCache(new YaraRulesCache(directory, 1024));
+            compiler.addRulesContent(YARA_RULE_FAIL, null);
+
+            try {
+                assertNotNull(compiler.createScanner());
+            }
+            catch (YaraException ye) {
+            }
+
+            assertTrue(called.get());
+            try (Stream<Path> entries = Files.list(directory)) {
+                assertEquals(0, entries.count());
+            }
+        }
+        finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private void assertLoadedRulesMatch(YaraScanner scanner) throws Exception {
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try {
+            scanner.setCallback(v -> {
+                assertEquals("HelloWorld", v.getIdentifier());
+                match.set(true);
+            });
+            scanner.scan("Hello world".getBytes());
+        }
+        finally {
+            scanner.close();
+        }
+
+        assertTrue(match.get());
+    }
 }
@@ -17,17 +17,30 @@
 
 package com.github.subreption.yara.external;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -38,15 +51,27 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.ScanOptions;
+import com.github.subreption.yara.TreeScanOptions;
 import com.github.subreption.yara.YaraCompilationCallback;
+import com.github.subreption.yara.YaraCompilationWarning;
 import com.github.subreption.yara.YaraCompiler;
 import com.github.subreption.yara.YaraException;
 import com.github.subreption.yara.YaraMatch;
+import com.github.subreption.yara.YaraMemoryBlock;
 import com.github.subreption.yara.YaraMeta;
+import com.github.subreption.yara.YaraMetrics;
+import com.github.subreption.yara.YaraRule;
+import com.github.subreption.yara.YaraRuleSelector;
+import com.github.subreption.yara.YaraRules;
 import com.github.subreption.yara.YaraScanCallback;
+import com.github.subreption.yara.YaraScanWarning;
 import com.github.subreption.yara.YaraScanner;
 import com.github.subreption.yara.YaraString;
 
@@ -343,6 +368,658 @@ public class YaraScannerImplTest {
         assertTrue(match.get());
     }
 
+    @Test
+    public void testScanDirectBufferMatch() throws Exception {
+        byte[] content = "Hello world".getBytes();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content);
+        buffer.flip();
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            assertMetas(v.getMetadata());
+            assertStrings(v.getStrings());
+            match.set(true);
+        };
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.setCallback(scanCallback);
+                scanner.scan(buffer);
+            }
+        }
+
+        assertTrue(match.get());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testScanHeapBufferRegion() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap("xxHello worldxx".getBytes());
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicInteger match = new AtomicInteger();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            match.incrementAndGet();
+        };
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.setCallback(scanCallback);
+
+                scanner.scan(buffer, 2, 11);
+                assertEquals(1, match.get());
+
+                scanner.scan(buffer, 3, 11);
+                assertEquals(1, match.get());
+            }
+        }
+    }
+
+    @Test
+    public void testScanChannelMatch() throws Exception {
+        File temp = File.createTempFile(UUID.randomUUID().toString(), ".tmp");
+        Files.write(Paths.get(temp.getAbsolutePath()), "Hello world".getBytes(), StandardOpenOption.WRITE);
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            assertMetas(v.getMetadata());
+            assertStrings(v.getStrings());
+            match.set(true);
+        };
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner();
+                 FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.READ)) {
+                scanner.setCallback(scanCallback);
+                scanner.scan(channel);
+
+                assertEquals(0, channel.position());
+            }
+        }
+        finally {
+            temp.delete();
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testScanChannelRegion() throws Exception {
+        // Place the string past the first page to exercise unaligned windows
+        byte[] content = new byte[8192];
+        byte[] hello = "Hello world".getBytes();
+        System.arraycopy(hello, 0, content, 5000, hello.length);
+
+        File temp = File.createTempFile(UUID.randomUUID().toString(), ".tmp");
+        Files.write(Paths.get(temp.getAbsolutePath()), content, StandardOpenOption.WRITE);
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicInteger match = new AtomicInteger();
+
+        YaraScanCallback scanCallback = v -> {
+            assertEquals("HelloWorld", v.getIdentifier());
+            assertEquals(3, v.getStrings().next().getMatches().next().getOffset());
+            match.incrementAndGet();
+        };
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner();
+                 FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.READ)) {
+                scanner.setCallback(scanCallback);
+
+                scanner.scan(channel, 4997, 100);
+                assertEquals(1, match.get());
+
+                scanner.scan(channel, 5001, 100);
+                assertEquals(1, match.get());
+
+                assertThrows(IllegalArgumentException.class, () -> scanner.scan(channel, 8000, 1000));
+            }
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    @Test
+    public void testScanSharedRules() throws Exception {
+        final int threads = 4;
+        final int iterations = 5;
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicInteger matches = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraRules rules = compiler.createRules()) {
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int i = 0; i < threads; ++i) {
+                        futures.add(executor.submit(() -> {
+                            try (YaraScanner scanner = rules.createScanner()) {
+                                scanner.setCallback(v -> {
+                                    if ("HelloWorld".equals(v.getIdentifier())) {
+                                        matches.incrementAndGet();
+                                    }
+                                });
+
+                                for (int j = 0; j < iterations; ++j) {
+                                    scanner.scan("Hello world".getBytes());
+                                }
+                            }
+                            catch (Exception e) {
+                                failures.incrementAndGet();
+                            }
+                        }));
+                    }
+
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                }
+                finally {
+                    executor.shutdown();
+                }
+            }
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(threads * iterations, matches.get());
+    }
+
+    @Test
+    public void testScanSharedRulesAfterClose() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            YaraScanner scanner;
+            try (YaraRules rules = compiler.createRules()) {
+                scanner = rules.createScanner();
+            }
+
+            // The scanner still holds a reference to the rules
+            try {
+                scanner.setCallback(v -> match.set(true));
+                scanner.scan("Hello world".getBytes());
+            }
+            finally {
+                scanner.close();
+            }
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testScanRuleIds() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final List<Integer> indexes = new ArrayList<>();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.scanRuleIds("Hello world".getBytes(), null, indexes::add);
+                assertEquals(1, indexes.size());
+                assertEquals(0, (int) indexes.get(0));
+
+                ByteBuffer buffer = ByteBuffer.wrap("xxHello worldxx".getBytes());
+                scanner.scanRuleIds(buffer, 2, 11, null, indexes::add);
+                assertEquals(2, indexes.size());
+                assertEquals(0, (int) indexes.get(1));
+
+                assertEquals(1, scanner.matchedRules("Hello world".getBytes()).cardinality());
+                assertTrue(scanner.matchedRules("Nothing here".getBytes()).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testScanRuleIdsCompiledOrder() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final List<Integer> indexes = new ArrayList<>();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("rule Same { strings: $a = \"nomatch\" condition: $a }", "one");
+            compiler.addRulesContent("private rule Other { condition: false }\n" +
+                    "rule Same { strings: $a = \"Hello world\" condition: $a }", "two");
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.scanRuleIds("Hello world".getBytes(), null, indexes::add);
+                assertEquals(Arrays.asList(2), indexes);
+            }
+        }
+    }
+
+    @Test
+    public void testScanTreeExternalRecursion() throws Exception {
+        File root = Files.createTempDirectory(randomTestFilename("testScanTree")).toFile();
+        File nested = new File(root, "nested");
+        assertTrue(nested.mkdir());
+        Files.write(new File(nested, "hello.txt").toPath(), "Hello world".getBytes());
+        Files.write(new File(root, "other.txt").toPath(), "Nothing".getBytes());
+
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        final Map<String, String> matches = new ConcurrentHashMap<>();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                TreeScanOptions options = TreeScanOptions.builder().setExternalRecursion(true).build();
+                scanner.scanTree(root.toPath(), options,
+                        (path, rule) -> matches.put(path.getFileName().toString(), rule.getIdentifier()));
+            }
+        }
+        finally {
+            Files.deleteIfExists(new File(nested, "hello.txt").toPath());
+            Files.deleteIfExists(nested.toPath());
+            Files.deleteIfExists(new File(root, "other.txt").toPath());
+            Files.deleteIfExists(root.toPath());
+        }
+
+        assertEquals(1, matches.size());
+        assertEquals("HelloWorld", matches.get("hello.txt"));
+    }
+
+    @Test
+    public void testScanBlocks() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(16);
+        direct.put("xHello world".getBytes());
+        ((Buffer) direct).flip();
+        ((Buffer) direct).position(1);
+
+        List<YaraMemoryBlock> blocks = Arrays.asList(
+                new YaraMemoryBlock(0, ByteBuffer.wrap("nothing".getBytes())),
+                new YaraMemoryBlock(100, ByteBuffer.wrap("Hello world".getBytes())),
+                new YaraMemoryBlock(200, direct));
+
+        final List<Long> offsets = new ArrayList<>();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                scanner.scan(blocks, null, v -> {
+                    assertEquals("HelloWorld", v.getIdentifier());
+                    v.getStrings().next().getMatches().forEachRemaining(m -> offsets.add(m.getOffset()));
+                });
+
+                assertThrows(IllegalArgumentException.class, () -> scanner.scan(
+                        Arrays.asList(blocks.get(1), blocks.get(0)), null, v -> {}));
+            }
+        }
+
+        assertEquals(Arrays.asList(100L, 200L), offsets);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void testScanProcess() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        // The child keeps the rule string in its arguments while blocked on stdin
+        Process child = new ProcessBuilder("sh", "-c", "echo $$; read line # Hello world").start();
+
+        final AtomicBoolean match = new AtomicBoolean();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            int pid = Integer.parseInt(reader.readLine().trim());
+
+            try (YaraCompiler compiler = new YaraCompilerImpl()) {
+                compiler.setCallback(compileCallback);
+                compiler.addRulesContent(YARA_RULES, null);
+
+                try (YaraScanner scanner = compiler.createScanner()) {
+                    scanner.scanProcess(pid, null, v -> {
+                        if ("HelloWorld".equals(v.getIdentifier())) {
+                            match.set(true);
+                        }
+                    });
+                }
+            }
+        }
+        finally {
+            child.destroy();
+            child.waitFor();
+        }
+
+        assertTrue(match.get());
+    }
+
+    @Test
+    public void testScanOptions() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                // Scanner settings are not used by per-call scans
+                scanner.setCallback(v -> fail());
+                scanner.setNotSatisfiedOnly(true);
+
+                List<String> matches = new ArrayList<>();
+                ScanOptions options = ScanOptions.builder()
+                        .setCallback(v -> matches.add(v.getIdentifier()))
+                        .build();
+
+                scanner.scan("Hello world".getBytes(), options);
+                assertEquals(Collections.singletonList("HelloWorld"), matches);
+
+                matches.clear();
+                scanner.scan("Hello world".getBytes(), options.toBuilder().setNegate(true).build());
+                assertEquals(Collections.singletonList("NoMatch"), matches);
+
+                matches.clear();
+                scanner.scan(UUID.randomUUID().toString().getBytes(),
+                        options.toBuilder().setNegate(true).setMaxRules(1).build());
+                assertEquals(1, matches.size());
+            }
+        }
+    }
+
+    @Test
+    public void testScanFastMode() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        String rules = "rule Presence { strings: $a = \"Hello\" condition: $a }\n" +
+                "rule Count { strings: $a = \"Hello\" condition: #a == 3 }";
+        byte[] content = "Hello Hello Hello".getBytes();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(rules, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                Map<String, Integer> matches = new HashMap<>();
+                ScanOptions options = ScanOptions.builder()
+                        .setCallback(v -> matches.put(v.getIdentifier(), countMatches(v)))
+                        .build();
+
+                scanner.scan(content, options);
+                assertEquals(3, matches.get("Presence").intValue());
+                assertEquals(3, matches.get("Count").intValue());
+
+                // Same rules match, presence only strings stop at their first match
+                matches.clear();
+                scanner.scan(content, options.toBuilder().setFastMode(true).build());
+                assertEquals(1, matches.get("Presence").intValue());
+                assertEquals(3, matches.get("Count").intValue());
+
+                matches.clear();
+                scanner.setFastMode(true);
+                scanner.setCallback(v -> matches.put(v.getIdentifier(), countMatches(v)));
+                scanner.scan(content);
+                assertEquals(1, matches.get("Presence").intValue());
+                assertEquals(3, matches.get("Count").intValue());
+            }
+        }
+    }
+
+    private static int countMatches(YaraRule rule) {
+        int count = 0;
+
+        Iterator<YaraString> strings = rule.getStrings();
+        while (strings.hasNext()) {
+            Iterator<YaraMatch> matches = strings.next().getMatches();
+            while (matches.hasNext()) {
+                matches.next();
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testScanVariables() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        String rules = "rule Size { condition: size_class > 2 }\n" +
+                "rule Ratio { condition: ratio > 0.5 }\n" +
+                "rule Trusted { condition: trusted }\n" +
+                "rule Tenant { condition: tenant == \"acme\" }";
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.defineVariable("size_class", 1);
+            compiler.defineVariable("ratio", 0.25);
+            compiler.defineVariable("trusted", false);
+            compiler.defineVariable("tenant", "none");
+            compiler.addRulesContent(rules, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                List<String> matches = new ArrayList<>();
+                ScanOptions defaults = ScanOptions.builder()
+                        .setCallback(v -> matches.add(v.getIdentifier()))
+                        .build();
+
+                scanner.scan("Hello world".getBytes(), defaults);
+                assertTrue(matches.isEmpty());
+
+                scanner.scan("Hello world".getBytes(), defaults.toBuilder()
+                        .setVariable("size_class", 3)
+                        .setVariable("ratio", 0.75)
+                        .setVariable("trusted", true)
+                        .setVariable("tenant", "acme")
+                        .build());
+                assertEquals(Arrays.asList("Size", "Ratio", "Trusted", "Tenant"), matches);
+
+                // Values only apply to the scan they were passed to
+                matches.clear();
+                scanner.scan("Hello world".getBytes(), defaults);
+                assertTrue(matches.isEmpty());
+
+                assertThrows(YaraException.class, () -> scanner.scan("Hello world".getBytes(),
+                        defaults.toBuilder().setVariable("undefined", 1).build()));
+            }
+        }
+    }
+
+    @Test
+    public void testScanSubset() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("rule Ransom : ransomware { strings: $a = \"Hello\" condition: $a }\n" +
+                    "rule Other : misc { strings: $a = \"Hello\" condition: $a }", "malware");
+            compiler.addRulesContent("rule Tenant { strings: $a = \"Hello\" condition: $a }", "tenant");
+
+            try (YaraRules rules = compiler.createRules()) {
+                assertEquals(Arrays.asList("Other", "Ransom", "Tenant"), scanSubset(rules, "Hello world", false));
+
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addTag("ransomware").build())) {
+                    assertEquals(Collections.singletonList("Ransom"), scanSubset(subset, "Hello world", false));
+
+                    // Rules left out are not reported as not satisfied either
+                    assertEquals(Collections.singletonList("Ransom"), scanSubset(subset, "Nothing", true));
+                }
+
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addNamespace("tenant").build())) {
+                    assertEquals(Collections.singletonList("Tenant"), scanSubset(subset, "Hello world", false));
+                }
+
+                try (YaraRules subset = rules.subset(YaraRuleSelector.builder().addIdentifier("Other").build())) {
+                    assertEquals(Collections.singletonList("Other"), scanSubset(subset, "Hello world", false));
+                }
+
+                // The shared rules are left untouched
+                assertEquals(Arrays.asList("Other", "Ransom", "Tenant"), scanSubset(rules, "Hello world", false));
+            }
+        }
+    }
+
+    private static List<String> scanSubset(YaraRules rules, String content, boolean negate) throws Exception {
+        List<String> matches = new ArrayList<>();
+
+        try (YaraScanner scanner = rules.createScanner()) {
+            scanner.scan(content.getBytes(), ScanOptions.builder()
+                    .setNegate(negate)
+                    .setCallback(v -> matches.add(v.getIdentifier()))
+                    .build());
+        }
+
+        Collections.sort(matches);
+        return matches;
+    }
+
+    @Test
+    public void testScanWarnings() throws Exception {
+        List<YaraCompilationWarning> compileWarnings = new ArrayList<>();
+        YaraCompilationCallback compileCallback = new YaraCompilationCallback() {
+            @Override
+            public void onError(ErrorLevel errorLevel, String fileName, long lineNumber, String message) {
+                assertEquals(ErrorLevel.WARNING, errorLevel);
+            }
+
+            @Override
+            public void onWarning(YaraCompilationWarning warning) {
+                compileWarnings.add(warning);
+            }
+        };
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent("rule Zeros { strings: $a = { 00 } condition: $a }", null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                assertEquals(1, compileWarnings.size());
+                assertEquals(YaraCompilationWarning.Type.SLOW_STRING, compileWarnings.get(0).getType());
+                assertEquals("$a", compileWarnings.get(0).getStringIdentifier());
+
+                // More matches than libyara keeps for one string
+                byte[] buffer = new byte[1100000];
+                List<YaraScanWarning> warnings = new ArrayList<>();
+
+                scanner.scan(buffer, ScanOptions.builder().setCallback(new YaraScanCallback() {
+                    @Override
+                    public void onMatch(YaraRule rule) {
+                    }
+
+                    @Override
+                    public Action onWarning(YaraScanWarning warning) {
+                        warnings.add(warning);
+                        return Action.CONTINUE;
+                    }
+                }).build());
+
+                YaraScanWarning warning = warnings.stream()
+                        .filter(w -> w.getType() == YaraScanWarning.Type.TOO_MANY_MATCHES)
+                        .findFirst()
+                        .orElse(null);
+                assertNotNull(warning);
+                assertEquals("Zeros", warning.getRule().getIdentifier());
+                assertEquals("$a", warning.getStringIdentifier());
+                assertTrue(warning.getCount() == -1);
+
+                YaraException e = assertThrows(YaraException.class, () -> scanner.scan(buffer,
+                        ScanOptions.builder().setCallback(new YaraScanCallback() {
+                            @Override
+                            public void onMatch(YaraRule rule) {
+                            }
+
+                            @Override
+                            public Action onWarning(YaraScanWarning warning) {
+                                return Action.ABORT;
+                            }
+                        }).build()));
+                assertEquals(ErrorCode.TOO_MANY_MATCHES, e.getCode());
+            }
+        }
+    }
+
+    @Test
+    public void testScanMetrics() throws Exception {
+        YaraCompilationCallback compileCallback = (errorLevel, fileName, lineNumber, message) -> fail();
+
+        try (YaraCompiler compiler = new YaraCompilerImpl()) {
+            compiler.setCallback(compileCallback);
+            compiler.addRulesContent(YARA_RULES, null);
+
+            try (YaraScanner scanner = compiler.createScanner()) {
+                YaraMetrics metrics = new YaraMetrics();
+                scanner.setMetrics(metrics);
+                scanner.setCallback(v -> {});
+
+                byte[] buffer = "Hello world".getBytes();
+                scanner.scan(buffer);
+                scanner.scan(buffer);
+
+                File temp = File.createTempFile(UUID.randomUUID().toString(), ".tmp");
+                try {
+                    Files.write(Paths.get(temp.getAbsolutePath()), buffer, StandardOpenOption.WRITE);
+                    scanner.scan(temp);
+                }
+                finally {
+                    temp.delete();
+                }
+
+                YaraMetrics.Snapshot snapshot = metrics.snapshot();
+                assertEquals(3, snapshot.getScans());
+                assertEquals(1, snapshot.getFiles());
+                assertEquals(3L * buffer.length, snapshot.getBytes());
+                assertEquals(3L, snapshot.getMatches().get("HelloWorld"));
+                assertTrue(snapshot.getCallbacks() >= 3);
+                assertTrue(snapshot.getNativeCalls() == 0);
+                assertEquals(3, snapshot.getLatency().getCount());
+                assertTrue(snapshot.getErrors().isEmpty());
+
+                // Recording stops with the metrics unset
+                scanner.setMetrics(null);
+                scanner.scan(buffer);
+                assertEquals(3, metrics.snapshot().getScans());
+            }
+        }
+    }
+
     private void assertMetas(Iterator<YaraMeta> metas) {
         assertNotNull(metas);
 
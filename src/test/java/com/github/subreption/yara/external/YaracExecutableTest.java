@@ -20,13 +20,21 @@ package com.github.subreption.yara.external;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -34,8 +42,15 @@ import static org.mockito.Mockito.when;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.subreption.yara.ErrorCode;
+import com.github.subreption.yara.ScanOptions;
 import com.github.subreption.yara.TestUtils;
 import com.github.subreption.yara.YaraCompilationCallback;
+import com.github.subreption.yara.YaraException;
+import com.github.subreption.yara.YaraRule;
+import com.github.subreption.yara.YaraRuleSelector;
+import com.github.subreption.yara.YaraScanCallback;
+import com.github.subreption.yara.YaraScanWarning;
 
 
 /**
@@ -128,4 +143,148 @@ public class YaracExecutableTest {
         assertNotNull(output);
         assertTrue(failure.get());
     }
+
+    @Test
+    public void testDefineVariableInvalid() {
+        YaracExecutable exec = new YaracExecutable();
+        assertThrows(IllegalArgumentException.class, () -> exec.defineVariable(null, 1L));
+        assertThrows(IllegalArgumentException.class, () -> exec.defineVariable("tenant", null));
+    }
+
+    @Test
+    public void testDefineArgument() {
+        assertEquals("size_class=3", YaraExecutable.defineArgument("size_class", 3L));
+        assertEquals("ratio=0.5", YaraExecutable.defineArgument("ratio", 0.5));
+        assertEquals("ratio=10000000000.0", YaraExecutable.defineArgument("ratio", 1e10));
+        assertEquals("trusted=true", YaraExecutable.defineArgument("trusted", true));
+        assertEquals("tenant=acme", YaraExecutable.defineArgument("tenant", "acme"));
+    }
+
+    @Test
+    public void testScanWarning() {
+        YaraScanWarning warning = YaraExecutable.scanWarning(
+                "warning: rule \"Zeros\": too many matches for $a, results for this rule may be incorrect");
+        assertNotNull(warning);
+        assertEquals(YaraScanWarning.Type.TOO_MANY_MATCHES, warning.getType());
+        assertEquals("Zeros", warning.getRule().getIdentifier());
+        assertEquals("$a", warning.getStringIdentifier());
+        assertEquals(-1, warning.getCount());
+
+        warning = YaraExecutable.scanWarning("warning: rule \"Common\": scanning with string $b is taking " +
+                "a very long time, it is either too general or very common.");
+        assertNotNull(warning);
+        assertEquals(YaraScanWarning.Type.SLOW_SCANNING, warning.getType());
+        assertEquals("$b", warning.getStringIdentifier());
+
+        assertNull(YaraExecutable.scanWarning("error scanning /tmp/file: could not open file"));
+    }
+
+    @Test
+    public void testExecuteLargeOutput() throws Exception {
+        // Far more than a pipe buffer on both streams
+        NativeExecutable exec = script("i=0; while [ $i -lt 20000 ]; do " +
+                "echo \"HelloWorld /tmp/file$i\"; echo \"error scanning /tmp/bad$i: could not open file\" >&2; " +
+                "i=$((i+1)); done");
+
+        List<Path> matched = new ArrayList<>();
+        List<Path> failed = new ArrayList<>();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> new YaraExecutable(exec)
+                .addRule(TestUtils.getResource("rules/hello.yara"))
+                .matchTree(Paths.get("/tmp"), ScanOptions.DEFAULT, 0, false, 0,
+                        (identifier, path) -> matched.add(path), (path, e) -> failed.add(path)));
+
+        assertEquals(20000, matched.size());
+        assertEquals(Paths.get("/tmp/file19999"), matched.get(19999));
+        assertEquals(20000, failed.size());
+        assertEquals(Paths.get("/tmp/bad0"), failed.get(0));
+    }
+
+    @Test
+    public void testExecuteTimeout() throws Exception {
+        NativeExecutable exec = script("echo \"HelloWorld /tmp/file\"; exec sleep 30");
+        YaraExecutable yara = new YaraExecutable(exec).addRule(TestUtils.getResource("rules/hello.yara"));
+
+        long start = System.nanoTime();
+        YaraException e = assertThrows(YaraException.class, () -> yara.matchTree(Paths.get("/tmp"),
+                ScanOptions.DEFAULT, 0, false, 1, (identifier, path) -> {}, null));
+
+        assertEquals(ErrorCode.SCAN_TIMEOUT, e.getCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testMatchTreeOptions() throws Exception {
+        List<String> args = new ArrayList<>();
+
+        NativeExecutable exec = mock(NativeExecutable.class);
+        when(exec.execute(any())).thenAnswer(invocation -> {
+            for (Object arg : invocation.getArguments()) {
+                args.add((String) arg);
+            }
+            return new ProcessBuilder("sh", "-c",
+                    "echo \"warning: rule \\\"Hello\\\": too many matches for $a\" >&2").start();
+        });
+
+        List<YaraScanWarning> warnings = new ArrayList<>();
+        ScanOptions options = ScanOptions.builder()
+                .setTimeout(5)
+                .setFastMode(true)
+                .setNegate(true)
+                .setMaxRules(3)
+                .setVariable("tenant", "acme")
+                .setCallback(new YaraScanCallback() {
+                    @Override
+                    public void onMatch(YaraRule rule) {
+                    }
+
+                    @Override
+                    public Action onWarning(YaraScanWarning warning) {
+                        warnings.add(warning);
+                        return Action.CONTINUE;
+                    }
+                })
+                .build();
+
+        new YaraExecutable(exec)
+                .addRule(TestUtils.getResource("rules/hello.yara"))
+                .matchTree(Paths.get("/tmp"), options, 100, false, 0, (identifier, path) -> {}, null);
+
+        assertTrue(args.containsAll(Arrays.asList("-r", "-N", "-f", "-n", "tenant=acme")));
+        assertEquals("5", args.get(args.indexOf("-a") + 1));
+        assertEquals("3", args.get(args.indexOf("-l") + 1));
+        assertEquals("100", args.get(args.indexOf("-z") + 1));
+        assertEquals(1, warnings.size());
+        assertEquals("Hello", warnings.get(0).getRule().getIdentifier());
+    }
+
+    @Test
+    public void testMatchIdentifiersNamespaces() throws Exception {
+        List<String> args = new ArrayList<>();
+
+        NativeExecutable exec = mock(NativeExecutable.class);
+        when(exec.execute(any())).thenAnswer(invocation -> {
+            for (Object arg : invocation.getArguments()) {
+                args.add((String) arg);
+            }
+            return new ProcessBuilder("sh", "-c",
+                    "echo 'one:Same /tmp/sample'; echo 'two:Same /tmp/sample'").start();
+        });
+
+        List<String> identifiers = new ArrayList<>();
+
+        new YaraExecutable(exec)
+                .addRule(TestUtils.getResource("rules/hello.yara"))
+                .setSelector(YaraRuleSelector.builder().addNamespace("two").build())
+                .matchIdentifiers(Paths.get("/tmp/sample"), null, identifiers::add);
+
+        assertEquals(1, args.stream().filter("-e"::equals).count());
+        assertEquals(Arrays.asList("two:Same"), identifiers);
+    }
+
+    private static NativeExecutable script(String script) throws Exception {
+        NativeExecutable exec = mock(NativeExecutable.class);
+        when(exec.execute(any())).thenAnswer(invocation -> new ProcessBuilder("sh", "-c", script).start());
+        return exec;
+    }
 }